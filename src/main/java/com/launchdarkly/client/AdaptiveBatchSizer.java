@@ -0,0 +1,56 @@
+package com.launchdarkly.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adjusts the number of buffered events that triggers an early flush, based on how long the events
+ * service takes to accept our payloads.
+ * <p>
+ * When posts are slow, sending many small payloads only adds to the backlog, so the batch size grows
+ * (up to the configured maximum) and each request carries more events. When posts are fast, the
+ * batch size shrinks gradually (down to a minimum) so that events are delivered sooner. Latencies are
+ * reported by the flush workers and the threshold is read by the event dispatcher thread, so the state
+ * is kept in an atomic.
+ */
+final class AdaptiveBatchSizer {
+  static final long TARGET_LATENCY_MILLIS = 1000;
+
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final AtomicInteger batchSize;
+
+  AdaptiveBatchSizer(int minBatchSize, int maxBatchSize) {
+    this.minBatchSize = Math.max(1, Math.min(minBatchSize, maxBatchSize));
+    this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+    this.batchSize = new AtomicInteger(this.maxBatchSize);
+  }
+
+  /**
+   * Returns the current number of buffered events at which a flush should be triggered.
+   * @return the batch size
+   */
+  int getBatchSize() {
+    return batchSize.get();
+  }
+
+  /**
+   * Records the outcome of a successful post.
+   * @param latencyMillis how long the request took
+   */
+  void recordLatency(long latencyMillis) {
+    while (true) {
+      int current = batchSize.get();
+      int updated;
+      if (latencyMillis > TARGET_LATENCY_MILLIS) {
+        updated = (int)Math.min((long)current * 2, maxBatchSize);
+      } else if (latencyMillis < TARGET_LATENCY_MILLIS / 4) {
+        updated = Math.max(current - Math.max(1, current / 4), minBatchSize);
+      } else {
+        return;
+      }
+      if (updated == current || batchSize.compareAndSet(current, updated)) {
+        return;
+      }
+    }
+  }
+}
@@ -28,6 +28,14 @@ class Clause {
     this.negate = negate;
   }
 
+  Operator getOp() {
+    return op;
+  }
+  
+  List<LDValue> getValues() {
+    return values;
+  }
+
   boolean matchesUserNoSegments(LDUser user) {
     LDValue userValue = user.getValueForEvaluation(attribute);
     if (userValue.isNull()) {
@@ -0,0 +1,122 @@
+package com.launchdarkly.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Limits the number of debug events generated for each flag.
+ * <p>
+ * Each flag has a token bucket that allows a steady rate of debug events, with bursts of up to one
+ * second's worth. Evaluations beyond that rate do not produce debug events right away; instead, a
+ * fixed-size random sample of them (reservoir sampling) is kept until the next flush, so that the debug
+ * events which do get through are representative of the whole flush interval rather than just of its
+ * first moments. Everything else is counted as suppressed. Summary counts are not affected, since every
+ * evaluation is still added to the summary.
+ * <p>
+ * This class is only used by the event dispatcher thread, so it is not thread-safe.
+ */
+final class DebugEventLimiter {
+  private final double eventsPerMillisecond;
+  private final double maxTokens;
+  private final int reservoirSize;
+  private final Random random;
+  private final Map<String, FlagState> flags = new HashMap<>();
+  private long suppressedCount;
+
+  /**
+   * Creates a limiter.
+   *
+   * @param eventsPerSecond the sustained number of debug events allowed per flag per second
+   * @param reservoirSize the number of over-limit evaluations per flag that are sampled in each flush
+   * @param random a source of randomness for sampling
+   */
+  DebugEventLimiter(double eventsPerSecond, int reservoirSize, Random random) {
+    this.eventsPerMillisecond = eventsPerSecond / 1000;
+    this.maxTokens = Math.max(1, eventsPerSecond);
+    this.reservoirSize = Math.max(0, reservoirSize);
+    this.random = random;
+  }
+
+  /**
+   * Decides whether a debug event should be generated now for this evaluation. If not, the evaluation may be
+   * kept in the flag's sample, to be returned by {@link #drain(long)}.
+   *
+   * @param fe the feature event for which a debug event would be generated
+   * @param now the current time in milliseconds
+   * @return true if the debug event should be generated immediately
+   */
+  boolean admit(Event.FeatureRequest fe, long now) {
+    FlagState state = flags.get(fe.key);
+    if (state == null) {
+      state = new FlagState(maxTokens, now);
+      flags.put(fe.key, state);
+    } else {
+      state.tokens = Math.min(maxTokens, state.tokens + (now - state.lastRefillTime) * eventsPerMillisecond);
+      state.lastRefillTime = now;
+    }
+    if (state.tokens >= 1) {
+      state.tokens -= 1;
+      return true;
+    }
+    state.overLimitCount++;
+    if (state.sample.size() < reservoirSize) {
+      state.sample.add(fe);
+    } else {
+      long i = (long)(random.nextDouble() * state.overLimitCount);
+      if (i < reservoirSize) {
+        state.sample.set((int)i, fe);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the sampled over-limit evaluations since the last call, and starts new samples. Flags that
+   * have been quiet long enough for their bucket to refill are forgotten.
+   *
+   * @param now the current time in milliseconds
+   * @return the evaluations for which debug events should now be generated
+   */
+  List<Event.FeatureRequest> drain(long now) {
+    List<Event.FeatureRequest> ret = new ArrayList<>();
+    Iterator<FlagState> it = flags.values().iterator();
+    while (it.hasNext()) {
+      FlagState state = it.next();
+      ret.addAll(state.sample);
+      suppressedCount += state.overLimitCount - state.sample.size();
+      state.sample.clear();
+      state.overLimitCount = 0;
+      if (state.tokens + (now - state.lastRefillTime) * eventsPerMillisecond >= maxTokens) {
+        it.remove();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the number of evaluations whose debug events were dropped since the last call.
+   *
+   * @return the suppressed count
+   */
+  long takeSuppressedCount() {
+    long ret = suppressedCount;
+    suppressedCount = 0;
+    return ret;
+  }
+
+  private static final class FlagState {
+    double tokens;
+    long lastRefillTime;
+    long overLimitCount;
+    final List<Event.FeatureRequest> sample = new ArrayList<>();
+
+    FlagState(double tokens, long now) {
+      this.tokens = tokens;
+      this.lastRefillTime = now;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.launchdarkly.client;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.launchdarkly.client.EventSummarizer.EventSummary;
 
@@ -8,20 +9,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -46,41 +52,57 @@ final class DefaultEventProcessor implements EventProcessor {
   private static final String EVENT_PAYLOAD_ID_HEADER = "X-LaunchDarkly-Payload-ID";
   
   private final BlockingQueue<EventProcessorMessage> inbox;
+  private final int inboxCapacity;
   private final ScheduledExecutorService scheduler;
+  private final boolean sharedScheduler;
+  private final List<ScheduledFuture<?>> scheduledTasks = new ArrayList<>();
   private final AtomicBoolean closed = new AtomicBoolean(false);
+  private final EventBackpressurePolicy backpressurePolicy;
+  private final long backpressureTimeoutMillis;
+  private final EventMetricsRecorder metrics;
+  private final OverflowEventSummarizer overflowSummarizer = new OverflowEventSummarizer();
+  private final EventShutdownTracker shutdownTracker = new EventShutdownTracker();
+  private final long shutdownTimeoutMillis;
+  private volatile EventShutdownReport shutdownReport = null;
   private volatile boolean inputCapacityExceeded = false;
   
   DefaultEventProcessor(String sdkKey, LDConfig config) {
     inbox = new ArrayBlockingQueue<>(config.capacity);
+    inboxCapacity = config.capacity;
+    backpressurePolicy = config.eventBackpressurePolicy;
+    backpressureTimeoutMillis = config.eventBackpressureTimeoutMillis;
+    shutdownTimeoutMillis = config.eventShutdownTimeoutMillis;
+    metrics = new EventMetricsRecorder(inbox, config.capacity, backpressurePolicy);
     
     ThreadFactory threadFactory = new ThreadFactoryBuilder()
         .setDaemon(true)
         .setNameFormat("LaunchDarkly-EventProcessor-%d")
         .setPriority(Thread.MIN_PRIORITY)
         .build();
-    scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    sharedScheduler = config.runtime != null;
+    scheduler = sharedScheduler ? config.runtime.scheduler : Executors.newSingleThreadScheduledExecutor(threadFactory);
 
-    new EventDispatcher(sdkKey, config, inbox, threadFactory, closed);
+    new EventDispatcher(sdkKey, config, inbox, threadFactory, closed, overflowSummarizer, metrics, shutdownTracker);
 
     Runnable flusher = new Runnable() {
       public void run() {
         postMessageAsync(MessageType.FLUSH, null);
       }
     };
-    this.scheduler.scheduleAtFixedRate(flusher, config.flushInterval, config.flushInterval, TimeUnit.SECONDS);
+    scheduledTasks.add(this.scheduler.scheduleAtFixedRate(flusher, config.flushInterval, config.flushInterval, TimeUnit.SECONDS));
     Runnable userKeysFlusher = new Runnable() {
       public void run() {
         postMessageAsync(MessageType.FLUSH_USERS, null);
       }
     };
-    this.scheduler.scheduleAtFixedRate(userKeysFlusher, config.userKeysFlushInterval, config.userKeysFlushInterval,
-        TimeUnit.SECONDS);
+    scheduledTasks.add(this.scheduler.scheduleAtFixedRate(userKeysFlusher, config.userKeysFlushInterval,
+        config.userKeysFlushInterval, TimeUnit.SECONDS));
   }
   
   @Override
   public void sendEvent(Event e) {
     if (!closed.get()) {
-      postMessageAsync(MessageType.EVENT, e);
+      postEvent(e);
     }
   }
   
@@ -94,12 +116,62 @@ final class DefaultEventProcessor implements EventProcessor {
   @Override
   public void close() throws IOException {
     if (closed.compareAndSet(false, true)) {
-      scheduler.shutdown();
+      if (sharedScheduler) { // other clients are still using it, so just cancel our own tasks
+        for (ScheduledFuture<?> task: scheduledTasks) {
+          task.cancel(false);
+        }
+      } else {
+        scheduler.shutdown();
+      }
       postMessageAsync(MessageType.FLUSH, null);
-      postMessageAndWait(MessageType.SHUTDOWN, null);
+      if (shutdownTimeoutMillis > 0) {
+        closeWithDeadline();
+      } else {
+        postMessageAndWait(MessageType.SHUTDOWN, null);
+      }
+    }
+  }
+  
+  // The dispatcher sends whatever is left as quickly as the workers allow, and when time is nearly up it
+  // cancels any posts that are still in progress and spools everything that hasn't been delivered.
+  private void closeWithDeadline() {
+    long startTime = System.currentTimeMillis();
+    shutdownTracker.begin(startTime + shutdownTimeoutMillis);
+    EventProcessorMessage message = new EventProcessorMessage(MessageType.SHUTDOWN, null, true);
+    boolean finished = postToChannel(message) && message.waitForCompletion(shutdownTimeoutMillis);
+    EventShutdownReport report = shutdownTracker.getReport(finished, System.currentTimeMillis() - startTime);
+    shutdownReport = report;
+    if (report.isCompletedWithinDeadline() && report.getDroppedEventCount() == 0) {
+      logger.info("Event processor shut down: {}", report);
+    } else {
+      logger.warn("Event processor could not deliver all events before shutting down: {}", report);
     }
   }
   
+  /**
+   * Returns what happened to buffered events during {@link #close()}, if a shutdown deadline is configured.
+   * @return the shutdown report, or null if the processor has not been closed or has no deadline
+   */
+  EventShutdownReport getShutdownReport() {
+    return shutdownReport;
+  }
+  
+  /**
+   * Returns the number of events that were dropped or sampled out because the inbox was full.
+   * @return the current counts
+   */
+  EventInboxStatistics getInboxStatistics() {
+    return metrics.getInboxStatistics();
+  }
+  
+  /**
+   * Returns a snapshot of the event processor's statistics.
+   * @return the current metrics
+   */
+  EventMetrics getMetrics() {
+    return metrics.getMetrics();
+  }
+  
   @VisibleForTesting
   void waitUntilInactive() throws IOException {
     postMessageAndWait(MessageType.SYNC, null);
@@ -124,14 +196,82 @@ final class DefaultEventProcessor implements EventProcessor {
     // events. This is unlikely, but if it happens, it means the application is probably doing a ton of flag
     // evaluations across many threads-- so if we wait for a space in the inbox, we risk a very serious slowdown
     // of the app. To avoid that, we'll just drop the event. The log warning about this will only be shown once.
+    warnInputCapacityExceeded();
+    return false;
+  }
+  
+  // Events are subject to the configured backpressure policy; other messages always use the default behavior.
+  private void postEvent(Event e) {
+    if (backpressurePolicy == EventBackpressurePolicy.SAMPLE && !shouldKeepEventUnderLoad()) {
+      metrics.recordSampled(e);
+      overflowSummarizer.summarizeEvent(e);
+      return;
+    }
+    EventProcessorMessage message = new EventProcessorMessage(MessageType.EVENT, e, false);
+    if (inbox.offer(message)) {
+      return;
+    }
+    switch (backpressurePolicy) {
+    case DROP_OLDEST:
+      if (dropOldestEvent() && inbox.offer(message)) {
+        return;
+      }
+      break;
+    case BLOCK:
+      try {
+        if (inbox.offer(message, backpressureTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      break;
+    default:
+      break;
+    }
+    metrics.recordDropped(e);
+    if (backpressurePolicy == EventBackpressurePolicy.SAMPLE) {
+      overflowSummarizer.summarizeEvent(e);
+    }
+    warnInputCapacityExceeded();
+  }
+  
+  // Removes the oldest event message from the inbox. Other kinds of messages are left alone, since someone
+  // might be waiting for them. Returns false if there was no event to remove.
+  private boolean dropOldestEvent() {
+    for (EventProcessorMessage m: inbox) {
+      if (m.type == MessageType.EVENT) {
+        // remove() fails if the dispatcher has taken the message in the meantime, in which case nothing was dropped
+        if (inbox.remove(m)) {
+          metrics.recordDropped(m.event);
+          return true;
+        }
+        return false;
+      }
+    }
+    return false;
+  }
+  
+  // Below half capacity every event is kept; above that, the chance of keeping an event falls linearly
+  // to zero when the inbox is full.
+  private boolean shouldKeepEventUnderLoad() {
+    int free = inbox.remainingCapacity();
+    int half = inboxCapacity / 2;
+    if (free >= half) {
+      return true;
+    }
+    return ThreadLocalRandom.current().nextInt(half) < free;
+  }
+  
+  private void warnInputCapacityExceeded() {
     boolean alreadyLogged = inputCapacityExceeded; // possible race between this and the next line, but it's of no real consequence - we'd just get an extra log line
     inputCapacityExceeded = true;
     if (!alreadyLogged) {
       logger.warn("Events are being produced faster than they can be processed; some events will be dropped");
     }
-    return false;
   }
 
+
   private static enum MessageType {
     EVENT,
     FLUSH,
@@ -171,6 +311,20 @@ final class DefaultEventProcessor implements EventProcessor {
       }
     }
     
+    boolean waitForCompletion(long timeoutMillis) {
+      if (reply == null) {
+        return true;
+      }
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      while (true) {
+        try {
+          return reply.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+        }
+      }
+    }
+    
     @Override
     public String toString() { // for debugging only
       return ((event == null) ? type.toString() : (type + ": " + event.getClass().getSimpleName())) +
@@ -183,39 +337,89 @@ final class DefaultEventProcessor implements EventProcessor {
    * on its own thread.
    */
   static final class EventDispatcher {
-    private static final int MAX_FLUSH_THREADS = 5;
     private static final int MESSAGE_BATCH_SIZE = 50;
+    private static final long IDLE_FLUSH_WORKER_TIMEOUT_SECONDS = 60;
+    private static final long MAX_SHUTDOWN_SPILL_RESERVE_MILLIS = 1000;
     
     private final LDConfig config;
     private final OkHttpClient httpClient;
-    private final List<SendEventsTask> flushWorkers;
+    private final ThreadPoolExecutor flushExecutor;
+    private final boolean sharedFlushExecutor;
+    private final EventSender sender;
+    private final int maxOutstandingPayloads;
     private final AtomicInteger busyFlushWorkersCount;
     private final Random random = new Random();
     private final AtomicLong lastKnownPastTime = new AtomicLong(0);
     private final AtomicBoolean disabled = new AtomicBoolean(false);
+    private final AdaptiveBatchSizer batchSizer;
+    private final OverflowEventSummarizer overflowSummarizer;
+    private final EventMetricsRecorder metrics;
+    private final MetricEventAggregator metricAggregator;
+    private final DebugEventLimiter debugEventLimiter;
+    private final EventShutdownTracker shutdownTracker;
 
     private EventDispatcher(String sdkKey, LDConfig config,
                             final BlockingQueue<EventProcessorMessage> inbox,
                             ThreadFactory threadFactory,
-                            final AtomicBoolean closed) {
+                            final AtomicBoolean closed,
+                            OverflowEventSummarizer overflowSummarizer,
+                            EventMetricsRecorder metrics,
+                            EventShutdownTracker shutdownTracker) {
       this.config = config;
+      this.shutdownTracker = shutdownTracker;
+      this.overflowSummarizer = overflowSummarizer;
+      this.metrics = metrics;
+      this.metricAggregator = config.aggregateMetricEvents ? new MetricEventAggregator(config.metricEventUserBuckets) : null;
+      this.debugEventLimiter = config.debugEventsPerFlagPerSecond > 0 ?
+          new DebugEventLimiter(config.debugEventsPerFlagPerSecond, config.debugEventSampleSize, random) : null;
       this.busyFlushWorkersCount = new AtomicInteger(0);
 
       OkHttpClient.Builder httpBuilder = new OkHttpClient.Builder();
       configureHttpClientBuilder(config, httpBuilder);
       httpClient = httpBuilder.build();
       
-      // This queue only holds one element; it represents a flush task that has not yet been
-      // picked up by any worker, so if we try to push another one and are refused, it means
-      // all the workers are busy.
-      final BlockingQueue<FlushPayload> payloadQueue = new ArrayBlockingQueue<>(1);
+      // Payloads are delivered by a small pool whose threads only exist while there is something to send.
+      // Flushed payloads wait in a bounded queue when all of the threads are busy; if that queue is also
+      // full, the flush is postponed and the events stay in the buffer.
+      // If there is a shared runtime, its pool is used instead, but each client still limits its own
+      // outstanding payloads so that one busy client can't take all of the pool's queue.
+      int workers = Math.max(1, config.eventFlushWorkers);
+      int maxPending = Math.max(1, config.maxPendingEventPayloads);
+      sharedFlushExecutor = config.runtime != null;
+      if (sharedFlushExecutor) {
+        flushExecutor = config.runtime.eventFlushExecutor;
+        maxOutstandingPayloads = flushExecutor.getMaximumPoolSize() + maxPending;
+      } else {
+        maxOutstandingPayloads = workers + maxPending;
+        flushExecutor = new ThreadPoolExecutor(workers, workers, IDLE_FLUSH_WORKER_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(maxPending), threadFactory);
+        flushExecutor.allowCoreThreadTimeOut(true);
+      }
       
-      final EventBuffer outbox = new EventBuffer(config.capacity);
-      final SimpleLRUCache<String, String> userKeys = new SimpleLRUCache<String, String>(config.userKeysCapacity);
+      final EventBuffer outbox = new EventBuffer(config);
+      if (config.adaptiveFlushBatching) {
+        int maxBatchSize = config.flushEventCountThreshold > 0 ? config.flushEventCountThreshold : config.capacity;
+        batchSizer = new AdaptiveBatchSizer(maxBatchSize / 10, maxBatchSize);
+      } else {
+        batchSizer = null;
+      }
+      final UserKeyTracker userKeys = config.userKeysFalsePositiveRate > 0 ?
+          new HashedUserKeyTracker(config.userKeysCapacity, config.userKeysFalsePositiveRate) :
+          new LRUUserKeyTracker(config.userKeysCapacity);
+      EventSpool spool = null;
+      if (config.eventSpoolDirectory != null) {
+        try {
+          spool = new EventSpool(config.eventSpoolDirectory, sdkKey, config.eventSpoolMaxBytes);
+        } catch (IOException e) {
+          logger.error("Unable to open event spool directory {}; undeliverable events will be dropped: {}",
+              config.eventSpoolDirectory, e.toString());
+          logger.debug(e.toString(), e);
+        }
+      }
       
       Thread mainThread = threadFactory.newThread(new Runnable() {
         public void run() {
-          runMainLoop(inbox, outbox, userKeys, payloadQueue);
+          runMainLoop(inbox, outbox, userKeys);
         }
       });
       mainThread.setDaemon(true);
@@ -238,19 +442,15 @@ final class DefaultEventProcessor implements EventProcessor {
         }
       });
       
-      mainThread.start();
-      
-      flushWorkers = new ArrayList<>();
       EventResponseListener listener = new EventResponseListener() {
           public void handleResponse(Response response, Date responseDate) {
             EventDispatcher.this.handleResponse(response, responseDate);
           }
         };
-      for (int i = 0; i < MAX_FLUSH_THREADS; i++) {
-        SendEventsTask task = new SendEventsTask(sdkKey, config, httpClient, listener, payloadQueue,
-            busyFlushWorkersCount, threadFactory);
-        flushWorkers.add(task);
-      }
+      sender = new EventSender(sdkKey, config, httpClient, listener, spool, batchSizer, metrics, shutdownTracker);
+      
+      triggerReplay(); // payloads left behind by a previous process; the main thread isn't submitting anything yet
+      mainThread.start();
     }
     
     /**
@@ -259,8 +459,7 @@ final class DefaultEventProcessor implements EventProcessor {
      * triggerFlush will hand the events off to another task.
      */
     private void runMainLoop(BlockingQueue<EventProcessorMessage> inbox,
-        EventBuffer outbox, SimpleLRUCache<String, String> userKeys,
-        BlockingQueue<FlushPayload> payloadQueue) {
+        EventBuffer outbox, UserKeyTracker userKeys) {
       List<EventProcessorMessage> batch = new ArrayList<EventProcessorMessage>(MESSAGE_BATCH_SIZE);
       while (true) {
         try {
@@ -271,9 +470,14 @@ final class DefaultEventProcessor implements EventProcessor {
             switch(message.type) {
             case EVENT:
               processEvent(message.event, userKeys, outbox);
+              if (shouldFlushEarly(outbox)) {
+                triggerFlush(outbox);
+              }
               break;
             case FLUSH:
-              triggerFlush(outbox, payloadQueue);
+              if (!triggerFlush(outbox)) {
+                triggerReplay(); // a successful flush replays the spool by itself
+              }
               break;
             case FLUSH_USERS:
               userKeys.clear();
@@ -282,7 +486,7 @@ final class DefaultEventProcessor implements EventProcessor {
               waitUntilAllFlushWorkersInactive();
               break;
             case SHUTDOWN:
-              doShutdown();
+              doShutdown(outbox);
               message.completed();
               return; // deliberately exit the thread loop
             }
@@ -296,15 +500,65 @@ final class DefaultEventProcessor implements EventProcessor {
       }
     }
     
-    private void doShutdown() {
-      waitUntilAllFlushWorkersInactive();
+    private void doShutdown(EventBuffer outbox) {
+      long deadline = shutdownTracker.getDeadline();
+      if (deadline > 0) {
+        drainBeforeDeadline(outbox, deadline);
+      } else {
+        waitUntilAllFlushWorkersInactive();
+      }
       disabled.set(true); // In case there are any more messages, we want to ignore them
-      for (SendEventsTask task: flushWorkers) {
-        task.stop();
+      sender.stop();
+      sender.close(); // so that a new client can use the spool directory
+      if (!sharedFlushExecutor) {
+        flushExecutor.shutdown();
       }
-      shutdownHttpClient(httpClient);
+      shutdownHttpClient(httpClient, config);
     }
 
+    // Hands off the remaining events in as many payloads as the workers will take, so they are posted in
+    // parallel. Shortly before the deadline, we stop waiting: posts that are still in progress are cancelled,
+    // and those payloads, any that haven't been started, and anything still in the buffer are spooled.
+    private void drainBeforeDeadline(EventBuffer outbox, long deadline) {
+      long workerDeadline = deadline - Math.min(config.eventShutdownTimeoutMillis / 10, MAX_SHUTDOWN_SPILL_RESERVE_MILLIS);
+      if (!disabled.get()) {
+        addHeldEvents(outbox); // triggerFlush doesn't take them while the workers are busy
+      }
+      while (!outbox.isEmpty() && !disabled.get()) {
+        if (!triggerFlush(outbox)) {
+          int busy = busyFlushWorkersCount.get();
+          if (busy == 0 || !waitForFlushWorkers(busy - 1, workerDeadline)) {
+            break;
+          }
+        }
+      }
+      if (!waitForFlushWorkers(0, workerDeadline)) {
+        sender.stop();
+        httpClient.dispatcher().cancelAll();
+        waitForFlushWorkers(0, deadline); // the cancelled payloads are spooled by the workers
+      }
+      while (!outbox.isEmpty() && !disabled.get()) {
+        sender.spill(outbox.getPayload());
+        outbox.removePayload();
+      }
+    }
+    
+    // Waits until no more than the given number of flush workers are busy. Returns false if the deadline passed first.
+    private boolean waitForFlushWorkers(int maxBusy, long deadline) {
+      synchronized (busyFlushWorkersCount) {
+        while (busyFlushWorkersCount.get() > maxBusy) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return false;
+          }
+          try {
+            busyFlushWorkersCount.wait(remaining);
+          } catch (InterruptedException e) {}
+        }
+        return true;
+      }
+    }
+    
     private void waitUntilAllFlushWorkersInactive() {
       while (true) {
         try {
@@ -319,10 +573,11 @@ final class DefaultEventProcessor implements EventProcessor {
       }
     }
     
-    private void processEvent(Event e, SimpleLRUCache<String, String> userKeys, EventBuffer outbox) {
+    private void processEvent(Event e, UserKeyTracker userKeys, EventBuffer outbox) {
       if (disabled.get()) {
         return;
       }
+      metrics.recordProcessed(e);
 
       // Always record the event in the summarizer.
       outbox.addToSummary(e);
@@ -337,10 +592,13 @@ final class DefaultEventProcessor implements EventProcessor {
         if (shouldSampleEvent()) {
           Event.FeatureRequest fe = (Event.FeatureRequest)e;
           addFullEvent = fe.trackEvents;
-          if (shouldDebugEvent(fe)) {
+          if (shouldDebugEvent(fe) &&
+              (debugEventLimiter == null || debugEventLimiter.admit(fe, System.currentTimeMillis()))) {
             debugEvent = EventFactory.DEFAULT.newDebugEvent(fe);
           }
         }
+      } else if (metricAggregator != null && metricAggregator.add(e)) {
+        addFullEvent = false; // it will be sent as part of an aggregate event when we flush
       } else {
         addFullEvent = shouldSampleEvent();
       }
@@ -368,12 +626,11 @@ final class DefaultEventProcessor implements EventProcessor {
     }
     
     // Add to the set of users we've noticed, and return true if the user was already known to us.
-    private boolean noticeUser(LDUser user, SimpleLRUCache<String, String> userKeys) {
+    private boolean noticeUser(LDUser user, UserKeyTracker userKeys) {
       if (user == null || user.getKey() == null) {
         return false;
       }
-      String key = user.getKeyAsString();
-      return userKeys.put(key, key) != null;
+      return userKeys.noticeUser(user.getKeyAsString());
     }
     
     private boolean shouldSampleEvent() {
@@ -395,21 +652,123 @@ final class DefaultEventProcessor implements EventProcessor {
       return false;      
     }
     
-    private void triggerFlush(EventBuffer outbox, BlockingQueue<FlushPayload> payloadQueue) {
-      if (disabled.get() || outbox.isEmpty()) {
-        return;
+    // Checks whether the buffer has grown enough that we should flush now rather than waiting for the
+    // flush timer, so that a burst of events doesn't fill up the buffer and cause events to be dropped.
+    private boolean shouldFlushEarly(EventBuffer outbox) {
+      int countThreshold = batchSizer != null ? batchSizer.getBatchSize() : config.flushEventCountThreshold;
+      if (countThreshold > 0 && outbox.size() >= countThreshold) {
+        return true;
+      }
+      return config.flushByteSizeThreshold > 0 && outbox.estimatedBytes >= config.flushByteSizeThreshold;
+    }
+    
+    // Returns true if a payload was handed off to the flush workers.
+    private boolean triggerFlush(EventBuffer outbox) {
+      if (disabled.get()) {
+        return false;
       }
-      FlushPayload payload = outbox.getPayload();
+      if (busyFlushWorkersCount.get() >= maxOutstandingPayloads) {
+        // Every worker is busy and the pending queue is full, so there's no point in copying the buffer just
+        // to be refused. Only this thread submits payloads, so the count can't go up while we're looking.
+        // Aggregated and sampled events are left where they are, so that they go on covering the whole
+        // time until a payload can actually be sent.
+        logger.debug("Skipped flushing because all workers are busy");
+        return false;
+      }
+      addHeldEvents(outbox);
+      if (outbox.isEmpty()) {
+        return false;
+      }
+      final FlushPayload payload = outbox.getPayload();
+      final int payloadEventCount = payload.events.length + (payload.summary.isEmpty() ? 0 : 1);
+      metrics.recordSummaryCounterCount(payload.summary.counters.size());
       busyFlushWorkersCount.incrementAndGet();
-      if (payloadQueue.offer(payload)) {
-        // These events now belong to the next available flush worker, so drop them from our state
-        outbox.clear();
-      } else {
+      shutdownTracker.payloadStarted(payloadEventCount);
+      try {
+        flushExecutor.execute(new Runnable() {
+          public void run() {
+            try {
+              sender.send(payload);
+              reportMetrics();
+            } finally {
+              shutdownTracker.payloadFinished(payloadEventCount);
+              synchronized (busyFlushWorkersCount) {
+                busyFlushWorkersCount.decrementAndGet();
+                busyFlushWorkersCount.notifyAll();
+              }
+            }
+          }
+        });
+        // These events now belong to the flush executor, so drop them from our state
+        outbox.removePayload();
+        return true;
+      } catch (RejectedExecutionException e) {
         logger.debug("Skipped flushing because all workers are busy");
-        // All the workers are busy so we can't flush now; keep the events in our state
-        synchronized(busyFlushWorkersCount) {
+        // Keep the events in our state so they'll be included in the next flush
+        shutdownTracker.payloadFinished(payloadEventCount);
+        synchronized (busyFlushWorkersCount) {
           busyFlushWorkersCount.decrementAndGet();
-          busyFlushWorkersCount.notify();
+          busyFlushWorkersCount.notifyAll();
+        }
+        return false;
+      }
+    }
+    
+    // Hands a replay of the spool to the flush workers if one is due. Replays also follow every successful
+    // post, but if there are few events that could be a long time after the events service is back.
+    private void triggerReplay() {
+      if (disabled.get() || !sender.isReplayDue()) {
+        return;
+      }
+      if (busyFlushWorkersCount.get() >= maxOutstandingPayloads) {
+        return; // we'll try again at the next flush
+      }
+      busyFlushWorkersCount.incrementAndGet();
+      try {
+        flushExecutor.execute(new Runnable() {
+          public void run() {
+            try {
+              sender.replaySpooledPayloads();
+            } finally {
+              synchronized (busyFlushWorkersCount) {
+                busyFlushWorkersCount.decrementAndGet();
+                busyFlushWorkersCount.notifyAll();
+              }
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        synchronized (busyFlushWorkersCount) {
+          busyFlushWorkersCount.decrementAndGet();
+          busyFlushWorkersCount.notifyAll();
+        }
+      }
+    }
+    
+    // Moves the custom event aggregates, the sampled debug events, and the counts of evaluations that
+    // overflowed the inbox into the buffer.
+    private void addHeldEvents(EventBuffer outbox) {
+      overflowSummarizer.drainTo(outbox.summarizer);
+      if (metricAggregator != null && !metricAggregator.isEmpty()) {
+        for (Event.Custom ae: metricAggregator.drain()) {
+          outbox.add(ae);
+        }
+      }
+      if (debugEventLimiter != null) {
+        for (Event.FeatureRequest fe: debugEventLimiter.drain(System.currentTimeMillis())) {
+          outbox.add(EventFactory.DEFAULT.newDebugEvent(fe));
+        }
+        metrics.recordSuppressedDebugEvents(debugEventLimiter.takeSuppressedCount());
+      }
+    }
+    
+    private void reportMetrics() {
+      if (config.eventMetricsListener != null) {
+        try {
+          config.eventMetricsListener.metricsReported(metrics.getMetrics());
+        } catch (Exception e) {
+          logger.warn("Unexpected error from event metrics listener: {}", e.toString());
+          logger.debug(e.toString(), e);
         }
       }
     }
@@ -428,46 +787,233 @@ final class DefaultEventProcessor implements EventProcessor {
     }
   }
   
+  private static final class LRUUserKeyTracker implements UserKeyTracker {
+    private final SimpleLRUCache<String, String> keys;
+    
+    LRUUserKeyTracker(int capacity) {
+      keys = new SimpleLRUCache<String, String>(capacity);
+    }
+    
+    @Override
+    public boolean noticeUser(String key) {
+      return keys.put(key, key) != null;
+    }
+    
+    @Override
+    public void clear() {
+      keys.clear();
+    }
+  }
+  
+  /**
+   * Holds the events that will go into the next flush. By default there is a single lane holding up to
+   * {@code capacity} events. With priority lanes, identify, custom, and index events, full feature events,
+   * and debug events each have their own bounded lane, so a burst of lower-priority events can only fill up
+   * its own lane; those events are then dropped, but they are still counted in the summary. Each event is
+   * numbered as it is added, so that payloads can list the events from all lanes in the order they happened.
+   */
   private static final class EventBuffer {
-    final List<Event> events = new ArrayList<>();
+    // Rough serialized sizes used for estimating the size of the buffer without actually serializing it
+    private static final int ESTIMATED_EVENT_OVERHEAD_BYTES = 100;
+    private static final int ESTIMATED_USER_BYTES = 200;
+    private static final int ESTIMATED_CUSTOM_DATA_BYTES = 100;
+    
+    private static final int HIGH_PRIORITY_LANE = 0;
+    private static final int FEATURE_LANE = 1;
+    private static final int DEBUG_LANE = 2;
+    private static final String[] LANE_NAMES = { "identify/custom", "feature", "debug" };
+    
     final EventSummarizer summarizer = new EventSummarizer();
-    private final int capacity;
-    private boolean capacityExceeded = false;
+    private final Lane[] lanes;
+    private final int maxEventsPerFlush;
+    private final boolean inlineUsers;
+    private int[] pendingCounts; // events in the last payload returned by getPayload, for each lane
+    private long nextSequenceNumber = 0;
+    long estimatedBytes = 0;
     
-    EventBuffer(int capacity) {
-      this.capacity = capacity;
+    EventBuffer(LDConfig config) {
+      if (config.eventLaneCapacities != null) {
+        lanes = new Lane[config.eventLaneCapacities.length];
+        for (int i = 0; i < lanes.length; i++) {
+          lanes[i] = new Lane(LANE_NAMES[i], config.eventLaneCapacities[i], config.eventLaneWeights[i]);
+        }
+      } else {
+        lanes = new Lane[] { new Lane(null, config.capacity, 1) };
+      }
+      this.maxEventsPerFlush = config.maxEventsPerFlush;
+      this.inlineUsers = config.inlineUsersInEvents;
     }
     
     void add(Event e) {
-      if (events.size() >= capacity) {
-        if (!capacityExceeded) { // don't need AtomicBoolean, this is only checked on one thread
-          capacityExceeded = true;
-          logger.warn("Exceeded event queue capacity. Increase capacity to avoid dropping events.");
+      Lane lane = lanes[laneFor(e)];
+      if (lane.events.size() >= lane.capacity) {
+        if (!lane.capacityExceeded) { // don't need AtomicBoolean, this is only checked on one thread
+          lane.capacityExceeded = true;
+          if (lane.name == null) {
+            logger.warn("Exceeded event queue capacity. Increase capacity to avoid dropping events.");
+          } else {
+            logger.warn("Exceeded capacity of {} event lane. Increase its capacity to avoid dropping events.", lane.name);
+          }
         }
       } else {
-        capacityExceeded = false;
-        events.add(e);
+        lane.capacityExceeded = false;
+        lane.events.add(e);
+        if (lanes.length > 1) {
+          lane.sequenceNumbers.add(nextSequenceNumber);
+        }
+        nextSequenceNumber++;
+        estimatedBytes += estimateSize(e);
       }
     }
     
+    private int laneFor(Event e) {
+      if (lanes.length == 1) {
+        return 0;
+      }
+      if (e instanceof Event.FeatureRequest) {
+        return ((Event.FeatureRequest)e).debug ? DEBUG_LANE : FEATURE_LANE;
+      }
+      return HIGH_PRIORITY_LANE;
+    }
+    
+    private int estimateSize(Event e) {
+      int size = ESTIMATED_EVENT_OVERHEAD_BYTES;
+      if (e.user != null) {
+        if (inlineUsers || e instanceof Event.Index || e instanceof Event.Identify) {
+          size += ESTIMATED_USER_BYTES;
+        } else if (e.user.getKeyAsString() != null) {
+          size += e.user.getKeyAsString().length();
+        }
+      }
+      if (e instanceof Event.FeatureRequest) {
+        size += ((Event.FeatureRequest)e).key.length();
+      } else if (e instanceof Event.Custom) {
+        Event.Custom ce = (Event.Custom)e;
+        size += ce.key == null ? 0 : ce.key.length();
+        if (ce.data != null && !ce.data.isNull()) {
+          size += ESTIMATED_CUSTOM_DATA_BYTES;
+        }
+      }
+      return size;
+    }
+    
     void addToSummary(Event e) {
       summarizer.summarizeEvent(e);
     }
     
+    int size() {
+      int n = 0;
+      for (Lane lane: lanes) {
+        n += lane.events.size();
+      }
+      return n;
+    }
+    
     boolean isEmpty() {
-      return events.isEmpty() && summarizer.snapshot().isEmpty();
+      return size() == 0 && summarizer.snapshot().isEmpty();
     }
     
+    /**
+     * Returns the events for the next flush, without removing them; call {@link #removePayload()} once
+     * the payload has been handed off. If there is a limit on events per flush, each lane contributes
+     * events in proportion to its weight, and lanes that have fewer events give up their share to the others.
+     * The events that are taken from each lane are merged back into the order in which they were added.
+     */
     FlushPayload getPayload() {
-      Event[] eventsOut = events.toArray(new Event[events.size()]);
+      int[] counts = new int[lanes.length];
+      int total = size();
+      if (maxEventsPerFlush <= 0 || total <= maxEventsPerFlush) {
+        for (int i = 0; i < lanes.length; i++) {
+          counts[i] = lanes[i].events.size();
+        }
+      } else {
+        int remaining = maxEventsPerFlush;
+        while (remaining > 0) {
+          boolean tookAny = false;
+          for (int i = 0; i < lanes.length && remaining > 0; i++) {
+            int n = Math.min(Math.min(lanes[i].weight, lanes[i].events.size() - counts[i]), remaining);
+            if (n > 0) {
+              counts[i] += n;
+              remaining -= n;
+              tookAny = true;
+            }
+          }
+          if (!tookAny) {
+            break;
+          }
+        }
+      }
+      pendingCounts = counts;
       EventSummarizer.EventSummary summary = summarizer.snapshot();
-      return new FlushPayload(eventsOut, summary);
+      return new FlushPayload(mergeLanes(counts), summary);
+    }
+    
+    // Takes the given number of events from the start of each lane, in order of their sequence numbers.
+    private Event[] mergeLanes(int[] counts) {
+      int total = 0;
+      for (int count: counts) {
+        total += count;
+      }
+      Event[] eventsOut = new Event[total];
+      if (lanes.length == 1) {
+        Iterator<Event> it = lanes[0].events.iterator();
+        for (int n = 0; n < total; n++) {
+          eventsOut[n] = it.next();
+        }
+        return eventsOut;
+      }
+      List<Iterator<Event>> eventIterators = new ArrayList<>(lanes.length);
+      List<Iterator<Long>> sequenceIterators = new ArrayList<>(lanes.length);
+      int[] remaining = counts.clone();
+      long[] nextSequenceNumbers = new long[lanes.length];
+      for (int i = 0; i < lanes.length; i++) {
+        eventIterators.add(lanes[i].events.iterator());
+        sequenceIterators.add(lanes[i].sequenceNumbers.iterator());
+        if (remaining[i] > 0) {
+          nextSequenceNumbers[i] = sequenceIterators.get(i).next();
+        }
+      }
+      for (int n = 0; n < total; n++) {
+        int earliest = -1;
+        for (int i = 0; i < lanes.length; i++) {
+          if (remaining[i] > 0 && (earliest < 0 || nextSequenceNumbers[i] < nextSequenceNumbers[earliest])) {
+            earliest = i;
+          }
+        }
+        eventsOut[n] = eventIterators.get(earliest).next();
+        if (--remaining[earliest] > 0) {
+          nextSequenceNumbers[earliest] = sequenceIterators.get(earliest).next();
+        }
+      }
+      return eventsOut;
     }
     
-    void clear() {
-      events.clear();
+    void removePayload() {
+      for (int i = 0; i < lanes.length; i++) {
+        for (int j = 0; j < pendingCounts[i]; j++) {
+          estimatedBytes -= estimateSize(lanes[i].events.removeFirst());
+          if (lanes.length > 1) {
+            lanes[i].sequenceNumbers.removeFirst();
+          }
+        }
+      }
       summarizer.clear();
     }
+    
+    private static final class Lane {
+      final String name;
+      final int capacity;
+      final int weight;
+      final ArrayDeque<Event> events = new ArrayDeque<>();
+      final ArrayDeque<Long> sequenceNumbers = new ArrayDeque<>(); // only used if there are several lanes
+      boolean capacityExceeded = false;
+      
+      Lane(String name, int capacity, int weight) {
+        this.name = name;
+        this.capacity = capacity;
+        this.weight = Math.max(1, weight);
+      }
+    }
   }
   
   private static final class FlushPayload {
@@ -484,73 +1030,167 @@ final class DefaultEventProcessor implements EventProcessor {
     void handleResponse(Response response, Date responseDate);
   }
   
-  private static final class SendEventsTask implements Runnable {
+  private static enum PostResult {
+    SUCCESS,
+    RECOVERABLE_FAILURE,
+    UNRECOVERABLE_FAILURE
+  }
+  
+  /**
+   * Serializes flushed payloads and posts them to the events service. This is called concurrently by the
+   * flush executor's threads, so it has no mutable state of its own other than the stopping flag.
+   */
+  private static final class EventSender {
+    private static final int MAX_SPOOLED_PAYLOADS_PER_REPLAY = 20;
+    
     private final String sdkKey;
     private final LDConfig config;
     private final OkHttpClient httpClient;
     private final EventResponseListener responseListener;
-    private final BlockingQueue<FlushPayload> payloadQueue;
-    private final AtomicInteger activeFlushWorkersCount;
     private final AtomicBoolean stopping;
+    private final EventSpool spool;
+    private final AdaptiveBatchSizer batchSizer;
+    private final EventMetricsRecorder metrics;
     private final EventOutputFormatter formatter;
-    private final Thread thread;
-    private final SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz"); // need one instance per task because the date parser isn't thread-safe
+    private final EventShutdownTracker shutdownTracker;
+    private final SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz"); // not thread-safe, so access is synchronized
     
-    SendEventsTask(String sdkKey, LDConfig config, OkHttpClient httpClient, EventResponseListener responseListener,
-                   BlockingQueue<FlushPayload> payloadQueue, AtomicInteger activeFlushWorkersCount,
-                   ThreadFactory threadFactory) {
+    EventSender(String sdkKey, LDConfig config, OkHttpClient httpClient, EventResponseListener responseListener,
+                EventSpool spool, AdaptiveBatchSizer batchSizer, EventMetricsRecorder metrics,
+                EventShutdownTracker shutdownTracker) {
       this.sdkKey = sdkKey;
       this.config = config;
       this.httpClient = httpClient;
       this.formatter = new EventOutputFormatter(config);
       this.responseListener = responseListener;
-      this.payloadQueue = payloadQueue;
-      this.activeFlushWorkersCount = activeFlushWorkersCount;
       this.stopping = new AtomicBoolean(false);
-      thread = threadFactory.newThread(this);
-      thread.setDaemon(true);
-      thread.start();
+      this.spool = spool;
+      this.batchSizer = batchSizer;
+      this.metrics = metrics;
+      this.shutdownTracker = shutdownTracker;
     }
     
-    public void run() {
-      while (!stopping.get()) {
-        FlushPayload payload = null;
-        try {
-          payload = payloadQueue.take();
-        } catch (InterruptedException e) {
-          continue;
-        }
-        try {
-          StringWriter stringWriter = new StringWriter();
-          int outputEventCount = formatter.writeOutputEvents(payload.events, payload.summary, stringWriter);
-          if (outputEventCount > 0) {
-            postEvents(stringWriter.toString(), outputEventCount);
+    void send(FlushPayload payload) {
+      if (stopping.get()) { // shutdown deadline is near, so don't start a post that might not finish
+        spill(payload);
+        return;
+      }
+      long startTime = System.currentTimeMillis();
+      try {
+        if (config.maxPayloadBytes > 0) {
+          for (EventOutputFormatter.OutputPayload p: formatter.writeOutputPayloads(payload.events, payload.summary,
+              config.maxPayloadBytes)) {
+            deliverPayload(p.json, p.eventCount);
+          }
+        } else {
+          EventOutputFormatter.OutputPayload p = formatter.writeOutputPayload(payload.events, payload.summary);
+          if (p.eventCount > 0) {
+            deliverPayload(p.json, p.eventCount);
           }
-        } catch (Exception e) {
-          logger.error("Unexpected error in event processor: {}", e.toString());
-          logger.debug(e.toString(), e);
-        }
-        synchronized (activeFlushWorkersCount) {
-          activeFlushWorkersCount.decrementAndGet();
-          activeFlushWorkersCount.notifyAll();
         }
+      } catch (Exception e) {
+        logger.error("Unexpected error in event processor: {}", e.toString());
+        logger.debug(e.toString(), e);
       }
+      metrics.recordFlush(System.currentTimeMillis() - startTime);
     }
     
     void stop() {
       stopping.set(true);
-      thread.interrupt();
     }
     
-    private void postEvents(String json, int outputEventCount) {
+    // Releases the spool directory. Workers that are still running after this drop what they can't deliver.
+    void close() {
+      if (spool != null) {
+        spool.close();
+      }
+    }
+    
+    // Saves a payload to the spool without trying to deliver it.
+    void spill(FlushPayload payload) {
+      try {
+        EventOutputFormatter.OutputPayload p = formatter.writeOutputPayload(payload.events, payload.summary);
+        if (p.eventCount > 0) {
+          spoolOrDrop(UUID.randomUUID().toString(), p.json, p.eventCount);
+        }
+      } catch (Exception e) {
+        logger.error("Unexpected error in event processor: {}", e.toString());
+        logger.debug(e.toString(), e);
+      }
+    }
+    
+    private void deliverPayload(byte[] json, int outputEventCount) {
+      String payloadId = UUID.randomUUID().toString();
+      PostResult result = postEvents(json, payloadId, outputEventCount, 2);
+      metrics.recordPayload(json.length, result == PostResult.SUCCESS);
+      if (result == PostResult.SUCCESS) {
+        shutdownTracker.recordDelivered(outputEventCount);
+        replaySpooledPayloads();
+      } else if (result == PostResult.RECOVERABLE_FAILURE) {
+        spoolOrDrop(payloadId, json, outputEventCount);
+      } else {
+        shutdownTracker.recordDropped(outputEventCount);
+      }
+    }
+    
+    private void spoolOrDrop(String payloadId, byte[] json, int outputEventCount) {
+      if (spool != null && spool.add(payloadId, json)) {
+        logger.warn("Saved {} undelivered event(s) to spool", outputEventCount);
+        shutdownTracker.recordSpooled(outputEventCount);
+      } else {
+        shutdownTracker.recordDropped(outputEventCount);
+      }
+    }
+    
+    boolean isReplayDue() {
+      return spool != null && !stopping.get() && spool.isReplayDue(System.currentTimeMillis());
+    }
+    
+    // Tries to deliver payloads that were spooled during an outage or by a previous process. This is done
+    // after a successful post and when the dispatcher schedules it. Only one worker does this at a time,
+    // and after a failed attempt we back off before trying again.
+    void replaySpooledPayloads() {
+      if (spool == null || !spool.beginReplay(System.currentTimeMillis())) {
+        return;
+      }
+      boolean succeeded = true;
+      try {
+        for (int i = 0; i < MAX_SPOOLED_PAYLOADS_PER_REPLAY && !stopping.get(); i++) {
+          EventSpool.SpooledPayload payload = spool.peek();
+          if (payload == null) {
+            break;
+          }
+          PostResult result = postEvents(payload.json, payload.payloadId, -1, 1);
+          metrics.recordPayload(payload.json.length, result == PostResult.SUCCESS);
+          if (result == PostResult.RECOVERABLE_FAILURE) {
+            succeeded = false;
+            break;
+          }
+          spool.remove(payload); // if the failure was unrecoverable, retrying will never help
+        }
+      } finally {
+        spool.endReplay(succeeded, System.currentTimeMillis());
+      }
+    }
+    
+    private PostResult postEvents(byte[] json, String eventPayloadId, int outputEventCount, int maxAttempts) {
       String uriStr = config.eventsURI.toString() + "/bulk";
-      String eventPayloadId = UUID.randomUUID().toString();
 
-      logger.debug("Posting {} event(s) to {} with payload: {}",
-          outputEventCount, uriStr, json);
+      if (logger.isDebugEnabled()) {
+        if (outputEventCount < 0) {
+          logger.debug("Posting spooled events to {} with payload: {}", uriStr, new String(json, Charsets.UTF_8));
+        } else {
+          logger.debug("Posting {} event(s) to {} with payload: {}",
+              outputEventCount, uriStr, new String(json, Charsets.UTF_8));
+        }
+      }
 
-      for (int attempt = 0; attempt < 2; attempt++) {
+      for (int attempt = 0; attempt < maxAttempts; attempt++) {
         if (attempt > 0) {
+          if (stopping.get()) {
+            break;
+          }
+          metrics.recordRetry();
           logger.warn("Will retry posting events after 1 second");
           try {
             Thread.sleep(1000);
@@ -568,6 +1208,10 @@ final class DefaultEventProcessor implements EventProcessor {
         try (Response response = httpClient.newCall(request).execute()) {
           long endTime = System.currentTimeMillis();
           logger.debug("Event delivery took {} ms, response status {}", endTime - startTime, response.code());
+          metrics.recordPostLatency(endTime - startTime);
+          if (response.isSuccessful() && batchSizer != null) {
+            batchSizer.recordLatency(endTime - startTime);
+          }
           if (!response.isSuccessful()) {
             logger.warn("Unexpected response status when posting events: {}", response.code());
             if (isHttpErrorRecoverable(response.code())) {
@@ -575,19 +1219,22 @@ final class DefaultEventProcessor implements EventProcessor {
             }
           }
           responseListener.handleResponse(response, getResponseDate(response));
-          break;
+          return response.isSuccessful() ? PostResult.SUCCESS : PostResult.UNRECOVERABLE_FAILURE;
         } catch (IOException e) {
           logger.warn("Unhandled exception in LaunchDarkly client when posting events to URL: " + request.url(), e);
           continue;
         }
       }
+      return PostResult.RECOVERABLE_FAILURE;
     }
     
     private Date getResponseDate(Response response) {
       String dateStr = response.header("Date");
       if (dateStr != null) {
         try {
-          return httpDateFormat.parse(dateStr);
+          synchronized (httpDateFormat) {
+            return httpDateFormat.parse(dateStr);
+          }
         } catch (ParseException e) {
           logger.warn("Received invalid Date header from events service");
         }
@@ -51,7 +51,7 @@ class DefaultFeatureRequestor implements FeatureRequestor {
   }
 
   public void close() {
-    shutdownHttpClient(httpClient);
+    shutdownHttpClient(httpClient, config);
   }
   
   public FeatureFlag getFlag(String featureKey) throws IOException, HttpErrorException {
@@ -0,0 +1,39 @@
+package com.launchdarkly.client;
+
+/**
+ * Determines what the default event processor does when analytics events are being produced faster
+ * than they can be processed, so that its input queue (whose size is set by {@link LDConfig.Builder#capacity(int)})
+ * is full.
+ * <p>
+ * Whichever policy is used, the number of events that were dropped or sampled out can be obtained from
+ * {@link LDClient#getEventInboxStatistics()}.
+ * 
+ * @see LDConfig.Builder#eventBackpressurePolicy(EventBackpressurePolicy)
+ * @since 4.12.0
+ */
+public enum EventBackpressurePolicy {
+  /**
+   * The new event is discarded. This is the default behavior.
+   */
+  DROP_NEWEST,
+  
+  /**
+   * The oldest event that is still waiting in the queue is discarded to make room for the new one.
+   */
+  DROP_OLDEST,
+  
+  /**
+   * The application thread that produced the event waits for room in the queue, up to the timeout set by
+   * {@link LDConfig.Builder#eventBackpressureTimeoutMillis(long)}; if there is still no room, the event is
+   * discarded. This slows down the application in exchange for losing fewer events.
+   */
+  BLOCK,
+  
+  /**
+   * Once the queue is half full, a growing proportion of events is sampled out before it reaches the
+   * queue, rising to all of them when the queue is full. Flag evaluations that are sampled out or
+   * dropped are still counted in the summary event, so the flag evaluation counts reported to
+   * LaunchDarkly stay accurate; only the individual events are lost.
+   */
+  SAMPLE
+}
@@ -0,0 +1,87 @@
+package com.launchdarkly.client;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * A snapshot of how many analytics events the default event processor could not accept because its
+ * input queue was full, broken down by event kind ({@code "feature"}, {@code "custom"}, or
+ * {@code "identify"}). The counts are cumulative since the client was created.
+ * 
+ * @see LDClient#getEventInboxStatistics()
+ * @see EventBackpressurePolicy
+ * @since 4.12.0
+ */
+public final class EventInboxStatistics {
+  static final EventInboxStatistics EMPTY = new EventInboxStatistics(EventBackpressurePolicy.DROP_NEWEST,
+      ImmutableMap.<String, Long>of(), ImmutableMap.<String, Long>of());
+  
+  private final EventBackpressurePolicy policy;
+  private final Map<String, Long> droppedCounts;
+  private final Map<String, Long> sampledCounts;
+  
+  EventInboxStatistics(EventBackpressurePolicy policy, Map<String, Long> droppedCounts, Map<String, Long> sampledCounts) {
+    this.policy = policy;
+    this.droppedCounts = ImmutableMap.copyOf(droppedCounts);
+    this.sampledCounts = ImmutableMap.copyOf(sampledCounts);
+  }
+  
+  /**
+   * Returns the policy that the event processor is using.
+   * @return the backpressure policy
+   */
+  public EventBackpressurePolicy getPolicy() {
+    return policy;
+  }
+  
+  /**
+   * Returns the number of events of the given kind that were discarded because the queue was full.
+   * @param kind an event kind
+   * @return the number of dropped events
+   */
+  public long getDroppedCount(String kind) {
+    Long n = droppedCounts.get(kind);
+    return n == null ? 0 : n.longValue();
+  }
+  
+  /**
+   * Returns the number of events of the given kind that were sampled out by the
+   * {@link EventBackpressurePolicy#SAMPLE} policy.
+   * @param kind an event kind
+   * @return the number of sampled-out events
+   */
+  public long getSampledCount(String kind) {
+    Long n = sampledCounts.get(kind);
+    return n == null ? 0 : n.longValue();
+  }
+  
+  /**
+   * Returns the number of dropped events of all kinds.
+   * @return the total number of dropped events
+   */
+  public long getTotalDroppedCount() {
+    return sum(droppedCounts);
+  }
+  
+  /**
+   * Returns the number of sampled-out events of all kinds.
+   * @return the total number of sampled-out events
+   */
+  public long getTotalSampledCount() {
+    return sum(sampledCounts);
+  }
+  
+  private static long sum(Map<String, Long> counts) {
+    long total = 0;
+    for (Long n: counts.values()) {
+      total += n;
+    }
+    return total;
+  }
+  
+  @Override
+  public String toString() {
+    return "EventInboxStatistics(" + policy + ",dropped=" + droppedCounts + ",sampled=" + sampledCounts + ")";
+  }
+}
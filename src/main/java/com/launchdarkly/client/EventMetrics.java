@@ -0,0 +1,176 @@
+package com.launchdarkly.client;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A snapshot of statistics about the default event processor. Counts are cumulative since the client
+ * was created, except where otherwise noted.
+ * 
+ * @see EventMetricsListener
+ * @since 4.12.0
+ */
+public final class EventMetrics {
+  /**
+   * The upper bounds, in milliseconds, of the buckets in {@link #getPostLatencyHistogram()}. The last
+   * bucket of the histogram, which has no upper bound, is not included here.
+   */
+  public static final long[] POST_LATENCY_BUCKET_BOUNDS_MILLIS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+  
+  private final int inboxDepth;
+  private final int inboxCapacity;
+  private final Map<String, Long> processedEventCounts;
+  private final EventInboxStatistics inboxStatistics;
+  private final int lastSummaryCounterCount;
+  private final long lastFlushDurationMillis;
+  private final long flushCount;
+  private final long payloadCount;
+  private final long failedPayloadCount;
+  private final long serializedBytes;
+  private final long retryCount;
+  private final long[] postLatencyHistogram;
+  private final long suppressedDebugEventCount;
+  
+  EventMetrics(int inboxDepth, int inboxCapacity, Map<String, Long> processedEventCounts,
+      EventInboxStatistics inboxStatistics, int lastSummaryCounterCount, long lastFlushDurationMillis,
+      long flushCount, long payloadCount, long failedPayloadCount, long serializedBytes, long retryCount,
+      long[] postLatencyHistogram, long suppressedDebugEventCount) {
+    this.inboxDepth = inboxDepth;
+    this.inboxCapacity = inboxCapacity;
+    this.processedEventCounts = ImmutableMap.copyOf(processedEventCounts);
+    this.inboxStatistics = inboxStatistics;
+    this.lastSummaryCounterCount = lastSummaryCounterCount;
+    this.lastFlushDurationMillis = lastFlushDurationMillis;
+    this.flushCount = flushCount;
+    this.payloadCount = payloadCount;
+    this.failedPayloadCount = failedPayloadCount;
+    this.serializedBytes = serializedBytes;
+    this.retryCount = retryCount;
+    this.postLatencyHistogram = postLatencyHistogram;
+    this.suppressedDebugEventCount = suppressedDebugEventCount;
+  }
+  
+  /**
+   * Returns the number of messages waiting in the event processor's input queue when the snapshot was taken.
+   * @return the current queue depth
+   */
+  public int getInboxDepth() {
+    return inboxDepth;
+  }
+  
+  /**
+   * Returns the size of the event processor's input queue.
+   * @return the queue capacity
+   * @see LDConfig.Builder#capacity(int)
+   */
+  public int getInboxCapacity() {
+    return inboxCapacity;
+  }
+  
+  /**
+   * Returns the number of events of the given kind ({@code "feature"}, {@code "custom"}, or {@code "identify"})
+   * that the event processor has taken from its input queue.
+   * @param kind an event kind
+   * @return the number of processed events
+   */
+  public long getProcessedEventCount(String kind) {
+    Long n = processedEventCounts.get(kind);
+    return n == null ? 0 : n.longValue();
+  }
+  
+  /**
+   * Returns the number of events that were dropped or sampled out because the input queue was full.
+   * @return the inbox statistics
+   */
+  public EventInboxStatistics getInboxStatistics() {
+    return inboxStatistics;
+  }
+  
+  /**
+   * Returns the number of distinct flag, version, and variation counters in the summary event of the
+   * most recent flush.
+   * @return the summary counter cardinality
+   */
+  public int getLastSummaryCounterCount() {
+    return lastSummaryCounterCount;
+  }
+  
+  /**
+   * Returns how long the most recent flush took to serialize and deliver all of its payloads.
+   * @return the duration in milliseconds
+   */
+  public long getLastFlushDurationMillis() {
+    return lastFlushDurationMillis;
+  }
+  
+  /**
+   * Returns the number of flushes that have finished.
+   * @return the flush count
+   */
+  public long getFlushCount() {
+    return flushCount;
+  }
+  
+  /**
+   * Returns the number of payloads that were posted, including payloads replayed from the event spool.
+   * A flush may produce several payloads if {@link LDConfig.Builder#maxPayloadBytes(int)} is set.
+   * @return the payload count
+   */
+  public long getPayloadCount() {
+    return payloadCount;
+  }
+  
+  /**
+   * Returns the number of payloads that could not be delivered even after retrying.
+   * @return the failed payload count
+   */
+  public long getFailedPayloadCount() {
+    return failedPayloadCount;
+  }
+  
+  /**
+   * Returns the total size of the payloads that were posted, in bytes of UTF-8 JSON. Payloads are not
+   * compressed, so this is also the size of the request bodies.
+   * @return the number of bytes
+   */
+  public long getSerializedBytes() {
+    return serializedBytes;
+  }
+  
+  /**
+   * Returns the number of times a post was retried after a recoverable error.
+   * @return the retry count
+   */
+  public long getRetryCount() {
+    return retryCount;
+  }
+  
+  /**
+   * Returns the number of HTTP requests to the events service whose latency fell into each bucket. Element
+   * {@code i} counts requests that took at most {@code POST_LATENCY_BUCKET_BOUNDS_MILLIS[i]} milliseconds
+   * (and more than the previous bound); the last element counts requests slower than all of the bounds.
+   * @return a new array of counts
+   */
+  public long[] getPostLatencyHistogram() {
+    return Arrays.copyOf(postLatencyHistogram, postLatencyHistogram.length);
+  }
+  
+  /**
+   * Returns the number of flag evaluations for which no debug event was sent because of
+   * {@link LDConfig.Builder#debugEventsPerFlagPerSecond(double)}. These evaluations are still counted in
+   * summary events.
+   * @return the number of suppressed debug events
+   */
+  public long getSuppressedDebugEventCount() {
+    return suppressedDebugEventCount;
+  }
+  
+  @Override
+  public String toString() {
+    return "EventMetrics(inbox=" + inboxDepth + "/" + inboxCapacity + ",processed=" + processedEventCounts +
+        "," + inboxStatistics + ",flushes=" + flushCount + ",payloads=" + payloadCount + ",failed=" + failedPayloadCount +
+        ",bytes=" + serializedBytes + ",retries=" + retryCount + ",suppressedDebug=" + suppressedDebugEventCount + ",latency=" + Arrays.toString(postLatencyHistogram) + ")";
+  }
+}
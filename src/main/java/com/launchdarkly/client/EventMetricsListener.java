@@ -0,0 +1,20 @@
+package com.launchdarkly.client;
+
+/**
+ * Receives statistics about the default event processor, for monitoring or capacity planning.
+ * <p>
+ * The listener is called on one of the event processor's worker threads after each flush has finished
+ * delivering its payloads, so it should return quickly; it may be called concurrently if several flushes
+ * finish at the same time.
+ * 
+ * @see LDConfig.Builder#eventMetricsListener(EventMetricsListener)
+ * @since 4.12.0
+ */
+public interface EventMetricsListener {
+  /**
+   * Called with a snapshot of the event processor's statistics.
+   * 
+   * @param metrics the current statistics
+   */
+  void metricsReported(EventMetrics metrics);
+}
@@ -0,0 +1,121 @@
+package com.launchdarkly.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the statistics reported by {@link EventMetrics}. Everything is recorded with atomic
+ * operations, so recording never blocks: drop counts are updated by application threads, processed
+ * counts by the dispatcher thread, and delivery statistics by the flush workers.
+ */
+final class EventMetricsRecorder {
+  static final String[] INPUT_EVENT_KINDS = { "feature", "custom", "identify" };
+  
+  private final BlockingQueue<?> inbox;
+  private final int inboxCapacity;
+  private final EventBackpressurePolicy backpressurePolicy;
+  // These maps are filled in by the constructor and never modified after that, so they need no locking.
+  private final Map<String, AtomicLong> processedCounts = new HashMap<>();
+  private final Map<String, AtomicLong> droppedCounts = new HashMap<>();
+  private final Map<String, AtomicLong> sampledCounts = new HashMap<>();
+  private final AtomicInteger lastSummaryCounterCount = new AtomicInteger();
+  private final AtomicLong lastFlushDurationMillis = new AtomicLong();
+  private final AtomicLong flushCount = new AtomicLong();
+  private final AtomicLong payloadCount = new AtomicLong();
+  private final AtomicLong failedPayloadCount = new AtomicLong();
+  private final AtomicLong serializedBytes = new AtomicLong();
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong suppressedDebugEventCount = new AtomicLong();
+  private final AtomicLongArray postLatencyHistogram =
+      new AtomicLongArray(EventMetrics.POST_LATENCY_BUCKET_BOUNDS_MILLIS.length + 1);
+  
+  EventMetricsRecorder(BlockingQueue<?> inbox, int inboxCapacity, EventBackpressurePolicy backpressurePolicy) {
+    this.inbox = inbox;
+    this.inboxCapacity = inboxCapacity;
+    this.backpressurePolicy = backpressurePolicy;
+    for (String kind: INPUT_EVENT_KINDS) {
+      processedCounts.put(kind, new AtomicLong());
+      droppedCounts.put(kind, new AtomicLong());
+      sampledCounts.put(kind, new AtomicLong());
+    }
+  }
+  
+  static String eventKind(Event e) {
+    if (e instanceof Event.FeatureRequest) {
+      return "feature";
+    }
+    return e instanceof Event.Identify ? "identify" : "custom";
+  }
+  
+  void recordProcessed(Event e) {
+    processedCounts.get(eventKind(e)).incrementAndGet();
+  }
+  
+  void recordDropped(Event e) {
+    droppedCounts.get(eventKind(e)).incrementAndGet();
+  }
+  
+  void recordSampled(Event e) {
+    sampledCounts.get(eventKind(e)).incrementAndGet();
+  }
+  
+  void recordSummaryCounterCount(int count) {
+    lastSummaryCounterCount.set(count);
+  }
+  
+  void recordFlush(long durationMillis) {
+    lastFlushDurationMillis.set(durationMillis);
+    flushCount.incrementAndGet();
+  }
+  
+  void recordPayload(int bytes, boolean delivered) {
+    payloadCount.incrementAndGet();
+    serializedBytes.addAndGet(bytes);
+    if (!delivered) {
+      failedPayloadCount.incrementAndGet();
+    }
+  }
+  
+  void recordSuppressedDebugEvents(long count) {
+    suppressedDebugEventCount.addAndGet(count);
+  }
+  
+  void recordRetry() {
+    retryCount.incrementAndGet();
+  }
+  
+  void recordPostLatency(long millis) {
+    long[] bounds = EventMetrics.POST_LATENCY_BUCKET_BOUNDS_MILLIS;
+    int i = 0;
+    while (i < bounds.length && millis > bounds[i]) {
+      i++;
+    }
+    postLatencyHistogram.incrementAndGet(i);
+  }
+  
+  EventInboxStatistics getInboxStatistics() {
+    return new EventInboxStatistics(backpressurePolicy, snapshotCounts(droppedCounts), snapshotCounts(sampledCounts));
+  }
+  
+  EventMetrics getMetrics() {
+    long[] histogram = new long[postLatencyHistogram.length()];
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] = postLatencyHistogram.get(i);
+    }
+    return new EventMetrics(inbox.size(), inboxCapacity, snapshotCounts(processedCounts), getInboxStatistics(),
+        lastSummaryCounterCount.get(), lastFlushDurationMillis.get(), flushCount.get(), payloadCount.get(),
+        failedPayloadCount.get(), serializedBytes.get(), retryCount.get(), histogram, suppressedDebugEventCount.get());
+  }
+  
+  private static Map<String, Long> snapshotCounts(Map<String, AtomicLong> counts) {
+    Map<String, Long> ret = new HashMap<>();
+    for (Map.Entry<String, AtomicLong> e: counts.entrySet()) {
+      ret.put(e.getKey(), e.getValue().get());
+    }
+    return ret;
+  }
+}
@@ -5,13 +5,19 @@ import com.launchdarkly.client.EventSummarizer.CounterKey;
 import com.launchdarkly.client.EventSummarizer.CounterValue;
 import com.launchdarkly.client.value.LDValue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Transforms analytics events and summary data into the JSON format that we send to LaunchDarkly.
- * Rather than creating intermediate objects to represent this schema, we use the Gson streaming
- * output API to construct JSON directly.
+ * Rather than creating intermediate objects to represent this schema, we construct JSON directly with a
+ * streaming writer: normally {@link Utf8JsonWriter}, which produces the UTF-8 request body without an
+ * intermediate string, or else Gson's streaming output API, which produces exactly the same JSON.
  */
 class EventOutputFormatter {
   private final LDConfig config;
@@ -21,28 +27,69 @@ class EventOutputFormatter {
   }
   
   int writeOutputEvents(Event[] events, EventSummarizer.EventSummary summary, Writer writer) throws IOException {
-    int count = 0;    
     try (JsonWriter jsonWriter = new JsonWriter(writer)) {
-      jsonWriter.beginArray();
-      for (Event event: events) {
-        if (writeOutputEvent(event, jsonWriter)) {
-          count++;
-        }
-      }
-      if (!summary.isEmpty()) {
-        writeSummaryEvent(summary, jsonWriter);
+      return writeOutputEvents(events, summary, new GsonJsonOutput(jsonWriter));
+    }
+  }
+  
+  /**
+   * Serializes the same output as {@link #writeOutputEvents(Event[], EventSummarizer.EventSummary, Writer)},
+   * but as UTF-8 bytes.
+   */
+  OutputPayload writeOutputPayload(Event[] events, EventSummarizer.EventSummary summary) throws IOException {
+    Utf8JsonWriter out = new Utf8JsonWriter();
+    int count = writeOutputEvents(events, summary, out);
+    return new OutputPayload(out.toByteArray(), count);
+  }
+  
+  private int writeOutputEvents(Event[] events, EventSummarizer.EventSummary summary, JsonOutput out) throws IOException {
+    int count = 0;    
+    Map<LDUser, String> userJsonCache = new IdentityHashMap<>();
+    out.beginArray();
+    for (Event event: events) {
+      if (writeOutputEvent(event, out, userJsonCache)) {
         count++;
       }
-      jsonWriter.endArray();
     }
+    if (!summary.isEmpty()) {
+      writeSummaryEvent(summary, out);
+      count++;
+    }
+    out.endArray();
     return count;
   }
   
-  private boolean writeOutputEvent(Event event, JsonWriter jw) throws IOException {
+  /**
+   * Serializes the same output as {@link #writeOutputPayload(Event[], EventSummarizer.EventSummary)}, but
+   * splits it into several JSON arrays so that none is larger than the specified number of bytes (unless a
+   * single event is larger than that, in which case it is sent by itself).
+   */
+  List<OutputPayload> writeOutputPayloads(Event[] events, EventSummarizer.EventSummary summary, int maxBytes) throws IOException {
+    PayloadSplitter splitter = new PayloadSplitter(maxBytes);
+    Map<LDUser, String> userJsonCache = new IdentityHashMap<>();
+    Utf8JsonWriter out = new Utf8JsonWriter();
+    for (Event event: events) {
+      out.reset();
+      if (writeOutputEvent(event, out, userJsonCache)) {
+        splitter.add(out);
+      }
+    }
+    if (!summary.isEmpty()) {
+      out.reset();
+      writeSummaryEvent(summary, out);
+      splitter.add(out);
+    }
+    return splitter.finish();
+  }
+  
+  // The same user often appears in many events within a payload (for instance, in an index event and then in
+  // debug events), so within each call we keep the serialized user JSON for each LDUser instance we've
+  // already written. Users are immutable, so the JSON can't change while we're working.
+  private boolean writeOutputEvent(Event event, JsonOutput jw, Map<LDUser, String> userJsonCache) throws IOException {
     if (event instanceof Event.FeatureRequest) {
       Event.FeatureRequest fe = (Event.FeatureRequest)event;
       startEvent(fe, fe.debug ? "debug" : "feature", fe.key, jw);
-      writeUserOrKey(fe, fe.debug, jw);
+      writeUserOrKey(fe, fe.debug, jw, userJsonCache);
       if (fe.version != null) {
         jw.name("version");
         jw.value(fe.version);
@@ -55,27 +102,27 @@ class EventOutputFormatter {
       writeLDValue("default", fe.defaultVal, jw);
       if (fe.prereqOf != null) {
         jw.name("prereqOf");
-        jw.value(fe.prereqOf);
+        jw.symbol(fe.prereqOf);
       }
       writeEvaluationReason("reason", fe.reason, jw);
       jw.endObject();
     } else if (event instanceof Event.Identify) {
       startEvent(event, "identify", event.user == null ? null : event.user.getKeyAsString(), jw);
-      writeUser(event.user, jw);
+      writeUser(event.user, jw, userJsonCache);
       jw.endObject();
     } else if (event instanceof Event.Custom) {
       Event.Custom ce = (Event.Custom)event;
       startEvent(event, "custom", ce.key, jw);
-      writeUserOrKey(ce, false, jw);
+      writeUserOrKey(ce, false, jw, userJsonCache);
       writeLDValue("data", ce.data, jw);
       if (ce.metricValue != null) {
         jw.name("metricValue");
-        jw.value(ce.metricValue);
+        jw.value(ce.metricValue.doubleValue());
       }
       jw.endObject();
     } else if (event instanceof Event.Index) {
       startEvent(event, "index", null, jw);
-      writeUser(event.user, jw);
+      writeUser(event.user, jw, userJsonCache);
       jw.endObject();
     } else {
       return false;
@@ -83,11 +130,11 @@ class EventOutputFormatter {
     return true;
   }
   
-  private void writeSummaryEvent(EventSummarizer.EventSummary summary, JsonWriter jw) throws IOException {
+  private void writeSummaryEvent(EventSummarizer.EventSummary summary, JsonOutput jw) throws IOException {
     jw.beginObject();
     
     jw.name("kind");
-    jw.value("summary");
+    jw.symbol("summary");
     
     jw.name("startDate");
     jw.value(summary.startDate);
@@ -152,23 +199,27 @@ class EventOutputFormatter {
     jw.endObject();
   }
   
-  private void startEvent(Event event, String kind, String key, JsonWriter jw) throws IOException {
+  private void startEvent(Event event, String kind, String key, JsonOutput jw) throws IOException {
     jw.beginObject();
     jw.name("kind");
-    jw.value(kind);
+    jw.symbol(kind);
     jw.name("creationDate");
     jw.value(event.creationDate);
     if (key != null) {
       jw.name("key");
-      jw.value(key);
+      if (event instanceof Event.Identify) {
+        jw.value(key); // a user key, so not worth caching
+      } else {
+        jw.symbol(key);
+      }
     }
   }
   
-  private void writeUserOrKey(Event event, boolean forceInline, JsonWriter jw) throws IOException {
+  private void writeUserOrKey(Event event, boolean forceInline, JsonOutput jw, Map<LDUser, String> userJsonCache) throws IOException {
     LDUser user = event.user;
     if (user != null) {
       if (config.inlineUsersInEvents || forceInline) {
-        writeUser(user, jw);
+        writeUser(user, jw, userJsonCache);
       } else {
         jw.name("userKey");
         jw.value(user.getKeyAsString());
@@ -176,23 +227,43 @@ class EventOutputFormatter {
     }
   }
   
-  private void writeUser(LDUser user, JsonWriter jw) throws IOException {
+  private void writeUser(LDUser user, JsonOutput jw, Map<LDUser, String> userJsonCache) throws IOException {
+    if (user == null) {
+      return; // the user serializer writes null, which Gson omits along with the property name
+    }
     jw.name("user");
-    // config.gson is already set up to use our custom serializer, which knows about private attributes
-    // and already uses the streaming approach
-    config.gson.toJson(user, LDUser.class, jw);
+    String json = userJsonCache.get(user);
+    if (json == null) {
+      // config.gson is already set up to use our custom serializer, which knows about private attributes
+      json = config.gson.toJson(user, LDUser.class);
+      userJsonCache.put(user, json);
+    }
+    jw.jsonValue(json);
   }
   
-  private void writeLDValue(String key, LDValue value, JsonWriter jw) throws IOException {
+  private void writeLDValue(String key, LDValue value, JsonOutput jw) throws IOException {
     if (value == null || value.isNull()) {
       return;
     }
     jw.name(key);
-    config.gson.toJson(value, LDValue.class, jw); // LDValue defines its own custom serializer
+    switch (value.getType()) {
+    case BOOLEAN:
+      jw.value(value.booleanValue());
+      break;
+    case NUMBER:
+      if (value.isInt()) {
+        jw.value(value.intValue());
+      } else {
+        jw.value(value.doubleValue());
+      }
+      break;
+    default:
+      jw.jsonValue(config.gson.toJson(value, LDValue.class)); // LDValue defines its own custom serializer
+    }
   }
   
   // This logic is so that we don't have to define multiple custom serializers for the various reason subclasses.
-  private void writeEvaluationReason(String key, EvaluationReason er, JsonWriter jw) throws IOException {
+  private void writeEvaluationReason(String key, EvaluationReason er, JsonOutput jw) throws IOException {
     if (er == null) {
       return;
     }
@@ -201,16 +272,16 @@ class EventOutputFormatter {
     jw.beginObject();
     
     jw.name("kind");
-    jw.value(er.getKind().name());
+    jw.symbol(er.getKind().name());
     
     if (er instanceof EvaluationReason.Error) {
       EvaluationReason.Error ere = (EvaluationReason.Error)er;
       jw.name("errorKind");
-      jw.value(ere.getErrorKind().name());
+      jw.symbol(ere.getErrorKind().name());
     } else if (er instanceof EvaluationReason.PrerequisiteFailed) {
       EvaluationReason.PrerequisiteFailed erpf = (EvaluationReason.PrerequisiteFailed)er;
       jw.name("prerequisiteKey");
-      jw.value(erpf.getPrerequisiteKey());
+      jw.symbol(erpf.getPrerequisiteKey());
     } else if (er instanceof EvaluationReason.RuleMatch) {
       EvaluationReason.RuleMatch errm = (EvaluationReason.RuleMatch)er;
       jw.name("ruleIndex");
@@ -223,4 +294,137 @@ class EventOutputFormatter {
     
     jw.endObject();
   }
+  
+  /**
+   * The subset of a streaming JSON writer that we use for event output.
+   */
+  interface JsonOutput {
+    void beginObject() throws IOException;
+    void endObject() throws IOException;
+    void beginArray() throws IOException;
+    void endArray() throws IOException;
+    void name(String name) throws IOException;
+    void value(String value) throws IOException;
+    /**
+     * Writes a string value that is likely to recur in every payload, such as an event kind or a flag key.
+     */
+    void symbol(String value) throws IOException;
+    void value(long value) throws IOException;
+    void value(double value) throws IOException;
+    void value(boolean value) throws IOException;
+    /**
+     * Writes a value that has already been serialized to JSON.
+     */
+    void jsonValue(String json) throws IOException;
+  }
+  
+  private static final class GsonJsonOutput implements JsonOutput {
+    private final JsonWriter jw;
+    
+    GsonJsonOutput(JsonWriter jw) {
+      this.jw = jw;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+      jw.beginObject();
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      jw.endObject();
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+      jw.beginArray();
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      jw.endArray();
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+      jw.name(name);
+    }
+
+    @Override
+    public void value(String value) throws IOException {
+      jw.value(value);
+    }
+
+    @Override
+    public void symbol(String value) throws IOException {
+      jw.value(value);
+    }
+
+    @Override
+    public void value(long value) throws IOException {
+      jw.value(value);
+    }
+
+    @Override
+    public void value(double value) throws IOException {
+      jw.value(value);
+    }
+
+    @Override
+    public void value(boolean value) throws IOException {
+      jw.value(value);
+    }
+
+    @Override
+    public void jsonValue(String json) throws IOException {
+      jw.jsonValue(json);
+    }
+  }
+  
+  static final class OutputPayload {
+    final byte[] json;
+    final int eventCount;
+    
+    OutputPayload(byte[] json, int eventCount) {
+      this.json = json;
+      this.eventCount = eventCount;
+    }
+  }
+  
+  // Accumulates individually serialized events into JSON arrays of limited size.
+  private static final class PayloadSplitter {
+    private final int maxBytes;
+    private final List<OutputPayload> payloads = new ArrayList<>();
+    private final ByteArrayOutputStream current = new ByteArrayOutputStream();
+    private int currentCount;
+    
+    PayloadSplitter(int maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+    
+    void add(Utf8JsonWriter event) {
+      int eventBytes = event.size();
+      // size of the finished array if we add this event: what we have so far, a comma, the new event, and ']'
+      if (currentCount > 0 && current.size() + eventBytes + 2 > maxBytes) {
+        flushCurrent();
+      }
+      current.write(currentCount == 0 ? '[' : ',');
+      event.writeTo(current);
+      currentCount++;
+    }
+    
+    List<OutputPayload> finish() {
+      if (currentCount > 0) {
+        flushCurrent();
+      }
+      return payloads;
+    }
+    
+    private void flushCurrent() {
+      current.write(']');
+      payloads.add(new OutputPayload(current.toByteArray(), currentCount));
+      current.reset();
+      currentCount = 0;
+    }
+  }
 }
@@ -0,0 +1,87 @@
+package com.launchdarkly.client;
+
+/**
+ * Describes what happened to buffered analytics events when the client was closed with a shutdown
+ * deadline. Event counts include index and summary events, since those are sent like any other event.
+ * 
+ * @see LDConfig.Builder#eventShutdownTimeoutMillis(long)
+ * @see LDClient#getEventShutdownReport()
+ * @since 4.12.0
+ */
+public final class EventShutdownReport {
+  private final boolean completedWithinDeadline;
+  private final long durationMillis;
+  private final long deliveredEventCount;
+  private final long spooledEventCount;
+  private final long droppedEventCount;
+  private final long unresolvedEventCount;
+  
+  EventShutdownReport(boolean completedWithinDeadline, long durationMillis, long deliveredEventCount,
+      long spooledEventCount, long droppedEventCount, long unresolvedEventCount) {
+    this.completedWithinDeadline = completedWithinDeadline;
+    this.durationMillis = durationMillis;
+    this.deliveredEventCount = deliveredEventCount;
+    this.spooledEventCount = spooledEventCount;
+    this.droppedEventCount = droppedEventCount;
+    this.unresolvedEventCount = unresolvedEventCount;
+  }
+  
+  /**
+   * Returns true if every buffered event was delivered, spooled, or dropped before the deadline.
+   * @return true if shutdown finished in time
+   */
+  public boolean isCompletedWithinDeadline() {
+    return completedWithinDeadline;
+  }
+  
+  /**
+   * Returns how long the event processor took to shut down.
+   * @return the duration in milliseconds
+   */
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+  
+  /**
+   * Returns the number of events that were delivered to LaunchDarkly while shutting down.
+   * @return the delivered event count
+   */
+  public long getDeliveredEventCount() {
+    return deliveredEventCount;
+  }
+  
+  /**
+   * Returns the number of events that could not be delivered in time and were written to the event spool,
+   * to be sent by a later process.
+   * @return the spooled event count
+   * @see LDConfig.Builder#eventSpoolDirectory(java.io.File)
+   */
+  public long getSpooledEventCount() {
+    return spooledEventCount;
+  }
+  
+  /**
+   * Returns the number of events that were lost, because they could not be delivered and there was no
+   * event spool (or they could not be written to it).
+   * @return the dropped event count
+   */
+  public long getDroppedEventCount() {
+    return droppedEventCount;
+  }
+  
+  /**
+   * Returns the number of events whose delivery was still in progress when the deadline passed. These
+   * may or may not have reached LaunchDarkly.
+   * @return the unresolved event count
+   */
+  public long getUnresolvedEventCount() {
+    return unresolvedEventCount;
+  }
+  
+  @Override
+  public String toString() {
+    return "EventShutdownReport(" + (completedWithinDeadline ? "completed" : "timed out") + " in " + durationMillis +
+        "ms,delivered=" + deliveredEventCount + ",spooled=" + spooledEventCount + ",dropped=" + droppedEventCount +
+        ",unresolved=" + unresolvedEventCount + ")";
+  }
+}
@@ -0,0 +1,64 @@
+package com.launchdarkly.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of what happens to events while the event processor is shutting down with a deadline, so
+ * that {@link DefaultEventProcessor#close()} can produce an {@link EventShutdownReport}. Outcomes are recorded
+ * by the dispatcher thread and the flush workers, so everything is atomic.
+ */
+final class EventShutdownTracker {
+  private volatile long deadline = 0;
+  private final AtomicLong outstandingEventCount = new AtomicLong();
+  private final AtomicLong deliveredEventCount = new AtomicLong();
+  private final AtomicLong spooledEventCount = new AtomicLong();
+  private final AtomicLong droppedEventCount = new AtomicLong();
+  
+  /**
+   * Starts counting outcomes.
+   * @param deadline the time in milliseconds by which shutdown should be finished
+   */
+  void begin(long deadline) {
+    this.deadline = deadline;
+  }
+  
+  /**
+   * Returns the shutdown deadline, or zero if shutdown has not begun or has no deadline.
+   * @return the deadline in milliseconds
+   */
+  long getDeadline() {
+    return deadline;
+  }
+  
+  void payloadStarted(int eventCount) {
+    outstandingEventCount.addAndGet(eventCount);
+  }
+  
+  void payloadFinished(int eventCount) {
+    outstandingEventCount.addAndGet(-eventCount);
+  }
+  
+  void recordDelivered(int eventCount) {
+    if (deadline != 0) {
+      deliveredEventCount.addAndGet(eventCount);
+    }
+  }
+  
+  void recordSpooled(int eventCount) {
+    if (deadline != 0) {
+      spooledEventCount.addAndGet(eventCount);
+    }
+  }
+  
+  void recordDropped(int eventCount) {
+    if (deadline != 0) {
+      droppedEventCount.addAndGet(eventCount);
+    }
+  }
+  
+  EventShutdownReport getReport(boolean dispatcherFinished, long durationMillis) {
+    long unresolved = Math.max(0, outstandingEventCount.get());
+    return new EventShutdownReport(dispatcherFinished && unresolved == 0, durationMillis, deliveredEventCount.get(),
+        spooledEventCount.get(), droppedEventCount.get(), unresolved);
+  }
+}
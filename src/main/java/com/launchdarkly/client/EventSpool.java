@@ -0,0 +1,288 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * A size-capped, segmented on-disk store for analytics event payloads that could not be delivered.
+ * <p>
+ * Each payload is written to its own segment file, so a partially written file can never corrupt
+ * other payloads; files are first written under a temporary name and then atomically renamed.
+ * Segment names sort in the order the payloads were spooled, which lets a new process pick up
+ * payloads that were left behind by a previous one. The payload ID is part of the file name so
+ * that a replayed payload carries the same ID as the original attempt, allowing the events
+ * service to discard duplicates.
+ * <p>
+ * Only one spool at a time can use the files for an SDK key: otherwise two clients could both post the
+ * same payload. A spool holds a lock on a file in its directory until it is closed, and a second spool
+ * for the same directory and SDK key, in this process or another one, fails to open.
+ * <p>
+ * All methods are synchronized, since payloads may be spooled and replayed by different flush workers.
+ */
+final class EventSpool implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(EventSpool.class);
+  private static final String SEGMENT_SUFFIX = ".events";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final String LOCK_FILE_NAME = "spool.lock";
+  private static final long INITIAL_REPLAY_BACKOFF_MILLIS = 1000;
+  private static final long MAX_REPLAY_BACKOFF_MILLIS = 60000;
+
+  private final File directory;
+  private final long maxBytes;
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+  private final Deque<File> segments = new ArrayDeque<>();
+  private long totalBytes;
+  private long lastTimestamp;
+  private int sequence;
+  private boolean replaying;
+  private long replayBackoffMillis;
+  private long nextReplayTime;
+  private boolean closed;
+
+  /**
+   * Opens or creates a spool. Payloads for different SDK keys are kept in different subdirectories,
+   * so that clients with different SDK keys can share the same configured directory.
+   *
+   * @param baseDirectory the configured spool directory
+   * @param sdkKey the SDK key whose payloads will be stored
+   * @param maxBytes the maximum total size of all segments
+   * @throws IOException if the directory cannot be created, or another spool is using it for this SDK key
+   */
+  EventSpool(File baseDirectory, String sdkKey, long maxBytes) throws IOException {
+    this.directory = new File(baseDirectory, Hashing.sha256().hashString(sdkKey, Charsets.UTF_8).toString().substring(0, 16));
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory.toPath());
+    lockChannel = FileChannel.open(new File(directory, LOCK_FILE_NAME).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    FileLock l = null;
+    try {
+      l = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // another spool in this process holds the lock
+    } finally {
+      if (l == null) {
+        lockChannel.close();
+      }
+    }
+    if (l == null) {
+      throw new IOException("event spool directory " + directory + " is already in use by another client with the same SDK key");
+    }
+    lock = l;
+    loadExistingSegments();
+  }
+
+  /**
+   * Stores a payload. If this would exceed the size cap, the oldest payloads are discarded first.
+   *
+   * @param payloadId the payload ID that was used for the original delivery attempt
+   * @param data the serialized payload, encoded as UTF-8
+   * @return true if the payload was stored
+   */
+  synchronized boolean add(String payloadId, byte[] data) {
+    if (closed) {
+      return false; // another client may own the directory by now
+    }
+    if (data.length > maxBytes) {
+      logger.warn("Event payload of {} bytes is larger than the event spool; it will be dropped", data.length);
+      return false;
+    }
+    File segment = new File(directory, nextSegmentPrefix() + payloadId + SEGMENT_SUFFIX);
+    File temp = new File(directory, segment.getName() + TEMP_SUFFIX);
+    try {
+      Files.write(temp.toPath(), data);
+      Files.move(temp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Unable to write event payload to spool: {}", e.toString());
+      logger.debug(e.toString(), e);
+      temp.delete();
+      return false;
+    }
+    segments.addLast(segment);
+    totalBytes += data.length;
+    while (totalBytes > maxBytes && segments.size() > 1) {
+      File oldest = segments.removeFirst();
+      logger.warn("Event spool is full; discarding oldest spooled payload");
+      deleteSegment(oldest);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the oldest spooled payload without removing it, or null if the spool is empty.
+   *
+   * @return a payload or null
+   */
+  synchronized SpooledPayload peek() {
+    while (!segments.isEmpty()) {
+      File segment = segments.peekFirst();
+      try {
+        byte[] json = Files.readAllBytes(segment.toPath());
+        return new SpooledPayload(segment, payloadIdFromName(segment.getName()), json);
+      } catch (IOException e) {
+        logger.warn("Unable to read spooled event payload; discarding it: {}", e.toString());
+        segments.removeFirst();
+        deleteSegment(segment);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes a payload that was obtained from {@link #peek()}, typically after it was delivered.
+   *
+   * @param payload the payload
+   */
+  synchronized void remove(SpooledPayload payload) {
+    if (segments.remove(payload.segment)) {
+      deleteSegment(payload.segment);
+    }
+  }
+
+  /**
+   * Called by a flush worker that wants to start replaying spooled payloads. Returns false if there is
+   * nothing to replay, if another worker is already replaying, or if a previous replay attempt failed
+   * too recently; after a failure, the delay before the next attempt doubles up to a maximum.
+   *
+   * @param now the current time in milliseconds
+   * @return true if the caller should replay payloads and then call {@link #endReplay(boolean, long)}
+   */
+  synchronized boolean beginReplay(long now) {
+    if (replaying || segments.isEmpty() || now < nextReplayTime) {
+      return false;
+    }
+    replaying = true;
+    return true;
+  }
+
+  /**
+   * Called when a replay started by {@link #beginReplay(long)} has finished.
+   *
+   * @param succeeded true if all attempted deliveries succeeded
+   * @param now the current time in milliseconds
+   */
+  synchronized void endReplay(boolean succeeded, long now) {
+    replaying = false;
+    if (succeeded) {
+      replayBackoffMillis = 0;
+      nextReplayTime = 0;
+    } else {
+      replayBackoffMillis = replayBackoffMillis == 0 ? INITIAL_REPLAY_BACKOFF_MILLIS :
+        Math.min(replayBackoffMillis * 2, MAX_REPLAY_BACKOFF_MILLIS);
+      nextReplayTime = now + replayBackoffMillis;
+    }
+  }
+
+  /**
+   * Returns true if {@link #beginReplay(long)} would currently allow a replay.
+   *
+   * @param now the current time in milliseconds
+   * @return true if there are payloads, no replay is in progress, and the backoff delay has passed
+   */
+  synchronized boolean isReplayDue(long now) {
+    return !replaying && !segments.isEmpty() && now >= nextReplayTime;
+  }
+
+  synchronized boolean isEmpty() {
+    return segments.isEmpty();
+  }
+
+  synchronized int size() {
+    return segments.size();
+  }
+
+  synchronized long totalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Releases the lock on the spool directory, so that another client can use it. Payloads that are
+   * added after this are not stored.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      lock.release();
+      lockChannel.close();
+    } catch (IOException e) {
+      logger.warn("Unable to release event spool directory lock: {}", e.toString());
+    }
+  }
+
+  private void loadExistingSegments() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+    for (File f: files) {
+      if (f.getName().endsWith(TEMP_SUFFIX)) {
+        f.delete(); // left over from a write that was interrupted
+      } else if (f.getName().endsWith(SEGMENT_SUFFIX)) {
+        segments.addLast(f);
+        totalBytes += f.length();
+      }
+    }
+    if (!segments.isEmpty()) {
+      logger.info("Found {} undelivered event payload(s) in spool", segments.size());
+    }
+  }
+
+  private void deleteSegment(File segment) {
+    totalBytes -= segment.length();
+    if (!segment.delete()) {
+      logger.warn("Unable to delete spooled event payload file {}", segment);
+    }
+  }
+
+  // Segment names begin with a fixed-width timestamp and sequence number so that sorting them by
+  // name gives the order in which they were written, even across process restarts.
+  private String nextSegmentPrefix() {
+    long now = System.currentTimeMillis();
+    if (now > lastTimestamp) {
+      lastTimestamp = now;
+      sequence = 0;
+    } else {
+      sequence++;
+    }
+    return String.format("%013d-%06d-", lastTimestamp, sequence);
+  }
+
+  private static String payloadIdFromName(String name) {
+    String base = name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+    int secondDash = base.indexOf('-', base.indexOf('-') + 1);
+    return base.substring(secondDash + 1);
+  }
+
+  static final class SpooledPayload {
+    private final File segment;
+    final String payloadId;
+    final byte[] json; // UTF-8, exactly as it will be posted
+
+    private SpooledPayload(File segment, String payloadId, byte[] json) {
+      this.segment = segment;
+      this.payloadId = payloadId;
+      this.json = json;
+    }
+  }
+}
@@ -30,6 +30,27 @@ final class EventSummarizer {
     }
   }
   
+  /**
+   * Adds evaluation counts that were accumulated elsewhere.
+   * @param flagKey the flag key
+   * @param variation the variation index
+   * @param version the flag version
+   * @param flagValue the flag value
+   * @param defaultVal the application default value
+   * @param count the number of evaluations
+   */
+  void addCounts(String flagKey, Integer variation, Integer version, LDValue flagValue, LDValue defaultVal, long count) {
+    eventsState.incrementCounter(flagKey, variation, version, flagValue, defaultVal, count);
+  }
+  
+  /**
+   * Widens the summary's time range, if necessary, to include the given time.
+   * @param time a timestamp
+   */
+  void noteTimestamp(long time) {
+    eventsState.noteTimestamp(time);
+  }
+  
   /**
    * Returns a snapshot of the current summarized event data.
    * @return the summary state
@@ -65,13 +86,17 @@ final class EventSummarizer {
     }
     
     void incrementCounter(String flagKey, Integer variation, Integer version, LDValue flagValue, LDValue defaultVal) {
+      incrementCounter(flagKey, variation, version, flagValue, defaultVal, 1);
+    }
+    
+    void incrementCounter(String flagKey, Integer variation, Integer version, LDValue flagValue, LDValue defaultVal, long n) {
       CounterKey key = new CounterKey(flagKey, variation, version);
 
       CounterValue value = counters.get(key);
       if (value != null) {
-        value.increment();
+        value.count += n;
       } else {
-        counters.put(key, new CounterValue(1, flagValue, defaultVal));
+        counters.put(key, new CounterValue(n, flagValue, defaultVal));
       }
     }
     
@@ -75,6 +75,8 @@ class FeatureFlag implements VersionedData, JsonHelpers.PostProcessingDeserializ
       return getOffValue(EvaluationReason.off());
     }
     
+    featureStore = PrefetchingFeatureStore.prefetchReferences(featureStore, this);
+    
     EvaluationReason prereqFailureReason = checkPrerequisites(user, featureStore, events, eventFactory);
     if (prereqFailureReason != null) {
       return getOffValue(prereqFailureReason);
@@ -32,19 +32,33 @@ public final class FeatureStoreCacheConfig {
    */
   public static final long DEFAULT_TIME_SECONDS = 15;
 
+  /**
+   * The default number of threads used by {@link #refreshThreads(int)}.
+   */
+  public static final int DEFAULT_REFRESH_THREADS = 1;
+
   /**
    * The caching parameters that feature store should use by default. Caching is enabled, with a
    * TTL of {@link #DEFAULT_TIME_SECONDS} and the {@link StaleValuesPolicy#EVICT} policy. 
    */
   public static final FeatureStoreCacheConfig DEFAULT =
-      new FeatureStoreCacheConfig(DEFAULT_TIME_SECONDS, TimeUnit.SECONDS, StaleValuesPolicy.EVICT);
+      new FeatureStoreCacheConfig(DEFAULT_TIME_SECONDS, TimeUnit.SECONDS, StaleValuesPolicy.EVICT,
+          0, 0, 0, 0, DEFAULT_REFRESH_THREADS, 0, 0);
   
   private static final FeatureStoreCacheConfig DISABLED =
-      new FeatureStoreCacheConfig(0, TimeUnit.MILLISECONDS, StaleValuesPolicy.EVICT);
+      new FeatureStoreCacheConfig(0, TimeUnit.MILLISECONDS, StaleValuesPolicy.EVICT,
+          0, 0, 0, 0, DEFAULT_REFRESH_THREADS, 0, 0);
   
   private final long cacheTime;
   private final TimeUnit cacheTimeUnit;
   private final StaleValuesPolicy staleValuesPolicy;
+  private final long maximumSize;
+  private final long maximumWeight;
+  private final double ttlJitter;
+  private final double refreshAhead;
+  private final int refreshThreads;
+  private final long maximumStalenessMillis;
+  private final long circuitBreakerMillis;
   
   /**
    * Possible values for {@link FeatureStoreCacheConfig#staleValuesPolicy(StaleValuesPolicy)}.
@@ -110,10 +124,19 @@ public final class FeatureStoreCacheConfig {
     return DEFAULT;
   }
 
-  private FeatureStoreCacheConfig(long cacheTime, TimeUnit cacheTimeUnit, StaleValuesPolicy staleValuesPolicy) {
+  private FeatureStoreCacheConfig(long cacheTime, TimeUnit cacheTimeUnit, StaleValuesPolicy staleValuesPolicy,
+      long maximumSize, long maximumWeight, double ttlJitter, double refreshAhead, int refreshThreads,
+      long maximumStalenessMillis, long circuitBreakerMillis) {
     this.cacheTime = cacheTime;
     this.cacheTimeUnit = cacheTimeUnit;
     this.staleValuesPolicy = staleValuesPolicy;
+    this.maximumSize = maximumSize;
+    this.maximumWeight = maximumWeight;
+    this.ttlJitter = ttlJitter;
+    this.refreshAhead = refreshAhead;
+    this.refreshThreads = refreshThreads;
+    this.maximumStalenessMillis = maximumStalenessMillis;
+    this.circuitBreakerMillis = circuitBreakerMillis;
   }
 
   /**
@@ -157,6 +180,62 @@ public final class FeatureStoreCacheConfig {
     return staleValuesPolicy;
   }
   
+  /**
+   * Returns the maximum number of items in the cache.
+   * @return the maximum size, or 0 if the number of items is not limited
+   */
+  public long getMaximumSize() {
+    return maximumSize;
+  }
+  
+  /**
+   * Returns the maximum total weight of the items in the cache.
+   * @return the maximum weight, or 0 if the weight is not limited
+   */
+  public long getMaximumWeight() {
+    return maximumWeight;
+  }
+  
+  /**
+   * Returns the fraction of the TTL by which the lifetime of each cached item is randomly shortened.
+   * @return the TTL jitter, between 0 and 1
+   */
+  public double getTtlJitter() {
+    return ttlJitter;
+  }
+  
+  /**
+   * Returns the fraction of each cached item's lifetime during which it is refreshed ahead of time.
+   * @return the refresh-ahead fraction, or 0 if items are not refreshed ahead of time
+   */
+  public double getRefreshAhead() {
+    return refreshAhead;
+  }
+  
+  /**
+   * Returns the number of threads used to refresh cached items in the background.
+   * @return the number of refresh threads
+   */
+  public int getRefreshThreads() {
+    return refreshThreads;
+  }
+  
+  /**
+   * Returns how long past its TTL a cached item can still be returned if it cannot be reloaded.
+   * @return the maximum staleness in milliseconds, or 0 if expired items are never returned after an error
+   */
+  public long getMaximumStalenessMillis() {
+    return maximumStalenessMillis;
+  }
+  
+  /**
+   * Returns how long reads fail immediately after the underlying data store has failed.
+   * @return the circuit breaker time in milliseconds, or 0 if reads always go to the data store
+   */
+  public long getCircuitBreakerMillis() {
+    return circuitBreakerMillis;
+  }
+  
   /**
    * Specifies the cache TTL. Items will be evicted or refreshed (depending on {@link #staleValuesPolicy(StaleValuesPolicy)})
    * after this amount of time from the time when they were originally cached. If the time is less
@@ -167,7 +246,8 @@ public final class FeatureStoreCacheConfig {
    * @return an updated parameters object
    */
   public FeatureStoreCacheConfig ttl(long cacheTime, TimeUnit timeUnit) {
-    return new FeatureStoreCacheConfig(cacheTime, timeUnit, staleValuesPolicy);
+    return new FeatureStoreCacheConfig(cacheTime, timeUnit, staleValuesPolicy, maximumSize, maximumWeight,
+        ttlJitter, refreshAhead, refreshThreads, maximumStalenessMillis, circuitBreakerMillis);
   }
 
   /**
@@ -198,7 +278,141 @@ public final class FeatureStoreCacheConfig {
    * @return an updated parameters object
    */
   public FeatureStoreCacheConfig staleValuesPolicy(StaleValuesPolicy policy) {
-    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, policy);
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, policy, maximumSize, maximumWeight,
+        ttlJitter, refreshAhead, refreshThreads, maximumStalenessMillis, circuitBreakerMillis);
+  }
+  
+  /**
+   * Limits the number of items that the cache can hold. When it is full, the items that have been used
+   * least recently are evicted first; evictions are counted in the cache statistics. This property has no
+   * effect if caching is disabled. It cannot be combined with {@link #maximumWeight(long)}.
+   * 
+   * @param maximumSize the maximum number of items, or 0 for no limit
+   * @return an updated parameters object
+   * @throws IllegalStateException if a maximum weight has already been set
+   */
+  public FeatureStoreCacheConfig maximumSize(long maximumSize) {
+    if (maximumSize > 0 && maximumWeight > 0) {
+      throw new IllegalStateException("a cache can have a maximum size or a maximum weight, but not both");
+    }
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, staleValuesPolicy, Math.max(0, maximumSize),
+        maximumWeight, ttlJitter, refreshAhead, refreshThreads, maximumStalenessMillis, circuitBreakerMillis);
+  }
+  
+  /**
+   * Limits the total size of the items that the cache can hold. The weight of an item is the length of its
+   * JSON representation, which is roughly proportional to the memory it uses; this accounts for flags with
+   * long target lists and segments with many user keys, which a limit on the number of items does not. When the
+   * limit is reached, the items that have been used least recently are evicted first; evictions are counted in
+   * the cache statistics. This property has no effect if caching is disabled. It cannot be combined with
+   * {@link #maximumSize(long)}.
+   * <p>
+   * The limit covers everything the cache holds, and is split in two fixed halves: one for individual items,
+   * and one for the lists of all items of each kind, so a list is not cached if it is larger than that half by
+   * itself. The halves are not shared, so if the application only reads items one at a time (as flag
+   * evaluations do) and never asks for all of them, at most half of this limit is used; set it to twice the
+   * weight of the items you want to keep.
+   * 
+   * @param maximumWeight the maximum total weight, or 0 for no limit
+   * @return an updated parameters object
+   * @throws IllegalStateException if a maximum size has already been set
+   */
+  public FeatureStoreCacheConfig maximumWeight(long maximumWeight) {
+    if (maximumWeight > 0 && maximumSize > 0) {
+      throw new IllegalStateException("a cache can have a maximum size or a maximum weight, but not both");
+    }
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, staleValuesPolicy, maximumSize,
+        Math.max(0, maximumWeight), ttlJitter, refreshAhead, refreshThreads,
+        maximumStalenessMillis, circuitBreakerMillis);
+  }
+  
+  /**
+   * Randomly shortens the lifetime of each cached item by up to the given fraction of the TTL. Items that
+   * are cached at the same moment, such as all of the items stored by {@code init}, then expire or become
+   * due for refresh at different times rather than all at once, which spreads the resulting reads from the
+   * underlying data store over the last part of the TTL instead of sending them together. The default is 0.
+   * This property has no effect if caching is disabled.
+   * 
+   * @param fraction a value between 0 and 1; for instance, 0.2 means that items are cached for between 80%
+   *   and 100% of the TTL
+   * @return an updated parameters object
+   */
+  public FeatureStoreCacheConfig ttlJitter(double fraction) {
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, staleValuesPolicy, maximumSize, maximumWeight,
+        clampFraction(fraction), refreshAhead, refreshThreads, maximumStalenessMillis, circuitBreakerMillis);
+  }
+  
+  /**
+   * Causes items that are read during the last part of their lifetime to be reloaded in the background
+   * before they expire, on a pool of {@link #refreshThreads(int)} threads, so that frequently used items
+   * never have to be reloaded while a caller waits. Items that are not read in that period expire as usual.
+   * The default is 0, which disables this. This property has no effect if caching is disabled.
+   * 
+   * @param fraction a value between 0 and 1; for instance, 0.2 means that an item read after 80% of its
+   *   lifetime has passed is refreshed
+   * @return an updated parameters object
+   */
+  public FeatureStoreCacheConfig refreshAhead(double fraction) {
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, staleValuesPolicy, maximumSize, maximumWeight,
+        ttlJitter, clampFraction(fraction), refreshThreads, maximumStalenessMillis, circuitBreakerMillis);
+  }
+  
+  /**
+   * Specifies the number of threads used to refresh cached items in the background, both for
+   * {@link #refreshAhead(double)} and for {@link StaleValuesPolicy#REFRESH_ASYNC}. The default is
+   * {@link #DEFAULT_REFRESH_THREADS}. This property has no effect if caching is disabled.
+   * 
+   * @param refreshThreads the number of threads
+   * @return an updated parameters object
+   */
+  public FeatureStoreCacheConfig refreshThreads(int refreshThreads) {
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, staleValuesPolicy, maximumSize, maximumWeight,
+        ttlJitter, refreshAhead, Math.max(1, refreshThreads), maximumStalenessMillis, circuitBreakerMillis);
+  }
+  
+  /**
+   * Allows cached items to be returned for up to the given time after their TTL has expired, if reloading them
+   * from the underlying data store fails. This applies to all stale values policies: with
+   * {@link StaleValuesPolicy#EVICT}, an expired item is reloaded while the caller waits, but if that fails the
+   * old value is returned instead of an error; with {@link StaleValuesPolicy#REFRESH} and
+   * {@link StaleValuesPolicy#REFRESH_ASYNC}, the old value is no longer returned once this time has passed, so
+   * that callers find out about an outage instead of silently getting data of any age. While a thread is
+   * reloading an expired item, other threads that read it get the old value rather than also reloading it.
+   * <p>
+   * The same applies to the cached list of all items of each kind. Use {@link FeatureStore}-specific status
+   * methods, such as {@link RedisFeatureStore#getStatus()}, to find out whether stale values are being
+   * returned. The default is 0, which keeps the previous behavior of each policy. This property has no effect
+   * if caching is disabled.
+   * 
+   * @param time the maximum staleness in whatever units you wish
+   * @param timeUnit the time unit
+   * @return an updated parameters object
+   */
+  public FeatureStoreCacheConfig maximumStaleness(long time, TimeUnit timeUnit) {
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, staleValuesPolicy, maximumSize, maximumWeight,
+        ttlJitter, refreshAhead, refreshThreads, Math.max(0, timeUnit.toMillis(time)), circuitBreakerMillis);
+  }
+  
+  /**
+   * Makes reads fail immediately, for the given time after a read from or write to the underlying data store
+   * has failed, instead of each one waiting for the data store to time out; in the meantime, cached values are
+   * returned as usual, and expired ones are returned if {@link #maximumStaleness(long, TimeUnit)} allows it.
+   * When the time has passed, a single read is let through to test the data store: if it succeeds, reads go
+   * to the data store again, otherwise they keep failing immediately for another period. Writes are always
+   * attempted. The default is 0, which means reads always go to the data store. This property applies even
+   * if caching is disabled.
+   * 
+   * @param time the circuit breaker time in whatever units you wish
+   * @param timeUnit the time unit
+   * @return an updated parameters object
+   */
+  public FeatureStoreCacheConfig circuitBreaker(long time, TimeUnit timeUnit) {
+    return new FeatureStoreCacheConfig(cacheTime, cacheTimeUnit, staleValuesPolicy, maximumSize, maximumWeight,
+        ttlJitter, refreshAhead, refreshThreads, maximumStalenessMillis, Math.max(0, timeUnit.toMillis(time)));
+  }
+  
+  private static double clampFraction(double fraction) {
+    return Math.min(1, Math.max(0, fraction));
   }
   
   @Override
@@ -206,13 +420,17 @@ public final class FeatureStoreCacheConfig {
     if (other instanceof FeatureStoreCacheConfig) {
       FeatureStoreCacheConfig o = (FeatureStoreCacheConfig) other;
       return o.cacheTime == this.cacheTime && o.cacheTimeUnit == this.cacheTimeUnit &&
-          o.staleValuesPolicy == this.staleValuesPolicy;
+          o.staleValuesPolicy == this.staleValuesPolicy && o.maximumSize == this.maximumSize &&
+          o.maximumWeight == this.maximumWeight && o.ttlJitter == this.ttlJitter &&
+          o.refreshAhead == this.refreshAhead && o.refreshThreads == this.refreshThreads &&
+          o.maximumStalenessMillis == this.maximumStalenessMillis && o.circuitBreakerMillis == this.circuitBreakerMillis;
     }
     return false;
   }
   
   @Override
   public int hashCode() {
-    return Objects.hash(cacheTime, cacheTimeUnit, staleValuesPolicy);
+    return Objects.hash(cacheTime, cacheTimeUnit, staleValuesPolicy, maximumSize, maximumWeight, ttlJitter, refreshAhead,
+        refreshThreads, maximumStalenessMillis, circuitBreakerMillis);
   }
 }
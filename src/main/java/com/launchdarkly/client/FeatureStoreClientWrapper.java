@@ -1,12 +1,17 @@
 package com.launchdarkly.client;
 
+import com.launchdarkly.client.utils.CachingStoreWrapper;
+import com.launchdarkly.client.utils.MultiGetFeatureStoreCore;
+
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Provides additional behavior that the client requires before or after feature store operations.
- * Currently this just means sorting the data set for init(). In the future we may also use this
- * to provide an update listener capability.
+ * Currently this means sorting the data set for init(), and reading several items at once for
+ * stores that support it. In the future we may also use this to provide an update listener capability.
  * 
  * @since 4.6.1
  */
@@ -27,6 +32,53 @@ class FeatureStoreClientWrapper implements FeatureStore {
     return store.get(kind, key);
   }
 
+  /**
+   * Returns true if {@link #getMany(VersionedDataKind, Collection)} can do better than calling
+   * {@link #get(VersionedDataKind, String)} for each key.
+   */
+  boolean supportsGetMany() {
+    if (store instanceof CachingStoreWrapper) {
+      return ((CachingStoreWrapper)store).getCore() instanceof MultiGetFeatureStoreCore;
+    }
+    if (store instanceof RedisFeatureStore) {
+      return ((RedisFeatureStore)store).supportsGetMany();
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the store can return the item without reading it from a database.
+   */
+  boolean isCached(VersionedDataKind<?> kind, String key) {
+    if (store instanceof CachingStoreWrapper) {
+      return ((CachingStoreWrapper)store).isCached(kind, key);
+    }
+    if (store instanceof RedisFeatureStore) {
+      return ((RedisFeatureStore)store).isCached(kind, key);
+    }
+    return false;
+  }
+
+  /**
+   * Returns the items with the specified keys, omitting any that are not found or are deleted.
+   */
+  <T extends VersionedData> Map<String, T> getMany(VersionedDataKind<T> kind, Collection<String> keys) {
+    if (store instanceof CachingStoreWrapper) {
+      return ((CachingStoreWrapper)store).getMany(kind, keys);
+    }
+    if (store instanceof RedisFeatureStore) {
+      return ((RedisFeatureStore)store).getMany(kind, keys);
+    }
+    Map<String, T> ret = new HashMap<>();
+    for (String key: keys) {
+      T item = store.get(kind, key);
+      if (item != null) {
+        ret.put(key, item);
+      }
+    }
+    return ret;
+  }
+
   @Override
   public <T extends VersionedData> Map<String, T> all(VersionedDataKind<T> kind) {
     return store.all(kind);
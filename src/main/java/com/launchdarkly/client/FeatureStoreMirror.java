@@ -0,0 +1,226 @@
+package com.launchdarkly.client;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.launchdarkly.client.utils.FeatureStoreCore;
+import com.launchdarkly.client.utils.VersionedFeatureStoreCore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A complete in-memory copy of the data in a {@link FeatureStoreCore}, which is reloaded as a whole in the
+ * background and replaced atomically, so that reads never wait for the underlying store.
+ * <p>
+ * The copy is reloaded on a fixed schedule, and also whenever {@link #refreshAll()} or
+ * {@link #refreshItem(VersionedDataKind, String)} is called to report a change. If a reload fails, the
+ * last good copy continues to be used. If the core is a {@link VersionedFeatureStoreCore}, a scheduled
+ * reload is skipped when the data version has not changed. Items that are applied while a reload is reading
+ * from the core are applied again on top of the reloaded data, so that the reload cannot undo them; if the
+ * whole data set is replaced while a reload is reading, the reload is discarded.
+ */
+final class FeatureStoreMirror implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(FeatureStoreMirror.class);
+
+  private final FeatureStoreCore core;
+  private final long refreshIntervalMillis;
+  private final ScheduledExecutorService executor;
+  private final AtomicBoolean refreshAllPending = new AtomicBoolean(false);
+  private final Object loadLock = new Object();
+  private Map<VersionedDataKind<?>, Map<String, VersionedData>> appliedDuringLoad; // guarded by this
+  private boolean replacedDuringLoad; // guarded by this
+  private volatile Snapshot snapshot = new Snapshot(ImmutableMap.<VersionedDataKind<?>, Map<String, VersionedData>>of(),
+      false, -1);
+
+  FeatureStoreMirror(FeatureStoreCore core, long refreshIntervalMillis) {
+    this.core = core;
+    this.refreshIntervalMillis = refreshIntervalMillis;
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("LaunchDarkly-FeatureStoreMirror-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Loads the first copy of the data, and then starts reloading it on schedule.
+   */
+  void start() {
+    load(false);
+    executor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        load(true);
+      }
+    }, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Schedules a reload of all of the data. Requests made while one is already waiting are combined.
+   */
+  void refreshAll() {
+    if (refreshAllPending.compareAndSet(false, true)) {
+      executor.execute(new Runnable() {
+        public void run() {
+          refreshAllPending.set(false);
+          load(false);
+        }
+      });
+    }
+  }
+
+  /**
+   * Schedules a reload of a single item.
+   */
+  void refreshItem(final VersionedDataKind<?> kind, final String key) {
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          VersionedData item = core.getInternal(kind, key);
+          if (item != null) {
+            apply(kind, item);
+          }
+        } catch (Exception e) {
+          logger.warn("Unable to refresh \"{}\" in \"{}\"; reloading all data: {}", key, kind.getNamespace(), e.toString());
+          refreshAll();
+        }
+      }
+    });
+  }
+
+  /**
+   * Replaces the copy with the given data, which has just been written to the store.
+   */
+  synchronized void replaceAll(Map<VersionedDataKind<?>, Map<String, ? extends VersionedData>> allData) {
+    if (appliedDuringLoad != null) {
+      replacedDuringLoad = true;
+    }
+    Map<VersionedDataKind<?>, Map<String, VersionedData>> newData = new HashMap<>();
+    for (Map.Entry<VersionedDataKind<?>, Map<String, ? extends VersionedData>> e: allData.entrySet()) {
+      newData.put(e.getKey(), new HashMap<String, VersionedData>(e.getValue()));
+    }
+    snapshot = new Snapshot(newData, true, -1);
+  }
+
+  /**
+   * Puts an item into the copy, unless the copy already has a version that is at least as new.
+   */
+  synchronized void apply(VersionedDataKind<?> kind, VersionedData item) {
+    if (appliedDuringLoad != null) {
+      putIfNewer(appliedDuringLoad, kind, item);
+    }
+    Snapshot current = snapshot;
+    Map<String, VersionedData> items = current.data.get(kind);
+    VersionedData oldItem = items == null ? null : items.get(item.getKey());
+    if (oldItem != null && oldItem.getVersion() >= item.getVersion()) {
+      return;
+    }
+    Map<String, VersionedData> newItems = items == null ? new HashMap<String, VersionedData>() : new HashMap<>(items);
+    newItems.put(item.getKey(), item);
+    Map<VersionedDataKind<?>, Map<String, VersionedData>> newData = new HashMap<>(current.data);
+    newData.put(kind, newItems);
+    snapshot = new Snapshot(newData, current.inited, current.dataVersion);
+  }
+
+  @SuppressWarnings("unchecked")
+  <T extends VersionedData> T get(VersionedDataKind<T> kind, String key) {
+    Map<String, VersionedData> items = snapshot.data.get(kind);
+    VersionedData item = items == null ? null : items.get(key);
+    return (item == null || item.isDeleted()) ? null : (T)item;
+  }
+
+  @SuppressWarnings("unchecked")
+  <T extends VersionedData> Map<String, T> all(VersionedDataKind<T> kind) {
+    Map<String, VersionedData> items = snapshot.data.get(kind);
+    Map<String, T> ret = new HashMap<>();
+    if (items != null) {
+      for (Map.Entry<String, VersionedData> e: items.entrySet()) {
+        if (!e.getValue().isDeleted()) {
+          ret.put(e.getKey(), (T)e.getValue());
+        }
+      }
+    }
+    return ret;
+  }
+
+  boolean initialized() {
+    return snapshot.inited;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  // Loads are serialized, since the first one is done on the caller's thread rather than the executor.
+  private void load(boolean onlyIfChanged) {
+    synchronized (loadLock) {
+      synchronized (this) {
+        appliedDuringLoad = new HashMap<>();
+        replacedDuringLoad = false;
+      }
+      try {
+        long dataVersion = -1;
+        if (core instanceof VersionedFeatureStoreCore) {
+          dataVersion = ((VersionedFeatureStoreCore)core).getDataVersion();
+          if (onlyIfChanged && dataVersion >= 0 && dataVersion == snapshot.dataVersion) {
+            return;
+          }
+        }
+        Map<VersionedDataKind<?>, Map<String, VersionedData>> data = new HashMap<>();
+        for (VersionedDataKind<?> kind: VersionedDataKind.ALL) {
+          Map<String, VersionedData> items = core.getAllInternal(kind);
+          data.put(kind, items == null ? new HashMap<String, VersionedData>() : new HashMap<>(items));
+        }
+        boolean inited = core.initializedInternal();
+        synchronized (this) {
+          if (replacedDuringLoad) {
+            return; // what we read may be older than the data set that replaced the copy
+          }
+          for (Map.Entry<VersionedDataKind<?>, Map<String, VersionedData>> e0: appliedDuringLoad.entrySet()) {
+            for (VersionedData item: e0.getValue().values()) {
+              putIfNewer(data, e0.getKey(), item);
+            }
+          }
+          snapshot = new Snapshot(data, inited, dataVersion);
+        }
+      } catch (Exception e) {
+        logger.warn("Unable to reload feature store data; will keep using the last copy: {}", e.toString());
+      } finally {
+        synchronized (this) {
+          appliedDuringLoad = null;
+        }
+      }
+    }
+  }
+
+  private static void putIfNewer(Map<VersionedDataKind<?>, Map<String, VersionedData>> data,
+      VersionedDataKind<?> kind, VersionedData item) {
+    Map<String, VersionedData> items = data.get(kind);
+    if (items == null) {
+      items = new HashMap<>();
+      data.put(kind, items);
+    }
+    VersionedData oldItem = items.get(item.getKey());
+    if (oldItem == null || oldItem.getVersion() < item.getVersion()) {
+      items.put(item.getKey(), item);
+    }
+  }
+
+  // Maps in a snapshot are never modified after it is published.
+  private static final class Snapshot {
+    final Map<VersionedDataKind<?>, Map<String, VersionedData>> data;
+    final boolean inited;
+    final long dataVersion;
+
+    Snapshot(Map<VersionedDataKind<?>, Map<String, VersionedData>> data, boolean inited, long dataVersion) {
+      this.data = data;
+      this.inited = inited;
+      this.dataVersion = dataVersion;
+    }
+  }
+}
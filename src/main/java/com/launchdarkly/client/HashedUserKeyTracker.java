@@ -0,0 +1,110 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Arrays;
+
+/**
+ * A {@link UserKeyTracker} that stores a short hash fingerprint of each key, rather than the key itself,
+ * in a fixed-size open-addressed table. Its memory use is determined entirely by the capacity and the
+ * fingerprint width (2, 4, or 8 bytes per slot), no matter how long the keys are.
+ * <p>
+ * The tracker can be wrong in two ways, both bounded. If two keys have the same fingerprint and land
+ * in the same probe sequence, the second user is wrongly considered known and its index event is not
+ * sent; the fingerprint width is chosen to keep this below the configured false positive rate. If
+ * every slot in a key's probe sequence is taken, one of them is overwritten, so a user may be forgotten
+ * early and get an extra index event - which is harmless, just like an LRU eviction.
+ */
+final class HashedUserKeyTracker implements UserKeyTracker {
+  static final int MAX_PROBES = 16;
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  
+  private final int fingerprintBits;
+  private final long fingerprintMask;
+  private final int slotsPerWord;
+  private final int slotMask;
+  private final long[] table;
+  private int nextEvictionOffset;
+  
+  /**
+   * Creates a tracker.
+   * @param capacity the number of user keys that should fit in the table
+   * @param falsePositiveRate the highest acceptable probability that a new user is considered known
+   */
+  HashedUserKeyTracker(int capacity, double falsePositiveRate) {
+    this.fingerprintBits = fingerprintBitsForRate(falsePositiveRate);
+    this.fingerprintMask = fingerprintBits == 64 ? -1L : (1L << fingerprintBits) - 1;
+    this.slotsPerWord = 64 / fingerprintBits;
+    // keep the table at most 75% full so that probe sequences stay short
+    int slots = capacity <= 0 ? 0 : Integer.highestOneBit(Math.max(slotsPerWord, (int)Math.min(Integer.MAX_VALUE / 2,
+        (long)capacity * 4 / 3)) * 2 - 1);
+    this.slotMask = slots - 1;
+    this.table = new long[slots / slotsPerWord];
+  }
+  
+  static int fingerprintBitsForRate(double falsePositiveRate) {
+    // A lookup compares against at most MAX_PROBES fingerprints, each of which matches by accident
+    // with probability 2^-bits.
+    if (falsePositiveRate >= MAX_PROBES / 65536.0) {
+      return 16;
+    }
+    if (falsePositiveRate >= MAX_PROBES / 4294967296.0) {
+      return 32;
+    }
+    return 64;
+  }
+  
+  int getFingerprintBits() {
+    return fingerprintBits;
+  }
+  
+  int getSlotCount() {
+    return table.length * slotsPerWord;
+  }
+  
+  @Override
+  public boolean noticeUser(String key) {
+    if (table.length == 0) {
+      return false;
+    }
+    long hash = HASH.hashString(key, Charsets.UTF_8).asLong();
+    int home = (int)(hash ^ (hash >>> 32)) & slotMask;
+    long fingerprint = (hash >>> (64 - fingerprintBits)) & fingerprintMask;
+    if (fingerprint == 0) {
+      fingerprint = 1; // zero marks an empty slot
+    }
+    for (int i = 0; i < MAX_PROBES; i++) {
+      int slot = (home + i) & slotMask;
+      long existing = getSlot(slot);
+      if (existing == fingerprint) {
+        return true;
+      }
+      if (existing == 0) {
+        setSlot(slot, fingerprint);
+        return false;
+      }
+    }
+    // The probe sequence is full; forget one of the users in it, rotating so we don't always pick the same one.
+    setSlot((home + nextEvictionOffset) & slotMask, fingerprint);
+    nextEvictionOffset = (nextEvictionOffset + 1) % MAX_PROBES;
+    return false;
+  }
+  
+  @Override
+  public void clear() {
+    Arrays.fill(table, 0);
+  }
+  
+  private long getSlot(int slot) {
+    int shift = (slot % slotsPerWord) * fingerprintBits;
+    return (table[slot / slotsPerWord] >>> shift) & fingerprintMask;
+  }
+  
+  private void setSlot(int slot, long fingerprint) {
+    int index = slot / slotsPerWord;
+    int shift = (slot % slotsPerWord) * fingerprintBits;
+    table[index] = (table[index] & ~(fingerprintMask << shift)) | (fingerprint << shift);
+  }
+}
@@ -394,6 +394,53 @@ public final class LDClient implements LDClientInterface {
     this.eventProcessor.flush();
   }
 
+  /**
+   * Returns the number of analytics events that could not be queued because events were being produced
+   * faster than they could be processed. If the client is not using the default event processor (for
+   * instance, if it is offline or events are disabled), all of the counts are zero.
+   * 
+   * @return a snapshot of the dropped and sampled-out event counts
+   * @see LDConfig.Builder#eventBackpressurePolicy(EventBackpressurePolicy)
+   * @since 4.12.0
+   */
+  public EventInboxStatistics getEventInboxStatistics() {
+    if (eventProcessor instanceof DefaultEventProcessor) {
+      return ((DefaultEventProcessor)eventProcessor).getInboxStatistics();
+    }
+    return EventInboxStatistics.EMPTY;
+  }
+
+  /**
+   * Returns a snapshot of statistics about the event processor. The same information is delivered to an
+   * {@link EventMetricsListener} after each flush, if one is configured.
+   * 
+   * @return the current event metrics, or null if the client is not using the default event processor
+   * @see LDConfig.Builder#eventMetricsListener(EventMetricsListener)
+   * @since 4.12.0
+   */
+  public EventMetrics getEventMetrics() {
+    if (eventProcessor instanceof DefaultEventProcessor) {
+      return ((DefaultEventProcessor)eventProcessor).getMetrics();
+    }
+    return null;
+  }
+
+  /**
+   * Returns what happened to buffered analytics events when the client was closed, if a shutdown
+   * deadline was configured.
+   * 
+   * @return the shutdown report, or null if the client has not been closed, has no shutdown deadline, or is
+   * not using the default event processor
+   * @see LDConfig.Builder#eventShutdownTimeoutMillis(long)
+   * @since 4.12.0
+   */
+  public EventShutdownReport getEventShutdownReport() {
+    if (eventProcessor instanceof DefaultEventProcessor) {
+      return ((DefaultEventProcessor)eventProcessor).getShutdownReport();
+    }
+    return null;
+  }
+
   @Override
   public boolean isOffline() {
     return config.offline;
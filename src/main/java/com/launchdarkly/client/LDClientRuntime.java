@@ -0,0 +1,181 @@
+package com.launchdarkly.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+
+/**
+ * Resources that can be shared by several {@link LDClient} instances in the same process, such as
+ * clients for different environments. Clients that are configured with the same runtime share one
+ * HTTP connection pool, one scheduler thread that triggers periodic tasks, one pool of threads for polling
+ * requests, and one pool of threads for delivering analytics events, rather than each creating their own.
+ * The scheduler thread never does any I/O itself, so a slow request or feature store for one client does not
+ * delay the others' timers.
+ * <p>
+ * Each client still has its own event queue, buffer, and event dispatcher thread, and its events are
+ * always delivered in separate requests using its own SDK key.
+ * <p>
+ * The runtime is owned by the application: closing a client does not close it. Close the runtime after
+ * all of the clients that use it have been closed.
+ * 
+ * <pre><code>
+ *     LDClientRuntime runtime = new LDClientRuntime.Builder().eventFlushWorkers(10).build();
+ *     LDClient client1 = new LDClient(sdkKey1, new LDConfig.Builder().runtime(runtime).build());
+ *     LDClient client2 = new LDClient(sdkKey2, new LDConfig.Builder().runtime(runtime).build());
+ * </code></pre>
+ * 
+ * @see LDConfig.Builder#runtime(LDClientRuntime)
+ * @since 4.12.0
+ */
+public final class LDClientRuntime implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(LDClientRuntime.class);
+  private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+  
+  final ConnectionPool connectionPool;
+  final ScheduledExecutorService scheduler;
+  final ThreadPoolExecutor eventFlushExecutor;
+  final ThreadPoolExecutor pollExecutor;
+  
+  private LDClientRuntime(Builder builder) {
+    connectionPool = new ConnectionPool(builder.maxIdleConnections, builder.connectionKeepAliveSeconds, TimeUnit.SECONDS);
+    
+    ThreadFactory schedulerThreadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("LaunchDarkly-SharedScheduler-%d")
+        .setPriority(Thread.MIN_PRIORITY)
+        .build();
+    scheduler = Executors.newSingleThreadScheduledExecutor(schedulerThreadFactory);
+    
+    ThreadFactory flushThreadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("LaunchDarkly-SharedEventSender-%d")
+        .setPriority(Thread.MIN_PRIORITY)
+        .build();
+    int workers = Math.max(1, builder.eventFlushWorkers);
+    eventFlushExecutor = new ThreadPoolExecutor(workers, workers, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(Math.max(1, builder.maxPendingEventPayloads)), flushThreadFactory);
+    eventFlushExecutor.allowCoreThreadTimeOut(true);
+    
+    // Each client has at most one poll waiting or in progress, so the queue is bounded by the number of clients.
+    ThreadFactory pollThreadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("LaunchDarkly-SharedPoller-%d")
+        .build();
+    int pollWorkers = Math.max(1, builder.pollWorkers);
+    pollExecutor = new ThreadPoolExecutor(pollWorkers, pollWorkers, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), pollThreadFactory);
+    pollExecutor.allowCoreThreadTimeOut(true);
+  }
+  
+  /**
+   * Shuts down the shared threads and closes idle connections.
+   */
+  @Override
+  public void close() throws IOException {
+    logger.info("Closing shared LaunchDarkly client runtime");
+    scheduler.shutdown();
+    eventFlushExecutor.shutdown();
+    pollExecutor.shutdown();
+    connectionPool.evictAll();
+  }
+  
+  /**
+   * Builder for {@link LDClientRuntime}.
+   */
+  public static final class Builder {
+    private int eventFlushWorkers = 5;
+    private int maxPendingEventPayloads = 50;
+    private int pollWorkers = 2;
+    private int maxIdleConnections = 20;
+    private long connectionKeepAliveSeconds = 60;
+    
+    /**
+     * Creates a builder with the default settings.
+     */
+    public Builder() {
+    }
+    
+    /**
+     * Sets the maximum number of threads that deliver analytics events for all of the clients. This
+     * replaces {@link LDConfig.Builder#eventFlushWorkers(int)} for clients that use the runtime. The
+     * default value is 5.
+     * 
+     * @param workers the maximum number of concurrent event deliveries
+     * @return the builder
+     */
+    public Builder eventFlushWorkers(int workers) {
+      this.eventFlushWorkers = workers;
+      return this;
+    }
+    
+    /**
+     * Sets the maximum number of event payloads, from all of the clients, that can wait for a delivery
+     * thread. Each client is also still limited by its own {@link LDConfig.Builder#maxPendingEventPayloads(int)}.
+     * The default value is 50.
+     * 
+     * @param max the maximum number of pending payloads
+     * @return the builder
+     */
+    public Builder maxPendingEventPayloads(int max) {
+      this.maxPendingEventPayloads = max;
+      return this;
+    }
+    
+    /**
+     * Sets the maximum number of threads that make polling requests, and store the results, for all of the
+     * clients that use polling mode. A client whose requests or feature store are slow only ties up one of
+     * these threads. The default value is 2.
+     * 
+     * @param workers the maximum number of concurrent polls
+     * @return the builder
+     */
+    public Builder pollWorkers(int workers) {
+      this.pollWorkers = workers;
+      return this;
+    }
+    
+    /**
+     * Sets the maximum number of idle HTTP connections that the shared connection pool keeps open. The
+     * default value is 20.
+     * 
+     * @param max the maximum number of idle connections
+     * @return the builder
+     */
+    public Builder maxIdleConnections(int max) {
+      this.maxIdleConnections = max;
+      return this;
+    }
+    
+    /**
+     * Sets how long an idle HTTP connection is kept open. The default value is 60 seconds.
+     * 
+     * @param seconds the keep-alive time in seconds
+     * @return the builder
+     */
+    public Builder connectionKeepAliveSeconds(long seconds) {
+      this.connectionKeepAliveSeconds = seconds;
+      return this;
+    }
+    
+    /**
+     * Creates the runtime and starts its scheduler thread.
+     * @return a new runtime
+     */
+    public LDClientRuntime build() {
+      return new LDClientRuntime(this);
+    }
+  }
+}
@@ -6,6 +6,7 @@ import com.google.gson.GsonBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
@@ -44,6 +45,12 @@ public final class LDConfig {
   private static final int DEFAULT_USER_KEYS_CAPACITY = 1000;
   private static final int DEFAULT_USER_KEYS_FLUSH_INTERVAL_SECONDS = 60 * 5;
   private static final long DEFAULT_RECONNECT_TIME_MILLIS = 1000;
+  private static final long DEFAULT_EVENT_SPOOL_MAX_BYTES = 10 * 1024 * 1024;
+  private static final int DEFAULT_EVENT_FLUSH_WORKERS = 5;
+  private static final int DEFAULT_MAX_PENDING_EVENT_PAYLOADS = 10;
+  private static final long DEFAULT_EVENT_BACKPRESSURE_TIMEOUT_MILLIS = 100;
+  private static final int DEFAULT_DEBUG_EVENT_SAMPLE_SIZE = 10;
+  private static final int[] DEFAULT_EVENT_LANE_WEIGHTS = { 4, 2, 1 };
 
   protected static final LDConfig DEFAULT = new Builder().build();
 
@@ -70,6 +77,7 @@ public final class LDConfig {
   final long reconnectTimeMs;
   final int userKeysCapacity;
   final int userKeysFlushInterval;
+  final double userKeysFalsePositiveRate;
   final boolean inlineUsersInEvents;
   final SSLSocketFactory sslSocketFactory;
   final X509TrustManager trustManager;
@@ -77,6 +85,26 @@ public final class LDConfig {
   final TimeUnit connectTimeoutUnit;
   final int socketTimeout;
   final TimeUnit socketTimeoutUnit;
+  final File eventSpoolDirectory;
+  final long eventSpoolMaxBytes;
+  final int flushEventCountThreshold;
+  final int flushByteSizeThreshold;
+  final boolean adaptiveFlushBatching;
+  final int maxPayloadBytes;
+  final int eventFlushWorkers;
+  final int maxPendingEventPayloads;
+  final EventBackpressurePolicy eventBackpressurePolicy;
+  final long eventBackpressureTimeoutMillis;
+  final EventMetricsListener eventMetricsListener;
+  final boolean aggregateMetricEvents;
+  final int metricEventUserBuckets;
+  final double debugEventsPerFlagPerSecond;
+  final long eventShutdownTimeoutMillis;
+  final int debugEventSampleSize;
+  final LDClientRuntime runtime;
+  final int[] eventLaneCapacities;
+  final int[] eventLaneWeights;
+  final int maxEventsPerFlush;
   
   protected LDConfig(Builder builder) {
     this.baseURI = builder.baseURI;
@@ -106,6 +134,7 @@ public final class LDConfig {
     this.reconnectTimeMs = builder.reconnectTimeMillis;
     this.userKeysCapacity = builder.userKeysCapacity;
     this.userKeysFlushInterval = builder.userKeysFlushInterval;
+    this.userKeysFalsePositiveRate = builder.userKeysFalsePositiveRate;
     this.inlineUsersInEvents = builder.inlineUsersInEvents;
     this.sslSocketFactory = builder.sslSocketFactory;
     this.trustManager = builder.trustManager;
@@ -113,6 +142,26 @@ public final class LDConfig {
     this.connectTimeoutUnit = builder.connectTimeoutUnit;
     this.socketTimeout = builder.socketTimeout;
     this.socketTimeoutUnit = builder.socketTimeoutUnit;
+    this.eventSpoolDirectory = builder.eventSpoolDirectory;
+    this.eventSpoolMaxBytes = builder.eventSpoolMaxBytes;
+    this.flushEventCountThreshold = builder.flushEventCountThreshold;
+    this.flushByteSizeThreshold = builder.flushByteSizeThreshold;
+    this.adaptiveFlushBatching = builder.adaptiveFlushBatching;
+    this.maxPayloadBytes = builder.maxPayloadBytes;
+    this.eventFlushWorkers = builder.eventFlushWorkers;
+    this.maxPendingEventPayloads = builder.maxPendingEventPayloads;
+    this.eventBackpressurePolicy = builder.eventBackpressurePolicy;
+    this.eventBackpressureTimeoutMillis = builder.eventBackpressureTimeoutMillis;
+    this.eventMetricsListener = builder.eventMetricsListener;
+    this.aggregateMetricEvents = builder.aggregateMetricEvents;
+    this.metricEventUserBuckets = builder.metricEventUserBuckets;
+    this.debugEventsPerFlagPerSecond = builder.debugEventsPerFlagPerSecond;
+    this.eventShutdownTimeoutMillis = builder.eventShutdownTimeoutMillis;
+    this.debugEventSampleSize = builder.debugEventSampleSize;
+    this.runtime = builder.runtime;
+    this.eventLaneCapacities = builder.eventLaneCapacities;
+    this.eventLaneWeights = builder.eventLaneWeights;
+    this.maxEventsPerFlush = builder.maxEventsPerFlush;
 
     if (proxy != null) {
       if (proxyAuthenticator != null) {
@@ -164,9 +213,30 @@ public final class LDConfig {
     private Set<String> privateAttrNames = new HashSet<>();
     private int userKeysCapacity = DEFAULT_USER_KEYS_CAPACITY;
     private int userKeysFlushInterval = DEFAULT_USER_KEYS_FLUSH_INTERVAL_SECONDS;
+    private double userKeysFalsePositiveRate = 0;
     private boolean inlineUsersInEvents = false;
     private SSLSocketFactory sslSocketFactory = null;
     private X509TrustManager trustManager = null;
+    private File eventSpoolDirectory = null;
+    private long eventSpoolMaxBytes = DEFAULT_EVENT_SPOOL_MAX_BYTES;
+    private int flushEventCountThreshold = 0;
+    private int flushByteSizeThreshold = 0;
+    private boolean adaptiveFlushBatching = false;
+    private int maxPayloadBytes = 0;
+    private int eventFlushWorkers = DEFAULT_EVENT_FLUSH_WORKERS;
+    private int maxPendingEventPayloads = DEFAULT_MAX_PENDING_EVENT_PAYLOADS;
+    private EventBackpressurePolicy eventBackpressurePolicy = EventBackpressurePolicy.DROP_NEWEST;
+    private long eventBackpressureTimeoutMillis = DEFAULT_EVENT_BACKPRESSURE_TIMEOUT_MILLIS;
+    private EventMetricsListener eventMetricsListener = null;
+    private boolean aggregateMetricEvents = false;
+    private int metricEventUserBuckets = 0;
+    private double debugEventsPerFlagPerSecond = 0;
+    private long eventShutdownTimeoutMillis = 0;
+    private int debugEventSampleSize = DEFAULT_DEBUG_EVENT_SAMPLE_SIZE;
+    private LDClientRuntime runtime = null;
+    private int[] eventLaneCapacities = null;
+    private int[] eventLaneWeights = DEFAULT_EVENT_LANE_WEIGHTS;
+    private int maxEventsPerFlush = 0;
 
     /**
      * Creates a builder with all configuration parameters set to the default
@@ -340,6 +410,259 @@ public final class LDConfig {
       return this;
     }
 
+    /**
+     * Sets a number of buffered events that will cause the event buffer to be flushed immediately, rather
+     * than waiting for the next {@link #flushInterval(int)}. This reduces the chance of events being
+     * discarded during traffic spikes. The default is zero, meaning that flushes are only triggered by time.
+     *
+     * @param count the number of events that triggers a flush, or zero to disable this
+     * @return the builder
+     * @see #adaptiveFlushBatching(boolean)
+     */
+    public Builder flushEventCountThreshold(int count) {
+      this.flushEventCountThreshold = count;
+      return this;
+    }
+
+    /**
+     * Sets an approximate size, in bytes, of buffered event data that will cause the event buffer to be
+     * flushed immediately, rather than waiting for the next {@link #flushInterval(int)}. The size is
+     * estimated from the events without serializing them. The default is zero, meaning that the size of
+     * the buffer does not trigger flushes.
+     *
+     * @param bytes the estimated buffer size that triggers a flush, or zero to disable this
+     * @return the builder
+     */
+    public Builder flushByteSizeThreshold(int bytes) {
+      this.flushByteSizeThreshold = bytes;
+      return this;
+    }
+
+    /**
+     * Sets whether the number of buffered events that triggers a flush should adapt to how quickly the
+     * events service is responding. When this is enabled, the threshold grows (up to the value of
+     * {@link #flushEventCountThreshold(int)}, or the buffer {@link #capacity(int)} if that is not set)
+     * while posts are slow, so that fewer and larger payloads are sent, and shrinks while posts are fast,
+     * so that events are delivered sooner. The default is false.
+     *
+     * @param adaptive true to enable adaptive batch sizing
+     * @return the builder
+     */
+    public Builder adaptiveFlushBatching(boolean adaptive) {
+      this.adaptiveFlushBatching = adaptive;
+      return this;
+    }
+
+    /**
+     * Sets the maximum size, in bytes, of a single analytics event payload. If a flush produces more data
+     * than this, it is split into several requests. A single event that is larger than this limit is
+     * still sent, in a request by itself. The default is zero, meaning that payloads are never split.
+     *
+     * @param bytes the maximum payload size, or zero for no limit
+     * @return the builder
+     */
+    public Builder maxPayloadBytes(int bytes) {
+      this.maxPayloadBytes = bytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of threads that will deliver analytics event payloads concurrently. These
+     * threads are only created while there are payloads to deliver, and exit after being idle for a while.
+     * The default value is 5.
+     *
+     * @param workers the maximum number of concurrent event deliveries
+     * @return the builder
+     */
+    public Builder eventFlushWorkers(int workers) {
+      this.eventFlushWorkers = workers;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of flushed event payloads that can wait for a delivery thread when all of
+     * them are busy. If this many payloads are already waiting, further flushes are postponed and the events
+     * stay in the event buffer. The default value is 10.
+     *
+     * @param max the maximum number of pending payloads
+     * @return the builder
+     */
+    public Builder maxPendingEventPayloads(int max) {
+      this.maxPendingEventPayloads = max;
+      return this;
+    }
+
+    /**
+     * Sets what happens when analytics events are produced faster than the event processor can handle
+     * them, so that its input queue is full. The default is {@link EventBackpressurePolicy#DROP_NEWEST}.
+     *
+     * @param policy the backpressure policy
+     * @return the builder
+     * @see LDClient#getEventInboxStatistics()
+     */
+    public Builder eventBackpressurePolicy(EventBackpressurePolicy policy) {
+      this.eventBackpressurePolicy = policy == null ? EventBackpressurePolicy.DROP_NEWEST : policy;
+      return this;
+    }
+
+    /**
+     * Sets how long an application thread may wait for room in the event processor's input queue when
+     * the policy is {@link EventBackpressurePolicy#BLOCK}. The default value is 100 milliseconds.
+     *
+     * @param timeoutMillis the maximum wait in milliseconds
+     * @return the builder
+     */
+    public Builder eventBackpressureTimeoutMillis(long timeoutMillis) {
+      this.eventBackpressureTimeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    /**
+     * Registers a listener that will receive statistics about the event processor after each flush, such
+     * as queue depth, delivery latency, and payload sizes. The default is no listener.
+     *
+     * @param listener the metrics listener, or null
+     * @return the builder
+     * @see LDClient#getEventMetrics()
+     */
+    public Builder eventMetricsListener(EventMetricsListener listener) {
+      this.eventMetricsListener = listener;
+      return this;
+    }
+
+    /**
+     * Sets whether numeric custom events should be aggregated locally before they are sent. When this is
+     * enabled, events created by {@link LDClient#trackMetric(String, LDUser, com.launchdarkly.client.value.LDValue, double)} that have no
+     * custom data are not sent individually; instead, each flush sends one custom event per event key and
+     * user, whose metric value is the sum of the values and whose data contains the count, sum, minimum,
+     * maximum, and a histogram of the values. The default is false.
+     *
+     * @param aggregate true to aggregate numeric custom events
+     * @return the builder
+     * @see #metricEventUserBuckets(int)
+     */
+    public Builder aggregateMetricEvents(boolean aggregate) {
+      this.aggregateMetricEvents = aggregate;
+      return this;
+    }
+
+    /**
+     * Sets the number of buckets that users are hashed into when {@link #aggregateMetricEvents(boolean)}
+     * is enabled. By default (zero), metric events are aggregated separately for each user; with buckets,
+     * at most this many aggregate events are sent per event key in each flush, no matter how many users
+     * there are.
+     *
+     * @param buckets the number of user buckets, or zero to aggregate per user
+     * @return the builder
+     */
+    public Builder metricEventUserBuckets(int buckets) {
+      this.metricEventUserBuckets = buckets;
+      return this;
+    }
+
+    /**
+     * Limits how many debug events are generated for each flag while event debugging is turned on for it.
+     * Each flag may produce this many debug events per second, with bursts of up to one second's worth;
+     * beyond that, a random sample of the remaining evaluations (see {@link #debugEventSampleSize(int)})
+     * is sent at each flush, and the rest are counted by {@link EventMetrics#getSuppressedDebugEventCount()}.
+     * Flag evaluations are still counted exactly in the summary event. The default is zero, meaning no limit.
+     *
+     * @param eventsPerSecond the maximum sustained rate of debug events per flag, or zero for no limit
+     * @return the builder
+     */
+    public Builder debugEventsPerFlagPerSecond(double eventsPerSecond) {
+      this.debugEventsPerFlagPerSecond = eventsPerSecond;
+      return this;
+    }
+
+    /**
+     * Sets how many of the evaluations that exceed {@link #debugEventsPerFlagPerSecond(double)} are still
+     * sent as debug events for each flag in each flush, chosen at random. The default is 10.
+     *
+     * @param sampleSize the number of over-limit evaluations to sample per flag per flush
+     * @return the builder
+     */
+    public Builder debugEventSampleSize(int sampleSize) {
+      this.debugEventSampleSize = sampleSize;
+      return this;
+    }
+
+    /**
+     * Sets a time limit for delivering buffered analytics events when the client is closed. Within this
+     * time, the remaining events are posted in parallel by all of the event flush workers; any that have not
+     * been delivered by the deadline are written to the event spool if one is configured (see
+     * {@link #eventSpoolDirectory(File)}), and otherwise dropped. {@link LDClient#close()} then returns, and
+     * {@link LDClient#getEventShutdownReport()} describes what happened. The default is zero, meaning that
+     * closing the client waits for all deliveries to finish, however long that takes.
+     *
+     * @param timeoutMillis the shutdown deadline in milliseconds, or zero for no limit
+     * @return the builder
+     */
+    public Builder eventShutdownTimeoutMillis(long timeoutMillis) {
+      this.eventShutdownTimeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    /**
+     * Makes the client use resources that are shared with other clients: an HTTP connection pool, a
+     * scheduler thread, and a pool of event delivery threads. This is useful when one process has clients
+     * for many environments. By default, each client creates its own.
+     *
+     * @param runtime the shared runtime, or null
+     * @return the builder
+     * @see LDClientRuntime
+     */
+    public Builder runtime(LDClientRuntime runtime) {
+      this.runtime = runtime;
+      return this;
+    }
+
+    /**
+     * Gives each category of analytics event its own bounded space in the event buffer, so that a burst of
+     * less important events cannot push out more important ones. Identify, custom, and index events are in
+     * the highest-priority lane; full feature events are next; debug events are last. When a lane is full,
+     * further events for that lane are dropped, but flag evaluations are still counted in the summary event.
+     * Within each payload, the events from all lanes are listed in the order in which they happened. By default,
+     * all events share a single buffer whose size is set by {@link #capacity(int)}.
+     *
+     * @param highPriority the capacity for identify, custom, and index events
+     * @param feature the capacity for full feature events
+     * @param debug the capacity for debug events
+     * @return the builder
+     * @see #eventLaneWeights(int, int, int)
+     */
+    public Builder eventLaneCapacities(int highPriority, int feature, int debug) {
+      this.eventLaneCapacities = new int[] { highPriority, feature, debug };
+      return this;
+    }
+
+    /**
+     * Sets the relative share of each event lane in a flush, when {@link #eventLaneCapacities(int, int, int)}
+     * and {@link #maxEventsPerFlush(int)} are both set. The default weights are 4, 2, and 1.
+     *
+     * @param highPriority the weight of identify, custom, and index events
+     * @param feature the weight of full feature events
+     * @param debug the weight of debug events
+     * @return the builder
+     */
+    public Builder eventLaneWeights(int highPriority, int feature, int debug) {
+      this.eventLaneWeights = new int[] { highPriority, feature, debug };
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of events, not counting the summary event, that a single flush will take from
+     * the event buffer; any others stay in the buffer for the next flush. If event lanes are enabled, the
+     * events are taken from the lanes according to their weights. The default is zero, meaning no limit.
+     *
+     * @param max the maximum number of events per flush, or zero for no limit
+     * @return the builder
+     */
+    public Builder maxEventsPerFlush(int max) {
+      this.maxEventsPerFlush = max;
+      return this;
+    }
+
     /**
      * Set the capacity of the events buffer. The client buffers up to this many events in memory before flushing. If the capacity is exceeded before the buffer is flushed, events will be discarded.
      * Increasing the capacity means that events are less likely to be discarded, at the cost of consuming more memory. The default value is 10000 elements. The default flush interval (set by flushInterval) is 5 seconds.
@@ -556,6 +879,24 @@ public final class LDConfig {
       return this;
     }
 
+    /**
+     * Allows the event processor to remember user keys in a compact form, at the cost of occasionally
+     * mistaking a new user for one it has already seen (in which case that user's details are not sent
+     * until the next {@link #userKeysFlushInterval(int)}).
+     * <p>
+     * By default, the full key of each of the last {@link #userKeysCapacity(int)} users is kept, so memory
+     * use grows with the length of the keys. If this is set to a value greater than zero, only a hash
+     * fingerprint of 2, 4, or 8 bytes per user is kept, in a table whose size is fixed by the capacity; the
+     * smallest fingerprint that keeps the chance of a mistake below the given rate is used.
+     *
+     * @param rate the acceptable probability of a new user being mistaken for a known one, or zero to keep exact keys
+     * @return the builder
+     */
+    public Builder userKeysFalsePositiveRate(double rate) {
+      this.userKeysFalsePositiveRate = rate;
+      return this;
+    }
+
     /**
      * Sets whether to include full user details in every analytics event. The default is false (events will
      * only include the user key, except for one "index" event that provides the full details for the user).
@@ -568,6 +909,38 @@ public final class LDConfig {
       return this;
     }
     
+    /**
+     * Sets a directory in which analytics event payloads will be stored if they cannot be delivered.
+     * <p>
+     * Normally, if the LaunchDarkly events service cannot be reached, a payload is retried once and then
+     * discarded. If a spool directory is set, such payloads are written to disk instead, and are sent
+     * again (with the same payload ID, so the service can discard duplicates) after a later delivery
+     * succeeds, or at the next flush. Payloads left in the spool when the application exits are picked up
+     * by the next client that uses the same directory and SDK key. Only one client at a time can spool
+     * payloads for an SDK key in a directory; if another client, in this process or another one, is
+     * already doing so, this client logs an error and does not spool. By default, there is no spool.
+     *
+     * @param directory the spool directory, or null to disable spooling
+     * @return the builder
+     * @see #eventSpoolMaxBytes(long)
+     */
+    public Builder eventSpoolDirectory(File directory) {
+      this.eventSpoolDirectory = directory;
+      return this;
+    }
+
+    /**
+     * Sets the maximum total size of payloads kept in the event spool set by {@link #eventSpoolDirectory(File)}.
+     * When this is exceeded, the oldest payloads are discarded. The default is 10 MB.
+     *
+     * @param maxBytes the maximum spool size in bytes
+     * @return the builder
+     */
+    public Builder eventSpoolMaxBytes(long maxBytes) {
+      this.eventSpoolMaxBytes = maxBytes;
+      return this;
+    }
+
     // returns null if none of the proxy bits were configured. Minimum required part: port.
     Proxy proxy() {
       if (this.proxyPort == -1) {
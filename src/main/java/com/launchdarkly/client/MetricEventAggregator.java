@@ -0,0 +1,155 @@
+package com.launchdarkly.client;
+
+import com.launchdarkly.client.value.ArrayBuilder;
+import com.launchdarkly.client.value.LDValue;
+import com.launchdarkly.client.value.ObjectBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Combines numeric custom events (those created by {@code trackMetric} without any custom data) into
+ * one aggregate event per event key and user, or per event key and user bucket, for each flush.
+ * <p>
+ * The aggregate event has the same key as the original events; its {@code metricValue} is the sum of
+ * their values, and its {@code data} contains an {@code "aggregate"} object with the count, sum,
+ * minimum, maximum, and a histogram with fixed bucket bounds. If user buckets are used, the event's user
+ * is the first user that was seen in that bucket, and the bucket number is included in the aggregate.
+ * <p>
+ * Like {@link EventSummarizer}, this is only used from the event dispatcher thread and is not thread-safe.
+ */
+final class MetricEventAggregator {
+  /**
+   * Upper bounds of the histogram buckets; the last bucket, which has no upper bound, is not included.
+   */
+  static final double[] HISTOGRAM_BUCKET_BOUNDS = { 0, 1, 5, 10, 50, 100, 500, 1000, 5000, 10000, 50000, 100000 };
+  
+  private final int userBuckets;
+  private final Map<AggregateKey, Aggregate> aggregates = new LinkedHashMap<>();
+  
+  /**
+   * Creates an aggregator.
+   * @param userBuckets the number of buckets to divide users into, or zero to aggregate per user
+   */
+  MetricEventAggregator(int userBuckets) {
+    this.userBuckets = userBuckets;
+  }
+  
+  /**
+   * Adds an event to the aggregates, if it is a numeric custom event.
+   * @param event the event
+   * @return true if the event was aggregated; false if it should be sent as usual
+   */
+  boolean add(Event event) {
+    if (!(event instanceof Event.Custom)) {
+      return false;
+    }
+    Event.Custom ce = (Event.Custom)event;
+    if (ce.metricValue == null || !ce.data.isNull() || ce.key == null ||
+        ce.user == null || ce.user.getKeyAsString() == null) {
+      return false;
+    }
+    String userKey = ce.user.getKeyAsString();
+    Integer bucket = userBuckets > 0 ? (userKey.hashCode() & 0x7fffffff) % userBuckets : null;
+    AggregateKey key = new AggregateKey(ce.key, bucket == null ? userKey : null, bucket);
+    Aggregate agg = aggregates.get(key);
+    if (agg == null) {
+      agg = new Aggregate(ce.user);
+      aggregates.put(key, agg);
+    }
+    agg.add(ce.metricValue, ce.creationDate);
+    return true;
+  }
+  
+  boolean isEmpty() {
+    return aggregates.isEmpty();
+  }
+  
+  /**
+   * Returns one custom event for each aggregate, and resets the aggregator.
+   * @return the aggregate events
+   */
+  List<Event.Custom> drain() {
+    List<Event.Custom> ret = new ArrayList<>(aggregates.size());
+    for (Map.Entry<AggregateKey, Aggregate> e: aggregates.entrySet()) {
+      AggregateKey key = e.getKey();
+      Aggregate agg = e.getValue();
+      ArrayBuilder bounds = LDValue.buildArray(), counts = LDValue.buildArray();
+      for (double b: HISTOGRAM_BUCKET_BOUNDS) {
+        bounds.add(b);
+      }
+      for (long c: agg.histogram) {
+        counts.add(c);
+      }
+      ObjectBuilder data = LDValue.buildObject()
+          .put("count", agg.count)
+          .put("sum", agg.sum)
+          .put("min", agg.min)
+          .put("max", agg.max)
+          .put("histogram", LDValue.buildObject().put("bounds", bounds.build()).put("counts", counts.build()).build());
+      if (key.bucket != null) {
+        data.put("userBucket", key.bucket.intValue());
+      }
+      ret.add(new Event.Custom(agg.lastTimestamp, key.eventKey, agg.user,
+          LDValue.buildObject().put("aggregate", data.build()).build(), agg.sum));
+    }
+    aggregates.clear();
+    return ret;
+  }
+  
+  private static final class AggregateKey {
+    final String eventKey;
+    final String userKey;
+    final Integer bucket;
+    
+    AggregateKey(String eventKey, String userKey, Integer bucket) {
+      this.eventKey = eventKey;
+      this.userKey = userKey;
+      this.bucket = bucket;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+      if (other instanceof AggregateKey) {
+        AggregateKey o = (AggregateKey)other;
+        return eventKey.equals(o.eventKey) && Objects.equals(userKey, o.userKey) && Objects.equals(bucket, o.bucket);
+      }
+      return false;
+    }
+    
+    @Override
+    public int hashCode() {
+      return eventKey.hashCode() + 31 * (Objects.hashCode(userKey) + 31 * Objects.hashCode(bucket));
+    }
+  }
+  
+  private static final class Aggregate {
+    final LDUser user;
+    final long[] histogram = new long[HISTOGRAM_BUCKET_BOUNDS.length + 1];
+    long count;
+    double sum;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    long lastTimestamp;
+    
+    Aggregate(LDUser user) {
+      this.user = user;
+    }
+    
+    void add(double value, long timestamp) {
+      count++;
+      sum += value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+      lastTimestamp = Math.max(lastTimestamp, timestamp);
+      int i = 0;
+      while (i < HISTOGRAM_BUCKET_BOUNDS.length && value > HISTOGRAM_BUCKET_BOUNDS[i]) {
+        i++;
+      }
+      histogram[i]++;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.launchdarkly.client;
+
+import com.launchdarkly.client.EventSummarizer.CounterKey;
+import com.launchdarkly.client.value.LDValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts flag evaluations whose events never reached the event processor's queue, so that they can
+ * still be included in the summary event. Unlike {@link EventSummarizer}, this is called from
+ * application threads, so it is thread-safe; the event dispatcher thread periodically moves the
+ * counts into its own summarizer with {@link #drainTo(EventSummarizer)}.
+ * <p>
+ * A drain resets each counter rather than removing it, so that an increment that races with the drain
+ * is picked up by the next drain rather than lost. A counter that is still at zero when the next drain
+ * comes around is retired and removed; an increment that finds a retired counter starts a new one. So
+ * the map only holds the flag versions and variations that were evaluated during the last two flush
+ * intervals.
+ */
+final class OverflowEventSummarizer {
+  private static final long RETIRED = -1;
+  
+  private final ConcurrentHashMap<CounterKey, Counter> counters = new ConcurrentHashMap<>();
+  private final AtomicLong startDate = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong endDate = new AtomicLong(0);
+  
+  void summarizeEvent(Event event) {
+    if (!(event instanceof Event.FeatureRequest)) {
+      return;
+    }
+    Event.FeatureRequest fe = (Event.FeatureRequest)event;
+    CounterKey key = new CounterKey(fe.key, fe.variation, fe.version);
+    while (true) {
+      Counter counter = counters.get(key);
+      if (counter == null) {
+        Counter newCounter = new Counter(fe.value, fe.defaultVal);
+        counter = counters.putIfAbsent(key, newCounter);
+        if (counter == null) {
+          counter = newCounter;
+        }
+      }
+      if (counter.increment()) {
+        break;
+      }
+      counters.remove(key, counter); // it was retired by drainTo; normally drainTo has already removed it
+    }
+    noteTimestamp(fe.creationDate);
+  }
+  
+  void drainTo(EventSummarizer summarizer) {
+    boolean any = false;
+    for (Map.Entry<CounterKey, Counter> e: counters.entrySet()) {
+      Counter counter = e.getValue();
+      long n = counter.count.get();
+      if (n > 0) {
+        n = counter.count.getAndSet(0);
+        CounterKey key = e.getKey();
+        summarizer.addCounts(key.key, key.variation, key.version, counter.flagValue, counter.defaultVal, n);
+        any = true;
+      } else if (n == 0 && counter.count.compareAndSet(0, RETIRED)) {
+        counters.remove(e.getKey(), counter);
+      }
+    }
+    if (any) {
+      long start = startDate.getAndSet(Long.MAX_VALUE), end = endDate.getAndSet(0);
+      if (start != Long.MAX_VALUE) {
+        summarizer.noteTimestamp(start);
+      }
+      if (end != 0) {
+        summarizer.noteTimestamp(end);
+      }
+    }
+  }
+  
+  private void noteTimestamp(long time) {
+    while (true) {
+      long start = startDate.get();
+      if (time >= start || startDate.compareAndSet(start, time)) {
+        break;
+      }
+    }
+    while (true) {
+      long end = endDate.get();
+      if (time <= end || endDate.compareAndSet(end, time)) {
+        break;
+      }
+    }
+  }
+  
+  // Returns the number of flag versions and variations currently being counted.
+  int size() {
+    return counters.size();
+  }
+  
+  private static final class Counter {
+    final AtomicLong count = new AtomicLong(0);
+    final LDValue flagValue;
+    final LDValue defaultVal;
+    
+    Counter(LDValue flagValue, LDValue defaultVal) {
+      this.flagValue = flagValue;
+      this.defaultVal = defaultVal;
+    }
+    
+    // Returns false if the counter has been retired, in which case the caller should use a new one.
+    boolean increment() {
+      while (true) {
+        long n = count.get();
+        if (n == RETIRED) {
+          return false;
+        }
+        if (count.compareAndSet(n, n + 1)) {
+          return true;
+        }
+      }
+    }
+  }
+}
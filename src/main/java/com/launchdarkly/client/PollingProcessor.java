@@ -9,7 +9,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -25,6 +27,9 @@ class PollingProcessor implements UpdateProcessor {
   private final FeatureStore store;
   private AtomicBoolean initialized = new AtomicBoolean(false);
   private ScheduledExecutorService scheduler = null;
+  private volatile ScheduledFuture<?> pollTask = null;
+  private volatile boolean stopped = false;
+  private final AtomicBoolean pollInProgress = new AtomicBoolean(false);
 
   PollingProcessor(LDConfig config, FeatureRequestor requestor, FeatureStore featureStore) {
     this.requestor = requestor;
@@ -40,7 +45,7 @@ class PollingProcessor implements UpdateProcessor {
   @Override
   public void close() throws IOException {
     logger.info("Closing LaunchDarkly PollingProcessor");
-    scheduler.shutdown();
+    stopPolling();
     requestor.close();
   }
 
@@ -49,14 +54,21 @@ class PollingProcessor implements UpdateProcessor {
     logger.info("Starting LaunchDarkly polling client with interval: "
         + config.pollingIntervalMillis + " milliseconds");
     final SettableFuture<Void> initFuture = SettableFuture.create();
-    ThreadFactory threadFactory = new ThreadFactoryBuilder()
-        .setNameFormat("LaunchDarkly-PollingProcessor-%d")
-        .build();
-    scheduler = Executors.newScheduledThreadPool(1, threadFactory);
+    if (config.runtime != null) {
+      scheduler = config.runtime.scheduler;
+    } else {
+      ThreadFactory threadFactory = new ThreadFactoryBuilder()
+          .setNameFormat("LaunchDarkly-PollingProcessor-%d")
+          .build();
+      scheduler = Executors.newScheduledThreadPool(1, threadFactory);
+    }
 
-    scheduler.scheduleAtFixedRate(new Runnable() {
+    final Runnable poll = new Runnable() {
       @Override
       public void run() {
+        if (stopped) {
+          return;
+        }
         try {
           FeatureRequestor.AllData allData = requestor.getAllData();
           store.init(DefaultFeatureRequestor.toVersionedDataMap(allData));
@@ -67,7 +79,7 @@ class PollingProcessor implements UpdateProcessor {
         } catch (HttpErrorException e) {
           logger.error(httpErrorMessage(e.getStatus(), "polling request", "will retry"));
           if (!isHttpErrorRecoverable(e.getStatus())) {
-            scheduler.shutdown();
+            stopPolling();
             initFuture.set(null); // if client is initializing, make it stop waiting; has no effect if already inited
           }
         } catch (IOException e) {
@@ -75,8 +87,50 @@ class PollingProcessor implements UpdateProcessor {
           logger.debug(e.toString(), e);
         }
       }
-    }, 0L, config.pollingIntervalMillis, TimeUnit.MILLISECONDS);
+    };
+    // The shared scheduler only triggers the poll; the request and the store update are done on the runtime's
+    // poll workers, so that they can't hold up other clients' tasks. A poll that is still running when the next
+    // one is due is not repeated.
+    Runnable task = config.runtime == null ? poll : new Runnable() {
+      @Override
+      public void run() {
+        if (!pollInProgress.compareAndSet(false, true)) {
+          return;
+        }
+        try {
+          config.runtime.pollExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                poll.run();
+              } finally {
+                pollInProgress.set(false);
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) { // the runtime has been closed
+          pollInProgress.set(false);
+        }
+      }
+    };
+    pollTask = scheduler.scheduleAtFixedRate(task, 0L, config.pollingIntervalMillis, TimeUnit.MILLISECONDS);
+    if (stopped) { // the first poll may have failed before we got the task handle
+      stopPolling();
+    }
 
     return initFuture;
   }
+  
+  // A shared scheduler is still being used by other clients, so we only cancel our own task.
+  private void stopPolling() {
+    stopped = true;
+    if (config.runtime != null) {
+      ScheduledFuture<?> task = pollTask;
+      if (task != null) {
+        task.cancel(false);
+      }
+    } else if (scheduler != null) {
+      scheduler.shutdown();
+    }
+  }
 }
\ No newline at end of file
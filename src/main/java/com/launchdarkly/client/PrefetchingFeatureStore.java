@@ -0,0 +1,176 @@
+package com.launchdarkly.client;
+
+import com.launchdarkly.client.value.LDValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A view of the feature store for a single flag evaluation. Before a flag's prerequisites and rules are
+ * checked, it reads all of the prerequisite flags and segments that the flag refers to in one batch per kind,
+ * so that a store without a warm cache needs one round trip for them rather than one per item. Items that
+ * are already in the view, including ones that were not found, are not read again. Writes are passed through
+ * to the store.
+ * <p>
+ * Instances are only used by one thread, so they are not thread-safe.
+ */
+final class PrefetchingFeatureStore implements FeatureStore {
+  private final FeatureStoreClientWrapper store;
+  private final Map<VersionedDataKind<?>, Map<String, VersionedData>> prefetched = new HashMap<>();
+
+  private PrefetchingFeatureStore(FeatureStoreClientWrapper store) {
+    this.store = store;
+  }
+
+  /**
+   * Reads the prerequisite flags and segments of a flag, if there are at least two of one kind that the store
+   * would otherwise have to read one at a time. Returns the store to use for the rest of the evaluation: a view
+   * holding the items that were read, or the original store if nothing needed to be read, so that evaluations
+   * against a warm cache or a store that cannot batch reads cost nothing extra.
+   */
+  static FeatureStore prefetchReferences(FeatureStore store, FeatureFlag flag) {
+    if (store instanceof PrefetchingFeatureStore) {
+      PrefetchingFeatureStore view = (PrefetchingFeatureStore)store;
+      view.prefetch(VersionedDataKind.FEATURES, prerequisiteKeys(flag));
+      view.prefetch(VersionedDataKind.SEGMENTS, segmentKeys(flag));
+      return view;
+    }
+    if (!(store instanceof FeatureStoreClientWrapper) || !((FeatureStoreClientWrapper)store).supportsGetMany()) {
+      return store;
+    }
+    FeatureStoreClientWrapper wrapper = (FeatureStoreClientWrapper)store;
+    List<String> flagKeysToRead = keysToRead(wrapper, null, VersionedDataKind.FEATURES, prerequisiteKeys(flag));
+    List<String> segmentKeysToRead = keysToRead(wrapper, null, VersionedDataKind.SEGMENTS, segmentKeys(flag));
+    if (flagKeysToRead.size() < 2 && segmentKeysToRead.size() < 2) {
+      return store; // a single item is read just as quickly when it is needed, and may not be needed at all
+    }
+    PrefetchingFeatureStore view = new PrefetchingFeatureStore(wrapper);
+    view.read(VersionedDataKind.FEATURES, flagKeysToRead);
+    view.read(VersionedDataKind.SEGMENTS, segmentKeysToRead);
+    return view;
+  }
+
+  private static List<String> prerequisiteKeys(FeatureFlag flag) {
+    if (flag.getPrerequisites() == null || flag.getPrerequisites().size() < 2) {
+      return Collections.emptyList();
+    }
+    List<String> keys = new ArrayList<>(flag.getPrerequisites().size());
+    for (Prerequisite prereq: flag.getPrerequisites()) {
+      keys.add(prereq.getKey());
+    }
+    return keys;
+  }
+
+  private static List<String> segmentKeys(FeatureFlag flag) {
+    if (flag.getRules() == null) {
+      return Collections.emptyList();
+    }
+    List<String> keys = null;
+    for (Rule rule: flag.getRules()) {
+      if (rule.getClauses() == null) {
+        continue;
+      }
+      for (Clause clause: rule.getClauses()) {
+        if (clause.getOp() == Operator.segmentMatch && clause.getValues() != null) {
+          for (LDValue value: clause.getValues()) {
+            if (value.isString()) {
+              if (keys == null) {
+                keys = new ArrayList<>();
+              }
+              keys.add(value.stringValue());
+            }
+          }
+        }
+      }
+    }
+    return keys == null || keys.size() < 2 ? Collections.<String>emptyList() : keys;
+  }
+
+  // Returns the keys, without duplicates, that are neither cached by the store nor already in the view.
+  private static List<String> keysToRead(FeatureStoreClientWrapper store, Map<String, VersionedData> alreadyRead,
+      VersionedDataKind<?> kind, List<String> keys) {
+    if (keys.isEmpty()) {
+      return keys;
+    }
+    List<String> ret = new ArrayList<>(keys.size());
+    for (String key: keys) {
+      if (!ret.contains(key) && (alreadyRead == null || !alreadyRead.containsKey(key)) && !store.isCached(kind, key)) {
+        ret.add(key);
+      }
+    }
+    return ret;
+  }
+
+  private void prefetch(VersionedDataKind<?> kind, List<String> keys) {
+    read(kind, keysToRead(store, prefetched.get(kind), kind, keys));
+  }
+
+  private void read(VersionedDataKind<?> kind, List<String> keys) {
+    if (keys.size() < 2) {
+      return;
+    }
+    Map<String, VersionedData> items = prefetched.get(kind);
+    if (items == null) {
+      items = new HashMap<>();
+      prefetched.put(kind, items);
+    }
+    Map<String, ? extends VersionedData> found = store.getMany(kind, keys);
+    for (String key: keys) {
+      items.put(key, found.get(key)); // null is kept, so that we know it was not found
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T extends VersionedData> T get(VersionedDataKind<T> kind, String key) {
+    Map<String, VersionedData> items = prefetched.get(kind);
+    if (items != null && items.containsKey(key)) {
+      return (T)items.get(key);
+    }
+    return store.get(kind, key);
+  }
+
+  @Override
+  public <T extends VersionedData> Map<String, T> all(VersionedDataKind<T> kind) {
+    return store.all(kind);
+  }
+
+  @Override
+  public boolean initialized() {
+    return store.initialized();
+  }
+
+  @Override
+  public void init(Map<VersionedDataKind<?>, Map<String, ? extends VersionedData>> allData) {
+    prefetched.clear();
+    store.init(allData);
+  }
+
+  @Override
+  public <T extends VersionedData> void delete(VersionedDataKind<T> kind, String key, int version) {
+    forget(kind, key);
+    store.delete(kind, key, version);
+  }
+
+  @Override
+  public <T extends VersionedData> void upsert(VersionedDataKind<T> kind, T item) {
+    forget(kind, item.getKey());
+    store.upsert(kind, item);
+  }
+
+  private void forget(VersionedDataKind<?> kind, String key) {
+    Map<String, VersionedData> items = prefetched.get(kind);
+    if (items != null) {
+      items.remove(key);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    // the underlying store belongs to the client
+  }
+}
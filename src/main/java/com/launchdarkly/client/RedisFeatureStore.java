@@ -1,25 +1,31 @@
 package com.launchdarkly.client;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.cache.CacheStats;
 import com.launchdarkly.client.utils.CachingStoreWrapper;
-import com.launchdarkly.client.utils.FeatureStoreCore;
+import com.launchdarkly.client.utils.FeatureStoreStatus;
+import com.launchdarkly.client.utils.MultiGetFeatureStoreCore;
+import com.launchdarkly.client.utils.VersionedFeatureStoreCore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import static com.launchdarkly.client.utils.FeatureStoreHelpers.marshalJson;
-import static com.launchdarkly.client.utils.FeatureStoreHelpers.unmarshalJson;
+import java.util.UUID;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.Transaction;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.util.JedisURIHelper;
 
 /**
@@ -34,39 +40,76 @@ public class RedisFeatureStore implements FeatureStore {
   // because we have already exposed the RedisFeatureStore type.
   private final CachingStoreWrapper wrapper;
   private final Core core;
+  private final RedisUpdateSubscriber updateSubscriber;
+  private final FeatureStoreMirror mirror; // if not null, all reads are done from this copy
   
   @Override
   public void init(Map<VersionedDataKind<?>, Map<String, ? extends VersionedData>> allData) {
     wrapper.init(allData);
+    if (mirror != null) {
+      mirror.replaceAll(allData); // so that reads right after init see the new data, as they do after upsert
+    }
   }
   
   @Override
   public <T extends VersionedData> T get(VersionedDataKind<T> kind, String key) {
-    return wrapper.get(kind, key);
+    return mirror == null ? wrapper.get(kind, key) : mirror.get(kind, key);
   }
   
+  // Reads from the mirror are all in memory, so only reads through the cache can be batched.
+  boolean supportsGetMany() {
+    return mirror == null;
+  }
+
+  boolean isCached(VersionedDataKind<?> kind, String key) {
+    return mirror != null || wrapper.isCached(kind, key);
+  }
+
+  <T extends VersionedData> Map<String, T> getMany(VersionedDataKind<T> kind, Collection<String> keys) {
+    if (mirror == null) {
+      return wrapper.getMany(kind, keys);
+    }
+    Map<String, T> ret = new HashMap<>();
+    for (String key: keys) {
+      T item = mirror.get(kind, key);
+      if (item != null) {
+        ret.put(key, item);
+      }
+    }
+    return ret;
+  }
+
   @Override
   public <T extends VersionedData> Map<String, T> all(VersionedDataKind<T> kind) {
-    return wrapper.all(kind);
+    return mirror == null ? wrapper.all(kind) : mirror.all(kind);
   }
 
   @Override
   public <T extends VersionedData> void upsert(VersionedDataKind<T> kind, T item) {
     wrapper.upsert(kind, item);
+    if (mirror != null) {
+      mirror.apply(kind, item);
+    }
   }
 
   @Override
   public <T extends VersionedData> void delete(VersionedDataKind<T> kind, String key, int version) {
-    wrapper.delete(kind, key, version);
+    upsert(kind, kind.makeDeletedItem(key, version));
   }
   
   @Override
   public boolean initialized() {
-    return wrapper.initialized();
+    return mirror == null ? wrapper.initialized() : mirror.initialized();
   }
   
   @Override
   public void close() throws IOException {
+    if (updateSubscriber != null) {
+      updateSubscriber.close();
+    }
+    if (mirror != null) {
+      mirror.close();
+    }
     wrapper.close();
   }
   
@@ -79,6 +122,31 @@ public class RedisFeatureStore implements FeatureStore {
     return wrapper.getCacheStats();
   }
 
+  /**
+   * Returns statistics for the background refreshes of cached items of the given kind.
+   *
+   * @param kind the kind of item
+   * @return the refresh statistics, or null if caching is disabled
+   * @see CachingStoreWrapper#getRefreshStats(VersionedDataKind)
+   * @since 4.12.0
+   */
+  public CacheStats getRefreshStats(VersionedDataKind<?> kind) {
+    return wrapper.getRefreshStats(kind);
+  }
+
+  /**
+   * Returns whether Redis is currently available to this store, and how often expired cached values have
+   * been returned because Redis could not be read. In mirror mode, only writes are reflected, since reads
+   * are served from the in-memory copy.
+   *
+   * @return the store status
+   * @see CachingStoreWrapper#getStatus()
+   * @since 4.12.0
+   */
+  public FeatureStoreStatus getStatus() {
+    return wrapper.getStatus();
+  }
+
   /**
    * Creates a new store instance that connects to Redis based on the provided {@link RedisFeatureStoreBuilder}.
    * <p>
@@ -121,9 +189,48 @@ public class RedisFeatureStore implements FeatureStore {
         RedisFeatureStoreBuilder.DEFAULT_PREFIX :
         builder.prefix;
     
-    this.core = new Core(pool, prefix);
-    this.wrapper = CachingStoreWrapper.builder(this.core).caching(builder.caching)
+    this.core = builder.dataVersionCheck ? new VersionedCore(pool, prefix, builder.cacheInvalidation) :
+        new Core(pool, prefix, builder.cacheInvalidation);
+    this.core.setScanBatchSize(builder.scanBatchSize);
+    if (builder.compressValues) {
+      this.core.setCodec(RedisValueCodec.DEFLATE);
+    }
+    if (builder.writerLeaseMillis > 0) {
+      this.core.startWriterLease(builder.writerLeaseMillis);
+    }
+    // In mirror mode, the wrapper is only used for writes, so it does not need a cache
+    this.wrapper = CachingStoreWrapper.builder(this.core)
+        .caching(builder.mirrorRefreshMillis > 0 ? FeatureStoreCacheConfig.disabled() : builder.caching)
         .build();
+    if (builder.mirrorRefreshMillis > 0) {
+      this.mirror = new FeatureStoreMirror(this.core, builder.mirrorRefreshMillis);
+      this.mirror.start();
+    } else {
+      this.mirror = null;
+    }
+    if (builder.cacheInvalidation && (mirror != null || builder.caching.isEnabled())) {
+      this.updateSubscriber = new RedisUpdateSubscriber(pool, Core.updateChannel(prefix), core.sourceId,
+          new RedisUpdateSubscriber.Listener() {
+            public void itemChanged(VersionedDataKind<?> kind, String key, int version) {
+              if (mirror != null) {
+                mirror.refreshItem(kind, key);
+              } else {
+                wrapper.invalidate(kind, key, version);
+              }
+            }
+            
+            public void allChanged() {
+              if (mirror != null) {
+                mirror.refreshAll();
+              } else {
+                wrapper.invalidateAll();
+              }
+            }
+          });
+      this.updateSubscriber.start();
+    } else {
+      this.updateSubscriber = null;
+    }
   }
 
   /**
@@ -134,14 +241,107 @@ public class RedisFeatureStore implements FeatureStore {
     this(new RedisFeatureStoreBuilder().caching(FeatureStoreCacheConfig.disabled()));
   }
 
-  static class Core implements FeatureStoreCore {    
+  static class Core implements MultiGetFeatureStoreCore {    
+    // Replaces the contents of each hash in KEYS[4..n] with the items in ARGV, and then sets the "inited"
+    // key KEYS[1]. If ARGV[3] is not empty, nothing is done unless the writer lease KEYS[3] is owned by ARGV[3],
+    // in which case -1 is returned. For each hash, ARGV contains the number of items followed by a key and encoded value for
+    // each item. Only items whose value has changed are written, and only items that are no longer present
+    // are deleted, so an init with mostly unchanged data causes very few writes. A script runs atomically,
+    // so readers never see a partly updated store. If anything changed, the data version KEYS[2] is
+    // incremented, and if ARGV[1] is not empty the message ARGV[2] is published on channel ARGV[1]; the
+    // item counts start at ARGV[4]. Returns the number of items written and deleted.
+    private static final RedisLuaScript INIT_SCRIPT = new RedisLuaScript(
+        "if ARGV[3] ~= '' and redis.call('GET', KEYS[3]) ~= ARGV[3] then\n" +
+        "  return -1\n" +
+        "end\n" +
+        "local argIndex = 4\n" +
+        "local written = 0\n" +
+        "local deleted = 0\n" +
+        "for i = 4, #KEYS do\n" +
+        "  local hashKey = KEYS[i]\n" +
+        "  local count = tonumber(ARGV[argIndex])\n" +
+        "  argIndex = argIndex + 1\n" +
+        "  local present = {}\n" +
+        "  for j = 1, count do\n" +
+        "    local itemKey = ARGV[argIndex]\n" +
+        "    local value = ARGV[argIndex + 1]\n" +
+        "    argIndex = argIndex + 2\n" +
+        "    present[itemKey] = true\n" +
+        "    if redis.call('HGET', hashKey, itemKey) ~= value then\n" +
+        "      redis.call('HSET', hashKey, itemKey, value)\n" +
+        "      written = written + 1\n" +
+        "    end\n" +
+        "  end\n" +
+        "  for _, itemKey in ipairs(redis.call('HKEYS', hashKey)) do\n" +
+        "    if not present[itemKey] then\n" +
+        "      redis.call('HDEL', hashKey, itemKey)\n" +
+        "      deleted = deleted + 1\n" +
+        "    end\n" +
+        "  end\n" +
+        "end\n" +
+        "redis.call('SET', KEYS[1], '')\n" +
+        "if written + deleted > 0 then\n" +
+        "  redis.call('INCR', KEYS[2])\n" +
+        "  if ARGV[1] ~= '' then\n" +
+        "    redis.call('PUBLISH', ARGV[1], ARGV[2])\n" +
+        "  end\n" +
+        "end\n" +
+        "return { written, deleted }\n");
+    
+    // Stores the value ARGV[3] with key ARGV[1] in the hash KEYS[1], unless the hash already has a version of
+    // that item that is at least as new as ARGV[2]. The stored version is taken from the header of a compressed
+    // value (see RedisValueCodec), or else by decoding the stored JSON on the server, since other SDKs and the
+    // Relay Proxy write the same data and don't keep versions elsewhere. If the item is written, the data
+    // version KEYS[2] is incremented, and if ARGV[4] is not empty the message ARGV[5] is published on channel
+    // ARGV[4]. If ARGV[6] is not empty, nothing is done unless the writer lease KEYS[3] is owned by ARGV[6], in
+    // which case -1 is returned. Returns nil if the item was written, or else the existing value.
+    private static final RedisLuaScript UPSERT_SCRIPT = new RedisLuaScript(
+        "if ARGV[6] ~= '' and redis.call('GET', KEYS[3]) ~= ARGV[6] then\n" +
+        "  return -1\n" +
+        "end\n" +
+        "local old = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+        "if old then\n" +
+        "  local oldVersion = tonumber(string.match(old, '^%zLD.(%-?%d+):'))\n" +
+        "  if not oldVersion then\n" +
+        "    local ok, decoded = pcall(cjson.decode, old)\n" +
+        "    if ok and type(decoded) == 'table' then\n" +
+        "      oldVersion = tonumber(decoded['version'])\n" +
+        "    end\n" +
+        "  end\n" +
+        "  if oldVersion and oldVersion >= tonumber(ARGV[2]) then\n" +
+        "    return old\n" +
+        "  end\n" +
+        "end\n" +
+        "redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])\n" +
+        "redis.call('INCR', KEYS[2])\n" +
+        "if ARGV[4] ~= '' then\n" +
+        "  redis.call('PUBLISH', ARGV[4], ARGV[5])\n" +
+        "end\n" +
+        "return false\n");
+    
     private final JedisPool pool;
     private final String prefix;
+    private final String updateChannel;
+    private final String sourceId;
+    private int scanBatchSize;
+    private RedisValueCodec codec = RedisValueCodec.JSON;
     private UpdateListener updateListener;
     
+    // Used only when the instances sharing the prefix elect a single writer. Every instance keeps its own copy
+    // of the data, so that it can bring Redis up to date if it takes over as the writer.
+    private RedisWriterLease writerLease;
+    private final Object writeLock = new Object();
+    private Map<VersionedDataKind<?>, Map<String, VersionedData>> localData;
+    
     Core(JedisPool pool, String prefix) {
+      this(pool, prefix, false);
+    }
+    
+    Core(JedisPool pool, String prefix, boolean publishUpdates) {
       this.pool = pool;
       this.prefix = prefix;
+      this.updateChannel = publishUpdates ? updateChannel(prefix) : "";
+      this.sourceId = UUID.randomUUID().toString();
     }
     
     @Override
@@ -158,74 +358,148 @@ public class RedisFeatureStore implements FeatureStore {
     @Override
     public Map<String, VersionedData> getAllInternal(VersionedDataKind<?> kind) {
       try (Jedis jedis = pool.getResource()) {
-        Map<String, String> allJson = jedis.hgetAll(itemsKey(kind));
+        if (scanBatchSize > 0) {
+          return scanAll(kind, jedis);
+        }
+        Map<byte[], byte[]> allValues = jedis.hgetAll(bytes(itemsKey(kind)));
         Map<String, VersionedData> result = new HashMap<>();
 
-        for (Map.Entry<String, String> entry : allJson.entrySet()) {
-          VersionedData item = unmarshalJson(kind, entry.getValue());
-          result.put(entry.getKey(), item);
+        for (Map.Entry<byte[], byte[]> entry : allValues.entrySet()) {
+          VersionedData item = codec.decode(kind, entry.getValue());
+          result.put(new String(entry.getKey(), Charsets.UTF_8), item);
         }
         return result;
       }
     }
     
     @Override
-    public void initInternal(Map<VersionedDataKind<?>, Map<String, VersionedData>> allData) {
+    public Map<String, VersionedData> getManyInternal(VersionedDataKind<?> kind, Collection<String> keys) {
+      Map<String, VersionedData> result = new HashMap<>();
+      if (keys.isEmpty()) {
+        return result;
+      }
+      List<String> keyList = new ArrayList<>(keys);
+      byte[][] fields = new byte[keyList.size()][];
+      for (int i = 0; i < fields.length; i++) {
+        fields[i] = bytes(keyList.get(i));
+      }
       try (Jedis jedis = pool.getResource()) {
-        Transaction t = jedis.multi();
-
-        for (Map.Entry<VersionedDataKind<?>, Map<String, VersionedData>> entry: allData.entrySet()) {
-          String baseKey = itemsKey(entry.getKey()); 
-          t.del(baseKey);
-          for (VersionedData item: entry.getValue().values()) {
-            t.hset(baseKey, item.getKey(), marshalJson(item));
+        List<byte[]> values = jedis.hmget(bytes(itemsKey(kind)), fields);
+        for (int i = 0; i < fields.length; i++) {
+          if (values.get(i) != null) {
+            result.put(keyList.get(i), codec.decode(kind, values.get(i)));
           }
         }
-
-        t.set(initedKey(), "");
-        t.exec();
       }
+      return result;
+    }
+    
+    // Reads the hash in batches with HSCAN, so that Redis never has to build one huge reply and only one batch
+    // of values is held at a time. Unlike HGETALL this is not atomic, but each item is read consistently, and an
+    // item that is changed during the scan is returned in either its old or its new state.
+    private Map<String, VersionedData> scanAll(VersionedDataKind<?> kind, Jedis jedis) {
+      Map<String, VersionedData> result = new HashMap<>();
+      ScanParams params = new ScanParams().count(scanBatchSize);
+      byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+      do {
+        ScanResult<Map.Entry<byte[], byte[]>> batch = jedis.hscan(bytes(itemsKey(kind)), cursor, params);
+        for (Map.Entry<byte[], byte[]> entry: batch.getResult()) {
+          result.put(new String(entry.getKey(), Charsets.UTF_8), codec.decode(kind, entry.getValue()));
+        }
+        cursor = batch.getCursorAsBytes();
+      } while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+      return result;
     }
     
     @Override
-    public VersionedData upsertInternal(VersionedDataKind<?> kind, VersionedData newItem) {
-      while (true) {
-        Jedis jedis = null;
-        try {
-          jedis = pool.getResource();
-          String baseKey = itemsKey(kind);
-          jedis.watch(baseKey);
+    public void initInternal(Map<VersionedDataKind<?>, Map<String, VersionedData>> allData) {
+      if (writerLease == null) {
+        writeAll(allData);
+        return;
+      }
+      synchronized (writeLock) {
+        localData = new LinkedHashMap<>();
+        for (Map.Entry<VersionedDataKind<?>, Map<String, VersionedData>> entry: allData.entrySet()) {
+          localData.put(entry.getKey(), new LinkedHashMap<>(entry.getValue()));
+        }
+        if (writerLease.isHeld()) {
+          writeAll(localData);
+        }
+      }
+    }
     
-          if (updateListener != null) {
-            updateListener.aboutToUpdate(baseKey, newItem.getKey());
-          }
-          
-          VersionedData oldItem = getRedis(kind, newItem.getKey(), jedis);
+    private void writeAll(Map<VersionedDataKind<?>, Map<String, VersionedData>> allData) {
+      List<byte[]> keys = new ArrayList<>();
+      List<byte[]> args = new ArrayList<>();
+      keys.add(bytes(initedKey()));
+      keys.add(bytes(dataVersionKey()));
+      keys.add(bytes(writerLeaseKey()));
+      args.add(bytes(updateChannel));
+      args.add(bytes(sourceId + ":" + RedisUpdateSubscriber.INIT_MESSAGE));
+      args.add(writerLease == null ? new byte[0] : writerLease.getOwnerId());
+      for (Map.Entry<VersionedDataKind<?>, Map<String, VersionedData>> entry: allData.entrySet()) {
+        keys.add(bytes(itemsKey(entry.getKey())));
+        args.add(bytes(String.valueOf(entry.getValue().size())));
+        for (VersionedData item: entry.getValue().values()) {
+          args.add(bytes(item.getKey()));
+          args.add(codec.encode(item));
+        }
+      }
+      try (Jedis jedis = pool.getResource()) {
+        Object result = INIT_SCRIPT.eval(jedis, keys, args);
+        if (RedisWriterLease.NOT_OWNER.equals(result)) {
+          logger.debug("Did not initialize Redis store because this instance is not the writer");
+        } else if (result instanceof List && ((List<?>)result).size() == 2) {
+          logger.debug("Initialized Redis store: {} item(s) written, {} deleted", ((List<?>)result).get(0),
+              ((List<?>)result).get(1));
+        }
+      }
+    }
     
+    @Override
+    public VersionedData upsertInternal(VersionedDataKind<?> kind, VersionedData newItem) {
+      String baseKey = itemsKey(kind);
+      if (updateListener != null) {
+        updateListener.aboutToUpdate(baseKey, newItem.getKey());
+      }
+      if (writerLease == null) {
+        return writeItem(kind, newItem);
+      }
+      synchronized (writeLock) {
+        if (localData != null) {
+          Map<String, VersionedData> items = localData.get(kind);
+          if (items == null) {
+            items = new LinkedHashMap<>();
+            localData.put(kind, items);
+          }
+          VersionedData oldItem = items.get(newItem.getKey());
           if (oldItem != null && oldItem.getVersion() >= newItem.getVersion()) {
-            logger.debug("Attempted to {} key: {} version: {}" +
-                " with a version that is the same or older: {} in \"{}\"",
-                newItem.isDeleted() ? "delete" : "update",
-                newItem.getKey(), oldItem.getVersion(), newItem.getVersion(), kind.getNamespace());
             return oldItem;
           }
+          items.put(newItem.getKey(), newItem);
+        }
+        return writerLease.isHeld() ? writeItem(kind, newItem) : newItem;
+      }
+    }
     
-          Transaction tx = jedis.multi();
-          tx.hset(baseKey, newItem.getKey(), marshalJson(newItem));
-          List<Object> result = tx.exec();
-          if (result.isEmpty()) {
-            // if exec failed, it means the watch was triggered and we should retry
-            logger.debug("Concurrent modification detected, retrying");
-            continue;
-          }
-    
-          return newItem;
-        } finally {
-          if (jedis != null) {
-            jedis.unwatch();
-            jedis.close();
-          }
+    private VersionedData writeItem(VersionedDataKind<?> kind, VersionedData newItem) {
+      String baseKey = itemsKey(kind);
+      try (Jedis jedis = pool.getResource()) {
+        Object oldValue = UPSERT_SCRIPT.eval(jedis,
+            Arrays.asList(bytes(baseKey), bytes(dataVersionKey()), bytes(writerLeaseKey())),
+            Arrays.asList(bytes(newItem.getKey()), bytes(String.valueOf(newItem.getVersion())), codec.encode(newItem),
+                bytes(updateChannel),
+                bytes(sourceId + ":" + kind.getNamespace() + ":" + newItem.getVersion() + ":" + newItem.getKey()),
+                writerLease == null ? new byte[0] : writerLease.getOwnerId()));
+        if (oldValue instanceof byte[]) {
+          VersionedData oldItem = codec.decode(kind, (byte[])oldValue);
+          logger.debug("Attempted to {} key: {} version: {}" +
+              " with a version that is the same or older: {} in \"{}\"",
+              newItem.isDeleted() ? "delete" : "update",
+              newItem.getKey(), oldItem.getVersion(), newItem.getVersion(), kind.getNamespace());
+          return oldItem;
         }
+        return newItem;
       }
     }
     
@@ -239,6 +513,9 @@ public class RedisFeatureStore implements FeatureStore {
     @Override
     public void close() throws IOException {
       logger.info("Closing LaunchDarkly RedisFeatureStore");
+      if (writerLease != null) {
+        writerLease.close();
+      }
       pool.destroy();
     }
 
@@ -247,6 +524,27 @@ public class RedisFeatureStore implements FeatureStore {
       this.updateListener = updateListener;
     }
     
+    void setScanBatchSize(int scanBatchSize) {
+      this.scanBatchSize = scanBatchSize;
+    }
+    
+    void setCodec(RedisValueCodec codec) {
+      this.codec = codec;
+    }
+    
+    void startWriterLease(long leaseMillis) {
+      writerLease = new RedisWriterLease(pool, writerLeaseKey(), sourceId, leaseMillis, new Runnable() {
+        public void run() {
+          synchronized (writeLock) {
+            if (localData != null) {
+              writeAll(localData);
+            }
+          }
+        }
+      });
+      writerLease.start();
+    }
+    
     private String itemsKey(VersionedDataKind<?> kind) {
       return prefix + ":" + kind.getNamespace();
     }
@@ -255,15 +553,50 @@ public class RedisFeatureStore implements FeatureStore {
       return prefix + ":$inited";
     }
     
+    private String writerLeaseKey() {
+      return prefix + ":$writer";
+    }
+    
+    private String dataVersionKey() {
+      return prefix + ":$dataVersion";
+    }
+    
+    /**
+     * Returns the number that the init and upsert scripts increment whenever they change anything.
+     * @return the data version, or -1 if nothing has been written since the store was created
+     */
+    public long getDataVersion() {
+      try (Jedis jedis = pool.getResource()) {
+        String value = jedis.get(dataVersionKey());
+        return value == null ? -1 : Long.parseLong(value);
+      }
+    }
+    
+    static String updateChannel(String prefix) {
+      return prefix + ":$updates";
+    }
+    
+    private static byte[] bytes(String s) {
+      return s.getBytes(Charsets.UTF_8);
+    }
+    
     private <T extends VersionedData> T getRedis(VersionedDataKind<T> kind, String key, Jedis jedis) {
-      String json = jedis.hget(itemsKey(kind), key);
+      byte[] value = jedis.hget(bytes(itemsKey(kind)), bytes(key));
 
-      if (json == null) {
+      if (value == null) {
         logger.debug("[get] Key: {} not found in \"{}\". Returning null", key, kind.getNamespace());
         return null;
       }
 
-      return unmarshalJson(kind, json);
+      return codec.decode(kind, value);
+    }
+  }
+
+  // Used instead of Core when conditional cache refreshes are enabled, so that CachingStoreWrapper
+  // checks the data version rather than letting cached items expire.
+  static class VersionedCore extends Core implements VersionedFeatureStoreCore {
+    VersionedCore(JedisPool pool, String prefix, boolean publishUpdates) {
+      super(pool, prefix, publishUpdates);
     }
   }
 
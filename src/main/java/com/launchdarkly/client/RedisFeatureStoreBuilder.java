@@ -51,6 +51,12 @@ public final class RedisFeatureStoreBuilder implements FeatureStoreFactory {
   boolean refreshStaleValues = false; // this and asyncRefresh are redundant with FeatureStoreCacheConfig, but are used by deprecated setters
   boolean asyncRefresh = false;
   JedisPoolConfig poolConfig = null;
+  boolean cacheInvalidation = false;
+  boolean dataVersionCheck = false;
+  int scanBatchSize = 0;
+  boolean compressValues = false;
+  long writerLeaseMillis = 0;
+  long mirrorRefreshMillis = 0;
 
   // These constructors are called only from Implementations
   RedisFeatureStoreBuilder() {
@@ -152,6 +158,132 @@ public final class RedisFeatureStoreBuilder implements FeatureStoreFactory {
     return this;
   }
   
+  /**
+   * Enables cache invalidation through Redis pub/sub. When this is on, every change that this store writes
+   * to Redis is also published on a channel named after the {@link #prefix(String) prefix}, and the store
+   * subscribes to that channel and discards its cached copy of any item that another process has changed.
+   * This lets you use a long cache TTL while still seeing updates almost immediately.
+   * <p>
+   * All processes that write to the same prefix should enable this; changes made by writers that don't
+   * publish are only seen when the cache expires. The subscription uses one connection from the pool.
+   * It has no effect on reads if local caching is disabled.
+   * 
+   * @param cacheInvalidation true to publish and subscribe to updates
+   * @return the builder
+   * 
+   * @since 4.12.0
+   */
+  public RedisFeatureStoreBuilder cacheInvalidation(boolean cacheInvalidation) {
+    this.cacheInvalidation = cacheInvalidation;
+    return this;
+  }
+  
+  /**
+   * Makes cache refreshes conditional on a data version. The store always increments a version key in Redis
+   * whenever it changes anything; when this option is on, cached items no longer expire individually.
+   * Instead, once per cache TTL the store reads that one key, and only discards its cache if the version
+   * has changed. When the data is not changing, this reduces Redis traffic to a single small read per TTL.
+   * <p>
+   * Only use this if every process that writes to the same prefix is using a version of this SDK that
+   * maintains the data version; otherwise their changes would not be seen until some other change
+   * increments it. It has no effect if local caching is disabled.
+   * 
+   * @param dataVersionCheck true to check the data version before refreshing the cache
+   * @return the builder
+   * 
+   * @since 4.12.0
+   */
+  public RedisFeatureStoreBuilder dataVersionCheck(boolean dataVersionCheck) {
+    this.dataVersionCheck = dataVersionCheck;
+    return this;
+  }
+  
+  /**
+   * Makes the store read all items of a kind in batches with {@code HSCAN}, rather than with a single
+   * {@code HGETALL}. For very large data sets this avoids blocking Redis while it builds one huge reply,
+   * and reduces peak memory use, at the cost of more round trips. The batch size is a hint to Redis
+   * about how many items to return in each reply.
+   * <p>
+   * Unlike {@code HGETALL}, a scan is not atomic: if items are changed while it is in progress, the
+   * result may include some changes but not others.
+   * 
+   * @param scanBatchSize the number of items to request per batch, or 0 (the default) to use {@code HGETALL}
+   * @return the builder
+   * 
+   * @since 4.12.0
+   */
+  public RedisFeatureStoreBuilder scanBatchSize(int scanBatchSize) {
+    this.scanBatchSize = Math.max(0, scanBatchSize);
+    return this;
+  }
+  
+  /**
+   * Makes the store compress the items that it writes to Redis. Large flags and segments can take
+   * much less space this way, which also reduces the amount of data transferred on every cache miss.
+   * <p>
+   * The store can always read both compressed and uncompressed items, so this can be turned on for
+   * an existing data set, which will be converted as items are rewritten. However, other SDKs and the
+   * Relay Proxy cannot read compressed items, so only enable this if all processes that read from the
+   * same prefix are using a version of this SDK that supports it.
+   * 
+   * @param compressValues true to compress stored items
+   * @return the builder
+   * 
+   * @since 4.12.0
+   */
+  public RedisFeatureStoreBuilder compressValues(boolean compressValues) {
+    this.compressValues = compressValues;
+    return this;
+  }
+  
+  /**
+   * Makes the store instances that share a Redis prefix elect a single writer. Normally every SDK instance
+   * writes each update that it receives to Redis, so with many instances the same data is written many
+   * times. With this option, the instances compete for a lease key in Redis that expires after the given
+   * time unless it is renewed; only the owner of the lease writes to Redis, and the others only read from it.
+   * If the owner stops renewing the lease, for instance because it has shut down, another instance takes
+   * over once the lease expires, and first writes its own copy of the data so that Redis is up to date.
+   * <p>
+   * Each instance keeps a copy of the data in memory for this purpose. Instances that are not the writer
+   * see updates in Redis only when their cache expires, so this is best combined with
+   * {@link #cacheInvalidation(boolean)}. All instances sharing the prefix must use this option.
+   * 
+   * @param leaseTime how long the lease lasts if it is not renewed, or 0 (the default) to have every
+   * instance write
+   * @param timeUnit the time unit for the lease time
+   * @return the builder
+   * 
+   * @since 4.12.0
+   */
+  public RedisFeatureStoreBuilder writerLease(long leaseTime, TimeUnit timeUnit) {
+    this.writerLeaseMillis = Math.max(0, timeUnit.toMillis(leaseTime));
+    return this;
+  }
+  
+  /**
+   * Makes the store keep a complete copy of the data in memory, and answer all reads from it. This is
+   * meant for applications that only read from Redis, such as in daemon mode with
+   * {@link LDConfig.Builder#useLdd(boolean)}: evaluations never wait for Redis, and if Redis becomes
+   * unavailable the last copy that was read continues to be used.
+   * <p>
+   * The copy is reloaded as a whole at the given interval, and replaced all at once so that readers
+   * never see a partly updated data set. If {@link #cacheInvalidation(boolean)} is enabled, items that
+   * other processes change are also reloaded as soon as the change is published; if
+   * {@link #dataVersionCheck(boolean)} is enabled, a scheduled reload is skipped when nothing has changed.
+   * When this option is used, the {@link #caching(FeatureStoreCacheConfig)} setting is ignored.
+   * 
+   * @param refreshInterval how often to reload the data, or 0 (the default) to read from Redis through
+   * the cache instead
+   * @param timeUnit the time unit for the interval
+   * @return the builder
+   * 
+   * @since 4.12.0
+   */
+  public RedisFeatureStoreBuilder mirror(long refreshInterval, TimeUnit timeUnit) {
+    this.mirrorRefreshMillis = Math.max(0, timeUnit.toMillis(refreshInterval));
+    return this;
+  }
+  
   /**
    * Deprecated method for setting the cache expiration policy to {@link FeatureStoreCacheConfig.StaleValuesPolicy#REFRESH}
    * or {@link FeatureStoreCacheConfig.StaleValuesPolicy#REFRESH_ASYNC}.
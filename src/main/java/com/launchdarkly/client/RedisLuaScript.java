@@ -0,0 +1,39 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * A Lua script that is run on the Redis server. The script is normally invoked by its SHA1 digest with
+ * {@code EVALSHA}, so that its source is only sent when Redis doesn't have it cached yet (for instance,
+ * after a restart or a {@code SCRIPT FLUSH}); in that case {@code EVAL} sends the source, and Redis caches
+ * it again.
+ * <p>
+ * Keys and arguments are passed as bytes, so that binary values can be stored without conversion; string
+ * replies are returned as {@code byte[]}.
+ */
+final class RedisLuaScript {
+  private final byte[] source;
+  private final byte[] sha;
+  
+  RedisLuaScript(String source) {
+    this.source = source.getBytes(Charsets.UTF_8);
+    this.sha = Hashing.sha1().hashString(source, Charsets.UTF_8).toString().getBytes(Charsets.US_ASCII);
+  }
+  
+  Object eval(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+    try {
+      return jedis.evalsha(sha, keys, args);
+    } catch (JedisDataException e) {
+      if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+        throw e;
+      }
+      return jedis.eval(source, keys, args);
+    }
+  }
+}
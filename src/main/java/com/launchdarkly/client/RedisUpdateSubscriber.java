@@ -0,0 +1,151 @@
+package com.launchdarkly.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * Listens on the Redis update channel and tells a store's local cache or mirror which items have changed,
+ * so that changes written by other processes are seen without waiting for the cache TTL to expire.
+ * <p>
+ * Messages are published by the Redis store's scripts in the same transaction as the write. Item updates
+ * have the form {@code SOURCE:NAMESPACE:VERSION:KEY}; a full init has the form {@code SOURCE:$init}.
+ * {@code SOURCE} identifies the store instance that made the change, so that an instance can ignore its own
+ * messages. Pub/sub delivery is not guaranteed, so whenever the subscription is (re)established, everything
+ * is treated as changed, to cover any messages that were missed while disconnected.
+ * <p>
+ * The subscription holds one connection from the pool for as long as the store is open.
+ */
+final class RedisUpdateSubscriber implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(RedisUpdateSubscriber.class);
+
+  static final String INIT_MESSAGE = "$init";
+  private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+  private static final long MAX_RETRY_DELAY_MILLIS = 30000;
+
+  private final JedisPool pool;
+  private final String channel;
+  private final String sourceId;
+  private final Listener listener;
+  private final Thread thread;
+  private volatile JedisPubSub pubSub;
+  private volatile boolean closed;
+
+  /**
+   * Receives notifications of changes.
+   */
+  static interface Listener {
+    void itemChanged(VersionedDataKind<?> kind, String key, int version);
+    
+    void allChanged();
+  }
+
+  RedisUpdateSubscriber(JedisPool pool, String channel, String sourceId, Listener listener) {
+    this.pool = pool;
+    this.channel = channel;
+    this.sourceId = sourceId;
+    this.listener = listener;
+    this.thread = new Thread(new Runnable() {
+      public void run() {
+        subscribeUntilClosed();
+      }
+    }, "LaunchDarkly-RedisUpdateSubscriber");
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    JedisPubSub p = pubSub;
+    if (p != null && p.isSubscribed()) {
+      try {
+        p.unsubscribe();
+      } catch (Exception e) {
+        logger.debug("Error unsubscribing from Redis update channel: {}", e.toString());
+      }
+    }
+    thread.interrupt();
+  }
+
+  private void subscribeUntilClosed() {
+    long retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+    while (!closed) {
+      JedisPubSub p = new JedisPubSub() {
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+          logger.debug("Subscribed to Redis update channel \"{}\"", channel);
+          listener.allChanged();
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+          handleMessage(message);
+        }
+      };
+      pubSub = p;
+      try (Jedis jedis = pool.getResource()) {
+        if (closed) {
+          return;
+        }
+        jedis.subscribe(p, channel); // blocks until unsubscribed or disconnected
+        retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+      } catch (Exception e) {
+        if (closed) {
+          return;
+        }
+        logger.warn("Lost connection to Redis update channel, will retry in {} ms: {}", retryDelay, e.toString());
+        try {
+          Thread.sleep(retryDelay);
+        } catch (InterruptedException ie) {
+          return;
+        }
+        retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+      }
+    }
+  }
+
+  void handleMessage(String message) {
+    String[] parts = message.split(":", 4);
+    if (parts[0].equals(sourceId)) {
+      return;
+    }
+    if (parts.length == 2 && parts[1].equals(INIT_MESSAGE)) {
+      listener.allChanged();
+      return;
+    }
+    if (parts.length == 4) {
+      VersionedDataKind<?> kind = kindForNamespace(parts[1]);
+      if (kind != null) {
+        int version;
+        try {
+          version = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+          version = -1;
+        }
+        if (version >= 0) {
+          listener.itemChanged(kind, parts[3], version);
+          return;
+        }
+      }
+    }
+    logger.debug("Ignoring unrecognized message on Redis update channel: {}", message);
+  }
+
+  private static VersionedDataKind<?> kindForNamespace(String namespace) {
+    for (VersionedDataKind<?> kind: VersionedDataKind.ALL) {
+      if (kind.getNamespace().equals(namespace)) {
+        return kind;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,115 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.launchdarkly.client.utils.FeatureStoreHelpers.UnmarshalException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Converts feature store items to and from the byte values stored in Redis.
+ * <p>
+ * Plain values are UTF-8 JSON, as written by every other SDK and the Relay Proxy. Compressed values start with
+ * a header: a zero byte (which JSON text never starts with), {@code "LD"}, a format byte, and then the item's
+ * version in decimal followed by {@code ':'}. The version is there so that the upsert script can compare
+ * versions without decompressing. The rest of the value is the JSON compressed with deflate (zlib format).
+ * Values are decoded according to their own header, so plain and compressed values can coexist in the same
+ * hash while a data set is being migrated.
+ * <p>
+ * Items are serialized and parsed through streams, so no intermediate JSON string is built.
+ */
+final class RedisValueCodec {
+  static final RedisValueCodec JSON = new RedisValueCodec(false);
+  static final RedisValueCodec DEFLATE = new RedisValueCodec(true);
+
+  private static final byte[] HEADER = new byte[] { 0, 'L', 'D' };
+  private static final byte FORMAT_DEFLATE = 1;
+
+  private static final Gson gson = new Gson();
+
+  private final boolean compress;
+
+  private RedisValueCodec(boolean compress) {
+    this.compress = compress;
+  }
+
+  byte[] encode(VersionedData item) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Deflater deflater = null;
+    try {
+      OutputStream stream = out;
+      if (compress) {
+        out.write(HEADER);
+        out.write(FORMAT_DEFLATE);
+        out.write(String.valueOf(item.getVersion()).getBytes(Charsets.US_ASCII));
+        out.write(':');
+        deflater = new Deflater();
+        stream = new DeflaterOutputStream(out, deflater);
+      }
+      try (Writer writer = new OutputStreamWriter(stream, Charsets.UTF_8)) {
+        gson.toJson(item, writer);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // can't happen when writing to memory
+    } finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+    return out.toByteArray();
+  }
+
+  <T extends VersionedData> T decode(VersionedDataKind<T> kind, byte[] data) {
+    Inflater inflater = null;
+    try {
+      InputStream stream;
+      if (hasHeader(data)) {
+        if (data[HEADER.length] != FORMAT_DEFLATE) {
+          throw new IOException("unsupported value format " + data[HEADER.length]);
+        }
+        int start = HEADER.length + 1;
+        while (start < data.length && data[start] != ':') {
+          start++;
+        }
+        inflater = new Inflater();
+        stream = new InflaterInputStream(new ByteArrayInputStream(data, start + 1, data.length - start - 1), inflater);
+      } else {
+        stream = new ByteArrayInputStream(data);
+      }
+      try (Reader reader = new InputStreamReader(stream, Charsets.UTF_8)) {
+        return gson.fromJson(reader, kind.getItemClass());
+      }
+    } catch (JsonParseException | IOException e) {
+      throw new UnmarshalException(e);
+    } finally {
+      if (inflater != null) {
+        inflater.end();
+      }
+    }
+  }
+
+  private static boolean hasHeader(byte[] data) {
+    if (data.length <= HEADER.length) {
+      return false;
+    }
+    for (int i = 0; i < HEADER.length; i++) {
+      if (data[i] != HEADER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
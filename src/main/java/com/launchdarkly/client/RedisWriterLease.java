@@ -0,0 +1,141 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * A lease in Redis that decides which of the store instances sharing a prefix is allowed to write.
+ * <p>
+ * The lease is a key whose value is the owner's ID and which expires after the lease time. The owner renews
+ * it at a third of that interval; any other instance takes it over once it has expired, for instance because
+ * the owner has shut down or lost its connection. The local view of whether the lease is held is only used to
+ * avoid sending writes that would be rejected: the write scripts check the owner of the lease themselves, so
+ * an instance that has lost the lease without knowing it cannot overwrite the new owner's data.
+ */
+final class RedisWriterLease implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(RedisWriterLease.class);
+
+  static final Long NOT_OWNER = -1L;
+
+  // Renews the lease KEYS[1] if it is owned by ARGV[1], or takes it if nobody owns it. Returns 1 if it was
+  // renewed, 2 if it was taken, or 0 if someone else owns it.
+  private static final RedisLuaScript ACQUIRE_SCRIPT = new RedisLuaScript(
+      "local owner = redis.call('GET', KEYS[1])\n" +
+      "if owner == ARGV[1] then\n" +
+      "  redis.call('PEXPIRE', KEYS[1], ARGV[2])\n" +
+      "  return 1\n" +
+      "end\n" +
+      "if not owner then\n" +
+      "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])\n" +
+      "  return 2\n" +
+      "end\n" +
+      "return 0\n");
+
+  // Deletes the lease KEYS[1] if it is owned by ARGV[1], so another instance can take over right away.
+  private static final RedisLuaScript RELEASE_SCRIPT = new RedisLuaScript(
+      "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+      "  redis.call('DEL', KEYS[1])\n" +
+      "end\n" +
+      "return 0\n");
+
+  private final JedisPool pool;
+  private final byte[] key;
+  private final byte[] ownerId;
+  private final long leaseMillis;
+  private final Runnable acquiredListener;
+  private final ScheduledExecutorService executor;
+  private volatile long heldUntil;
+
+  /**
+   * Creates a lease.
+   *
+   * @param pool the Redis connection pool
+   * @param key the lease key
+   * @param ownerId the ID of this instance
+   * @param leaseMillis how long the lease lasts if it is not renewed
+   * @param acquiredListener called on the renewal thread whenever this instance takes over the lease
+   */
+  RedisWriterLease(JedisPool pool, String key, String ownerId, long leaseMillis, Runnable acquiredListener) {
+    this.pool = pool;
+    this.key = key.getBytes(Charsets.UTF_8);
+    this.ownerId = ownerId.getBytes(Charsets.UTF_8);
+    this.leaseMillis = leaseMillis;
+    this.acquiredListener = acquiredListener;
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("LaunchDarkly-RedisWriterLease-%d").setDaemon(true).build());
+  }
+
+  void start() {
+    executor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        renew();
+      }
+    }, 0, Math.max(1, leaseMillis / 3), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns true if this instance owned the lease as of its last renewal, and the lease has not expired since.
+   */
+  boolean isHeld() {
+    return System.currentTimeMillis() < heldUntil;
+  }
+
+  byte[] getOwnerId() {
+    return ownerId;
+  }
+
+  private void renew() {
+    long startTime = System.currentTimeMillis();
+    Object result;
+    try (Jedis jedis = pool.getResource()) {
+      result = ACQUIRE_SCRIPT.eval(jedis, Collections.singletonList(key),
+          Arrays.asList(ownerId, String.valueOf(leaseMillis).getBytes(Charsets.UTF_8)));
+    } catch (Exception e) {
+      logger.warn("Unable to renew Redis writer lease: {}", e.toString());
+      return;
+    }
+    boolean wasHeld = isHeld();
+    if (result instanceof Long && (Long)result > 0) {
+      heldUntil = startTime + leaseMillis;
+      if ((Long)result == 2 || !wasHeld) {
+        logger.info("This instance is now the writer for the Redis feature store");
+        try {
+          acquiredListener.run();
+        } catch (Exception e) {
+          logger.warn("Unable to write data after becoming the Redis writer: {}", e.toString());
+        }
+      }
+    } else {
+      heldUntil = 0;
+      if (wasHeld) {
+        logger.info("This instance is no longer the writer for the Redis feature store");
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    if (isHeld()) {
+      heldUntil = 0;
+      try (Jedis jedis = pool.getResource()) {
+        RELEASE_SCRIPT.eval(jedis, Collections.singletonList(key), Collections.singletonList(ownerId));
+      } catch (Exception e) {
+        logger.debug("Unable to release Redis writer lease: {}", e.toString());
+      }
+    }
+  }
+}
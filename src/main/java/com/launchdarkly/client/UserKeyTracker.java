@@ -0,0 +1,20 @@
+package com.launchdarkly.client;
+
+/**
+ * Remembers which user keys the event processor has recently seen, so that it only needs to send
+ * an index event the first time a user appears. This is only used by the event dispatcher thread,
+ * so implementations do not need to be thread-safe.
+ */
+interface UserKeyTracker {
+  /**
+   * Records a user key.
+   * @param key the user key
+   * @return true if the key was already known
+   */
+  boolean noticeUser(String key);
+  
+  /**
+   * Forgets all user keys.
+   */
+  void clear();
+}
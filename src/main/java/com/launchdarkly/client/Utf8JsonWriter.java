@@ -0,0 +1,328 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A minimal streaming JSON writer that encodes directly to UTF-8 bytes, used for analytics event payloads.
+ * <p>
+ * Its output is byte-for-byte the same as Gson's {@link com.google.gson.stream.JsonWriter} (without HTML
+ * escaping) followed by UTF-8 encoding, but it skips the intermediate {@code char} buffers and writes integers
+ * without converting them to strings. Property names and other strings that recur in every payload, such as
+ * event kinds and flag keys, are escaped and encoded only once and then copied from a shared cache.
+ * <p>
+ * Instances are not thread-safe; each flush uses its own.
+ */
+final class Utf8JsonWriter implements EventOutputFormatter.JsonOutput {
+  // Flag keys come from the flag data, so the cache is bounded in case there is an unusually large number of them
+  private static final int MAX_CACHED_STRINGS = 10000;
+  private static final ConcurrentMap<String, byte[]> encodedStrings = new ConcurrentHashMap<>();
+
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(Charsets.US_ASCII);
+  private static final byte[] TRUE_BYTES = "true".getBytes(Charsets.US_ASCII);
+  private static final byte[] FALSE_BYTES = "false".getBytes(Charsets.US_ASCII);
+
+  private byte[] buf;
+  private int size;
+  private boolean[] containerHasElements = new boolean[8];
+  private int depth;
+  private boolean afterName;
+  private final byte[] digits = new byte[20];
+
+  Utf8JsonWriter() {
+    this(1024);
+  }
+
+  Utf8JsonWriter(int initialCapacity) {
+    buf = new byte[Math.max(16, initialCapacity)];
+  }
+
+  @Override
+  public void beginObject() {
+    open('{');
+  }
+
+  @Override
+  public void endObject() {
+    close('}');
+  }
+
+  @Override
+  public void beginArray() {
+    open('[');
+  }
+
+  @Override
+  public void endArray() {
+    close(']');
+  }
+
+  @Override
+  public void name(String name) {
+    separate();
+    writeBytes(encodedString(name));
+    writeByte(':');
+    afterName = true;
+  }
+
+  @Override
+  public void value(String value) {
+    beforeValue();
+    writeQuoted(value);
+  }
+
+  @Override
+  public void symbol(String value) {
+    beforeValue();
+    writeBytes(encodedString(value));
+  }
+
+  @Override
+  public void value(long value) {
+    beforeValue();
+    if (value == Long.MIN_VALUE) {
+      writeAscii(Long.toString(value));
+      return;
+    }
+    if (value < 0) {
+      writeByte('-');
+      value = -value;
+    }
+    int n = 0;
+    do {
+      digits[n++] = (byte)('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+    ensureCapacity(n);
+    while (n > 0) {
+      buf[size++] = digits[--n];
+    }
+  }
+
+  @Override
+  public void value(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+    }
+    beforeValue();
+    writeAscii(Double.toString(value));
+  }
+
+  @Override
+  public void value(boolean value) {
+    beforeValue();
+    writeBytes(value ? TRUE_BYTES : FALSE_BYTES);
+  }
+
+  @Override
+  public void jsonValue(String json) {
+    beforeValue();
+    writeUtf8(json);
+  }
+
+  /**
+   * Returns the number of bytes written so far.
+   * @return the size in bytes
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns a copy of the bytes written so far.
+   * @return the output
+   */
+  byte[] toByteArray() {
+    return Arrays.copyOf(buf, size);
+  }
+
+  /**
+   * Copies the bytes written so far to a stream.
+   * @param out the destination
+   */
+  void writeTo(ByteArrayOutputStream out) {
+    out.write(buf, 0, size);
+  }
+
+  /**
+   * Discards all output so that the writer can be reused, keeping its buffer.
+   */
+  void reset() {
+    size = 0;
+    depth = 0;
+    afterName = false;
+  }
+
+  private void open(char c) {
+    beforeValue();
+    writeByte(c);
+    if (++depth == containerHasElements.length) {
+      containerHasElements = Arrays.copyOf(containerHasElements, depth * 2);
+    }
+    containerHasElements[depth] = false;
+  }
+
+  private void close(char c) {
+    depth--;
+    writeByte(c);
+  }
+
+  private void beforeValue() {
+    if (afterName) {
+      afterName = false;
+    } else {
+      separate();
+    }
+  }
+
+  private void separate() {
+    if (depth > 0) {
+      if (containerHasElements[depth]) {
+        writeByte(',');
+      } else {
+        containerHasElements[depth] = true;
+      }
+    }
+  }
+
+  private static byte[] encodedString(String s) {
+    byte[] bytes = encodedStrings.get(s);
+    if (bytes == null) {
+      Utf8JsonWriter w = new Utf8JsonWriter(s.length() + 16);
+      w.writeQuoted(s);
+      bytes = w.toByteArray();
+      if (encodedStrings.size() < MAX_CACHED_STRINGS) {
+        encodedStrings.putIfAbsent(s, bytes);
+      }
+    }
+    return bytes;
+  }
+
+  // Escapes the same characters as Gson's JsonWriter does when HTML escaping is off.
+  private void writeQuoted(String s) {
+    ensureCapacity(s.length() + 2);
+    buf[size++] = '"';
+    int len = s.length();
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+        writeByte(c);
+        continue;
+      }
+      switch (c) {
+      case '"':
+        writeByte('\\');
+        writeByte('"');
+        break;
+      case '\\':
+        writeByte('\\');
+        writeByte('\\');
+        break;
+      case '\t':
+        writeByte('\\');
+        writeByte('t');
+        break;
+      case '\b':
+        writeByte('\\');
+        writeByte('b');
+        break;
+      case '\n':
+        writeByte('\\');
+        writeByte('n');
+        break;
+      case '\r':
+        writeByte('\\');
+        writeByte('r');
+        break;
+      case '\f':
+        writeByte('\\');
+        writeByte('f');
+        break;
+      default:
+        if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+          writeUnicodeEscape(c);
+        } else {
+          i = writeUtf8Char(s, i);
+        }
+      }
+    }
+    writeByte('"');
+  }
+
+  private void writeUnicodeEscape(char c) {
+    ensureCapacity(6);
+    buf[size++] = '\\';
+    buf[size++] = 'u';
+    buf[size++] = HEX_DIGITS[(c >> 12) & 0xf];
+    buf[size++] = HEX_DIGITS[(c >> 8) & 0xf];
+    buf[size++] = HEX_DIGITS[(c >> 4) & 0xf];
+    buf[size++] = HEX_DIGITS[c & 0xf];
+  }
+
+  private void writeUtf8(String s) {
+    int len = s.length();
+    ensureCapacity(len);
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        writeByte(c);
+      } else {
+        i = writeUtf8Char(s, i);
+      }
+    }
+  }
+
+  // Encodes the non-ASCII character at index i, and returns the index of the last char consumed. Unpaired
+  // surrogates become '?', which is what String.getBytes does, so the output matches encoding Gson's string.
+  private int writeUtf8Char(String s, int i) {
+    char c = s.charAt(i);
+    ensureCapacity(4);
+    if (c < 0x800) {
+      buf[size++] = (byte)(0xc0 | (c >> 6));
+      buf[size++] = (byte)(0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+      int cp = Character.toCodePoint(c, s.charAt(i + 1));
+      buf[size++] = (byte)(0xf0 | (cp >> 18));
+      buf[size++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+      buf[size++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+      buf[size++] = (byte)(0x80 | (cp & 0x3f));
+      return i + 1;
+    } else if (Character.isSurrogate(c)) {
+      buf[size++] = '?';
+    } else {
+      buf[size++] = (byte)(0xe0 | (c >> 12));
+      buf[size++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+      buf[size++] = (byte)(0x80 | (c & 0x3f));
+    }
+    return i;
+  }
+
+  private void writeAscii(String s) {
+    int len = s.length();
+    ensureCapacity(len);
+    for (int i = 0; i < len; i++) {
+      buf[size++] = (byte)s.charAt(i);
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buf, size, bytes.length);
+    size += bytes.length;
+  }
+
+  private void writeByte(char c) {
+    ensureCapacity(1);
+    buf[size++] = (byte)c;
+  }
+
+  private void ensureCapacity(int more) {
+    if (size + more > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + more));
+    }
+  }
+}
@@ -33,7 +33,7 @@ class Util {
   }
   
   static void configureHttpClientBuilder(LDConfig config, OkHttpClient.Builder builder) {
-    builder.connectionPool(new ConnectionPool(5, 5, TimeUnit.SECONDS))
+    builder.connectionPool(config.runtime != null ? config.runtime.connectionPool : new ConnectionPool(5, 5, TimeUnit.SECONDS))
       .connectTimeout(config.connectTimeout, config.connectTimeoutUnit)
       .readTimeout(config.socketTimeout, config.socketTimeoutUnit)
       .writeTimeout(config.socketTimeout, config.socketTimeoutUnit)
@@ -58,13 +58,19 @@ class Util {
   }
   
   static void shutdownHttpClient(OkHttpClient client) {
+    shutdownHttpClient(client, null);
+  }
+  
+  // If the connection pool belongs to a shared LDClientRuntime, other clients are still using it, so we leave it alone.
+  static void shutdownHttpClient(OkHttpClient client, LDConfig config) {
     if (client.dispatcher() != null) {
       client.dispatcher().cancelAll();
       if (client.dispatcher().executorService() != null) {
         client.dispatcher().executorService().shutdown();
       }
     }
-    if (client.connectionPool() != null) {
+    if (client.connectionPool() != null &&
+        (config == null || config.runtime == null || client.connectionPool() != config.runtime.connectionPool)) {
       client.connectionPool().evictAll();
     }
     if (client.cache() != null) {
@@ -1,25 +1,43 @@
 package com.launchdarkly.client.utils;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.AbstractCache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.launchdarkly.client.FeatureStore;
 import com.launchdarkly.client.FeatureStoreCacheConfig;
 import com.launchdarkly.client.VersionedData;
 import com.launchdarkly.client.VersionedDataKind;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * CachingStoreWrapper is a partial implementation of {@link FeatureStore} that delegates the basic
@@ -27,19 +45,45 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * other logic that would otherwise be repeated in every feature store implementation. This makes it
  * easier to create new database integrations by implementing only the database-specific logic. 
  * <p>
+ * If the core is a {@link VersionedFeatureStoreCore}, cached items do not expire individually; instead,
+ * the data version is checked once per cache TTL, and the cache is discarded only if it has changed.
+ * Otherwise, each item's lifetime can be shortened by a random amount, and items that are read near the
+ * end of their lifetime can be refreshed in the background; see {@link FeatureStoreCacheConfig#ttlJitter(double)}
+ * and {@link FeatureStoreCacheConfig#refreshAhead(double)}.
+ * <p>
+ * Reads from the core can be stopped for a while after it fails, and expired values can be returned for a
+ * limited time if they cannot be reloaded; see {@link FeatureStoreCacheConfig#circuitBreaker(long, java.util.concurrent.TimeUnit)}
+ * and {@link FeatureStoreCacheConfig#maximumStaleness(long, java.util.concurrent.TimeUnit)}. The health of the
+ * core is reported by {@link #getStatus()}.
+ * <p>
  * Construct instances of this class with {@link CachingStoreWrapper#builder(FeatureStoreCore)}.
  * 
  * @since 4.6.0
  */
 public class CachingStoreWrapper implements FeatureStore {
+  private static final Logger logger = LoggerFactory.getLogger(CachingStoreWrapper.class);
   private static final String CACHE_REFRESH_THREAD_POOL_NAME_FORMAT = "CachingStoreWrapper-refresher-pool-%d";
 
   private final FeatureStoreCore core;
-  private final LoadingCache<CacheKey, Optional<VersionedData>> itemCache;
+  private final GuardedFeatureStoreCore guardedCore;
+  private final LoadingCache<CacheKey, CachedItem> itemCache;
   private final LoadingCache<VersionedDataKind<?>, Map<String, VersionedData>> allCache;
   private final LoadingCache<String, Boolean> initCache;
   private final AtomicBoolean inited = new AtomicBoolean(false);
   private final ListeningExecutorService executorService;
+  private final VersionedFeatureStoreCore versionedCore;
+  private final FeatureStoreCacheConfig.StaleValuesPolicy staleValuesPolicy;
+  private final long cacheTimeMillis;
+  private final double ttlJitter;
+  private final double refreshAhead;
+  private final long maximumStalenessMillis;
+  private final ConcurrentMap<String, CachedItems> staleAllCopies = new ConcurrentHashMap<>();
+  private final Set<CacheKey> refreshesPending = Collections.newSetFromMap(new ConcurrentHashMap<CacheKey, Boolean>());
+  private final ConcurrentMap<String, AbstractCache.SimpleStatsCounter> refreshStats = new ConcurrentHashMap<>();
+  private final AtomicLong nextDataVersionCheck = new AtomicLong(0);
+  private volatile long dataVersion = -1;
+  private volatile long lastDataVersionRead;
+  private volatile boolean dataVersionRecheck;
   
   /**
    * Creates a new builder.
@@ -52,6 +96,14 @@ public class CachingStoreWrapper implements FeatureStore {
   
   protected CachingStoreWrapper(final FeatureStoreCore core, FeatureStoreCacheConfig caching) {
     this.core = core;
+    this.guardedCore = new GuardedFeatureStoreCore(core, caching.getCircuitBreakerMillis());
+    this.versionedCore = (caching.isEnabled() && core instanceof VersionedFeatureStoreCore) ?
+        (VersionedFeatureStoreCore)core : null;
+    this.staleValuesPolicy = caching.getStaleValuesPolicy();
+    this.cacheTimeMillis = caching.getCacheTimeMillis();
+    this.ttlJitter = versionedCore == null ? caching.getTtlJitter() : 0;
+    this.refreshAhead = versionedCore == null ? caching.getRefreshAhead() : 0;
+    this.maximumStalenessMillis = caching.getMaximumStalenessMillis();
     
     if (!caching.isEnabled()) {
       itemCache = null;
@@ -59,86 +111,239 @@ public class CachingStoreWrapper implements FeatureStore {
       initCache = null;
       executorService = null;
     } else {
-      CacheLoader<CacheKey, Optional<VersionedData>> itemLoader = new CacheLoader<CacheKey, Optional<VersionedData>>() {
+      CacheLoader<CacheKey, CachedItem> itemLoader = new CacheLoader<CacheKey, CachedItem>() {
+        @Override
+        public CachedItem load(CacheKey key) throws Exception {
+          return newCachedItem(guardedCore.getInternal(key.kind, key.key));
+        }
+
         @Override
-        public Optional<VersionedData> load(CacheKey key) throws Exception {
-          return Optional.<VersionedData>fromNullable(core.getInternal(key.kind, key.key));
+        public Map<CacheKey, CachedItem> loadAll(Iterable<? extends CacheKey> keys) throws Exception {
+          if (!(core instanceof MultiGetFeatureStoreCore)) {
+            return super.loadAll(keys); // this makes Guava call load() for each key instead
+          }
+          return loadMany(keys);
         }
       };
       CacheLoader<VersionedDataKind<?>, Map<String, VersionedData>> allLoader = new CacheLoader<VersionedDataKind<?>, Map<String, VersionedData>>() {
         @Override
         public Map<String, VersionedData> load(VersionedDataKind<?> kind) throws Exception {
-          return itemsOnlyIfNotDeleted(core.getAllInternal(kind));
+          Map<String, VersionedData> items = itemsOnlyIfNotDeleted(guardedCore.getAllInternal(kind));
+          rememberAll(kind, items);
+          return items;
         }
       };
       CacheLoader<String, Boolean> initLoader = new CacheLoader<String, Boolean>() {
         @Override
         public Boolean load(String key) throws Exception {
-          return core.initializedInternal();
+          return guardedCore.initializedInternal();
         }
       };
       
-      switch (caching.getStaleValuesPolicy()) {
-      case EVICT:
-        // We are using an "expire after write" cache. This will evict stale values and block while loading the latest
-        // from the underlying data store.
-
-        itemCache = CacheBuilder.newBuilder().expireAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(itemLoader);
-        allCache = CacheBuilder.newBuilder().expireAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(allLoader);
-        executorService = null;
-        break;
-        
-      default:
-        // We are using a "refresh after write" cache. This will not automatically evict stale values, allowing them
-        // to be returned if failures occur when updating them. Optionally set the cache to refresh values asynchronously,
-        // which always returns the previously cached value immediately (this is only done for itemCache, not allCache,
-        // since retrieving all flags is less frequently needed and we don't want to incur the extra overhead).
-
-        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(CACHE_REFRESH_THREAD_POOL_NAME_FORMAT).setDaemon(true).build();
-        ExecutorService parentExecutor = Executors.newSingleThreadExecutor(threadFactory);
-        executorService = MoreExecutors.listeningDecorator(parentExecutor);
-
-        if (caching.getStaleValuesPolicy() == FeatureStoreCacheConfig.StaleValuesPolicy.REFRESH_ASYNC) {
-          itemLoader = CacheLoader.asyncReloading(itemLoader, executorService);
+      if (versionedCore != null) {
+        // The data version check decides when cached values are discarded, so they do not expire on their own.
+        // With REFRESH_ASYNC, the check itself is done on the refresh thread.
+        itemCache = newItemCacheBuilder(caching).build(itemLoader);
+        allCache = newAllCacheBuilder(caching).build(allLoader);
+        executorService = (caching.getStaleValuesPolicy() == FeatureStoreCacheConfig.StaleValuesPolicy.REFRESH_ASYNC) ?
+            newRefreshExecutor(caching.getRefreshThreads()) : null;
+      } else if (maximumStalenessMillis > 0) {
+        // Expired items are kept for the staleness window, in case they cannot be reloaded; checkExpiry decides
+        // when to reload them, so Guava's refresh is not used. If the list of all items of a kind cannot be
+        // reloaded, the copy in staleAllCopies is used.
+        itemCache = newItemCacheBuilder(caching).expireAfterWrite(caching.getCacheTimeMillis() + maximumStalenessMillis,
+            TimeUnit.MILLISECONDS).build(itemLoader);
+        allCache = newAllCacheBuilder(caching).expireAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(allLoader);
+        executorService = (refreshAhead > 0 || caching.getStaleValuesPolicy() == FeatureStoreCacheConfig.StaleValuesPolicy.REFRESH_ASYNC) ?
+            newRefreshExecutor(caching.getRefreshThreads()) : null;
+      } else {
+        switch (caching.getStaleValuesPolicy()) {
+        case EVICT:
+          // We are using an "expire after write" cache. This will evict stale values and block while loading the latest
+          // from the underlying data store. Refreshing ahead of expiry still needs the refresh threads.
+
+          itemCache = newItemCacheBuilder(caching).expireAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(itemLoader);
+          allCache = newAllCacheBuilder(caching).expireAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(allLoader);
+          executorService = refreshAhead > 0 ? newRefreshExecutor(caching.getRefreshThreads()) : null;
+          break;
+          
+        default:
+          // We are using a "refresh after write" cache. This will not automatically evict stale values, allowing them
+          // to be returned if failures occur when updating them. Optionally set the cache to refresh values asynchronously,
+          // which always returns the previously cached value immediately (this is only done for itemCache, not allCache,
+          // since retrieving all flags is less frequently needed and we don't want to incur the extra overhead).
+
+          executorService = newRefreshExecutor(caching.getRefreshThreads());
+
+          if (caching.getStaleValuesPolicy() == FeatureStoreCacheConfig.StaleValuesPolicy.REFRESH_ASYNC) {
+            itemLoader = CacheLoader.asyncReloading(itemLoader, executorService);
+          }
+          itemCache = newItemCacheBuilder(caching).refreshAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(itemLoader);
+          allCache = newAllCacheBuilder(caching).refreshAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(allLoader);
         }
-        itemCache = CacheBuilder.newBuilder().refreshAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(itemLoader);
-        allCache = CacheBuilder.newBuilder().refreshAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(allLoader);        
       }
 
       initCache = CacheBuilder.newBuilder().expireAfterWrite(caching.getCacheTime(), caching.getCacheTimeUnit()).build(initLoader);
     }
   }
   
+  // Applies the size or weight limit, if any; FeatureStoreCacheConfig doesn't allow both. The limit on the
+  // number of items is not applied to allCache, which only has one entry per kind; a weight limit is, since
+  // those entries are the largest ones. Guava can't share a weight limit between two caches, so it is split
+  // between them evenly, as the maximumWeight doc describes.
+  private static CacheBuilder<CacheKey, CachedItem> newItemCacheBuilder(FeatureStoreCacheConfig caching) {
+    CacheBuilder<CacheKey, CachedItem> builder = newCacheBuilder();
+    if (caching.getMaximumWeight() > 0) {
+      long itemCacheWeight = caching.getMaximumWeight() - caching.getMaximumWeight() / 2;
+      return builder.maximumWeight(itemCacheWeight).weigher(new Weigher<CacheKey, CachedItem>() {
+        public int weigh(CacheKey key, CachedItem value) {
+          return value.item.isPresent() ? itemWeight(value.item.get()) : 1;
+        }
+      });
+    }
+    if (caching.getMaximumSize() > 0) {
+      return builder.maximumSize(caching.getMaximumSize());
+    }
+    return builder;
+  }
+  
+  private static CacheBuilder<VersionedDataKind<?>, Map<String, VersionedData>> newAllCacheBuilder(FeatureStoreCacheConfig caching) {
+    CacheBuilder<VersionedDataKind<?>, Map<String, VersionedData>> builder = newCacheBuilder();
+    if (caching.getMaximumWeight() > 0) {
+      long allCacheWeight = caching.getMaximumWeight() / 2;
+      return builder.maximumWeight(allCacheWeight).weigher(new Weigher<VersionedDataKind<?>, Map<String, VersionedData>>() {
+        public int weigh(VersionedDataKind<?> key, Map<String, VersionedData> value) {
+          long total = 1;
+          for (VersionedData item: value.values()) {
+            total += itemWeight(item);
+          }
+          return (int)Math.min(total, Integer.MAX_VALUE);
+        }
+      });
+    }
+    return builder;
+  }
+  
+  @SuppressWarnings("unchecked")
+  private static <K, V> CacheBuilder<K, V> newCacheBuilder() {
+    // Statistics are always recorded so that evictions and hit rates can be seen in getCacheStats().
+    return (CacheBuilder<K, V>)(CacheBuilder<?, ?>)CacheBuilder.newBuilder().recordStats();
+  }
+  
+  private static int itemWeight(VersionedData item) {
+    return (int)Math.max(1, Math.min(FeatureStoreHelpers.jsonLength(item), Integer.MAX_VALUE));
+  }
+  
+  private static ListeningExecutorService newRefreshExecutor(int threads) {
+    ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(CACHE_REFRESH_THREAD_POOL_NAME_FORMAT).setDaemon(true).build();
+    ExecutorService parentExecutor = Executors.newFixedThreadPool(threads, threadFactory);
+    return MoreExecutors.listeningDecorator(parentExecutor);
+  }
+  
   @Override
   public void close() throws IOException {
     if (executorService != null) {
       executorService.shutdownNow();
     }
-    core.close();
+    guardedCore.close();
   }
 
   @SuppressWarnings("unchecked")
   @Override
   public <T extends VersionedData> T get(VersionedDataKind<T> kind, String key) {
     if (itemCache != null) {
-      Optional<VersionedData> cachedItem = itemCache.getUnchecked(CacheKey.forItem(kind, key));
+      checkDataVersion();
+      CacheKey cacheKey = CacheKey.forItem(kind, key);
+      CachedItem cachedItem = checkExpiry(cacheKey, itemCache.getUnchecked(cacheKey));
       if (cachedItem != null) {
-        return (T)itemOnlyIfNotDeleted(cachedItem.orNull());
+        return (T)itemOnlyIfNotDeleted(cachedItem.item.orNull());
       }
     }
-    return (T)itemOnlyIfNotDeleted(core.getInternal(kind, key));
+    return (T)itemOnlyIfNotDeleted(guardedCore.getInternal(kind, key));
+  }
+
+  /**
+   * Returns the items with the specified keys, omitting any that are not found or are deleted. If the
+   * core is a {@link MultiGetFeatureStoreCore}, all of the items that are not already cached are read
+   * from the underlying store in a single operation.
+   *
+   * @param <T> class of the objects that will be returned
+   * @param kind the kind of objects to get
+   * @param keys the keys of the objects to get
+   * @return a map of the objects that were found
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends VersionedData> Map<String, T> getMany(VersionedDataKind<T> kind, Collection<String> keys) {
+    Map<String, T> ret = new HashMap<>();
+    if (itemCache != null) {
+      checkDataVersion();
+      List<CacheKey> cacheKeys = new ArrayList<>(keys.size());
+      for (String key: keys) {
+        cacheKeys.add(CacheKey.forItem(kind, key));
+      }
+      Map<CacheKey, CachedItem> cachedItems;
+      try {
+        cachedItems = itemCache.getAll(cacheKeys);
+      } catch (ExecutionException e) {
+        throw new UncheckedExecutionException(e.getCause());
+      }
+      for (Map.Entry<CacheKey, CachedItem> e: cachedItems.entrySet()) {
+        VersionedData item = itemOnlyIfNotDeleted(checkExpiry(e.getKey(), e.getValue()).item.orNull());
+        if (item != null) {
+          ret.put(e.getKey().key, (T)item);
+        }
+      }
+    } else if (core instanceof MultiGetFeatureStoreCore) {
+      for (Map.Entry<String, VersionedData> e: guardedCore.getManyInternal(kind, keys).entrySet()) {
+        VersionedData item = itemOnlyIfNotDeleted(e.getValue());
+        if (item != null) {
+          ret.put(e.getKey(), (T)item);
+        }
+      }
+    } else {
+      for (String key: keys) {
+        T item = get(kind, key);
+        if (item != null) {
+          ret.put(key, item);
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Returns true if the item with the specified key, or the fact that it does not exist, is in the cache
+   * and has not expired, so that reading it will not need to access the underlying data store. This does
+   * not load the item or count as a cache hit or miss.
+   *
+   * @param kind the kind of object
+   * @param key the key of the object
+   * @return true if the item is cached
+   */
+  public boolean isCached(VersionedDataKind<?> kind, String key) {
+    if (itemCache == null) {
+      return false;
+    }
+    CachedItem cachedItem = itemCache.asMap().get(CacheKey.forItem(kind, key));
+    return cachedItem != null && System.currentTimeMillis() < cachedItem.expiresAt;
   }
 
   @SuppressWarnings("unchecked")
   @Override
   public <T extends VersionedData> Map<String, T> all(VersionedDataKind<T> kind) {
     if (allCache != null) {
-      Map<String, T> items = (Map<String, T>)allCache.getUnchecked(kind);
+      checkDataVersion();
+      Map<String, T> items;
+      try {
+        items = (Map<String, T>)allCache.getUnchecked(kind);
+      } catch (RuntimeException e) {
+        items = (Map<String, T>)staleAllOrThrow(kind, e);
+      }
       if (items != null) {
         return items;
       }
     }
-    return itemsOnlyIfNotDeleted(core.getAllInternal(kind));
+    return itemsOnlyIfNotDeleted(guardedCore.getAllInternal(kind));
   }
 
   @SuppressWarnings("unchecked")
@@ -146,7 +351,7 @@ public class CachingStoreWrapper implements FeatureStore {
   public void init(Map<VersionedDataKind<?>, Map<String, ? extends VersionedData>> allData) {
     Map<VersionedDataKind<?>, Map<String, VersionedData>> castMap = // silly generic wildcard problem
         (Map<VersionedDataKind<?>, Map<String, VersionedData>>)((Map<?, ?>)allData);
-    core.initInternal(castMap);
+    guardedCore.initInternal(castMap);
 
     inited.set(true);
     
@@ -155,9 +360,11 @@ public class CachingStoreWrapper implements FeatureStore {
       itemCache.invalidateAll();
       for (Map.Entry<VersionedDataKind<?>, Map<String, VersionedData>> e0: castMap.entrySet()) {
         VersionedDataKind<?> kind = e0.getKey();
-        allCache.put(kind, itemsOnlyIfNotDeleted(e0.getValue()));
+        Map<String, VersionedData> items = itemsOnlyIfNotDeleted(e0.getValue());
+        allCache.put(kind, items);
+        rememberAll(kind, items);
         for (Map.Entry<String, VersionedData> e1: e0.getValue().entrySet()) {
-          itemCache.put(CacheKey.forItem(kind, e1.getKey()), Optional.of(e1.getValue()));
+          itemCache.put(CacheKey.forItem(kind, e1.getKey()), newCachedItem(e1.getValue()));
         }
       }
     }
@@ -170,9 +377,9 @@ public class CachingStoreWrapper implements FeatureStore {
 
   @Override
   public <T extends VersionedData> void upsert(VersionedDataKind<T> kind, T item) {
-    VersionedData newState = core.upsertInternal(kind, item);
+    VersionedData newState = guardedCore.upsertInternal(kind, item);
     if (itemCache != null) {
-      itemCache.put(CacheKey.forItem(kind, item.getKey()), Optional.fromNullable(newState));
+      itemCache.put(CacheKey.forItem(kind, item.getKey()), newCachedItem(newState));
     }
     if (allCache != null) {
       allCache.invalidate(kind);
@@ -188,7 +395,7 @@ public class CachingStoreWrapper implements FeatureStore {
     if (initCache != null) {
       result = initCache.getUnchecked("arbitrary-key");
     } else {
-      result = core.initializedInternal();
+      result = guardedCore.initializedInternal();
     }
     if (result) {
       inited.set(true);
@@ -196,6 +403,51 @@ public class CachingStoreWrapper implements FeatureStore {
     return result;
   }
   
+  /**
+   * Discards any cached state for an item that has been changed by some other process, so that the
+   * next read will get it from the underlying store. If the cached item is already at least as new as
+   * the given version, it is kept, since that means this instance made the change itself or has
+   * already read it. The cached list of all items of that kind is always discarded.
+   * <p>
+   * This has no effect if caching is disabled.
+   *
+   * @param kind the kind of item
+   * @param key the item's key
+   * @param version the version that was written
+   */
+  public void invalidate(VersionedDataKind<?> kind, String key, int version) {
+    if (itemCache != null) {
+      CacheKey cacheKey = CacheKey.forItem(kind, key);
+      CachedItem cachedItem = itemCache.getIfPresent(cacheKey);
+      if (cachedItem != null && cachedItem.item.isPresent() && cachedItem.item.get().getVersion() >= version) {
+        return;
+      }
+      itemCache.invalidate(cacheKey);
+    }
+    if (allCache != null) {
+      allCache.invalidate(kind);
+    }
+  }
+
+  /**
+   * Discards all cached state, so that subsequent reads will go to the underlying store. This is
+   * appropriate when the store's contents may have changed in ways that this instance was not told
+   * about individually.
+   * <p>
+   * This has no effect if caching is disabled.
+   */
+  public void invalidateAll() {
+    if (itemCache != null) {
+      itemCache.invalidateAll();
+    }
+    if (allCache != null) {
+      allCache.invalidateAll();
+    }
+    if (initCache != null) {
+      initCache.invalidateAll();
+    }
+  }
+
   /**
    * Return the underlying Guava cache stats object.
    *
@@ -208,6 +460,32 @@ public class CachingStoreWrapper implements FeatureStore {
     return null;
   }
 
+  /**
+   * Returns statistics for the background refreshes of items of the given kind, which are done because of
+   * {@link FeatureStoreCacheConfig#refreshAhead(double)}, or for expired items if a maximum staleness is set
+   * with {@link FeatureStoreCacheConfig.StaleValuesPolicy#REFRESH_ASYNC}: the number of refreshes that
+   * succeeded and failed, and the time they took. Hit and miss counts are not included; see {@link #getCacheStats()}.
+   *
+   * @param kind the kind of item
+   * @return the refresh statistics, or null if caching is disabled
+   */
+  public CacheStats getRefreshStats(VersionedDataKind<?> kind) {
+    if (itemCache == null) {
+      return null;
+    }
+    return refreshStatsCounter(kind).snapshot();
+  }
+
+  /**
+   * Returns the current health of the underlying data store, and how often expired values have been returned
+   * because they could not be reloaded.
+   *
+   * @return the status
+   */
+  public FeatureStoreStatus getStatus() {
+    return guardedCore.getStatus();
+  }
+
   /**
    * Return the underlying implementation object.
    * 
@@ -217,6 +495,200 @@ public class CachingStoreWrapper implements FeatureStore {
     return core;
   }
   
+  private Map<CacheKey, CachedItem> loadMany(Iterable<? extends CacheKey> keys) {
+    Map<CacheKey, CachedItem> ret = new HashMap<>();
+    Map<VersionedDataKind<?>, List<String>> keysByKind = new HashMap<>();
+    for (CacheKey key: keys) {
+      List<String> kindKeys = keysByKind.get(key.kind);
+      if (kindKeys == null) {
+        kindKeys = new ArrayList<>();
+        keysByKind.put(key.kind, kindKeys);
+      }
+      kindKeys.add(key.key);
+      ret.put(key, newCachedItem(null)); // Guava requires a result for every key
+    }
+    for (Map.Entry<VersionedDataKind<?>, List<String>> e0: keysByKind.entrySet()) {
+      for (Map.Entry<String, VersionedData> e1: guardedCore.getManyInternal(e0.getKey(), e0.getValue()).entrySet()) {
+        ret.put(CacheKey.forItem(e0.getKey(), e1.getKey()), newCachedItem(e1.getValue()));
+      }
+    }
+    return ret;
+  }
+  
+  private CachedItem newCachedItem(VersionedData item) {
+    long now = System.currentTimeMillis();
+    long lifetime = cacheTimeMillis - (long)(cacheTimeMillis * ttlJitter * ThreadLocalRandom.current().nextDouble());
+    return new CachedItem(Optional.fromNullable(item),
+        refreshAhead > 0 ? now + (long)(lifetime * (1 - refreshAhead)) : Long.MAX_VALUE,
+        (ttlJitter > 0 || (maximumStalenessMillis > 0 && versionedCore == null)) ? now + lifetime :
+          Long.MAX_VALUE); // otherwise Guava's expiry, or the data version, decides
+  }
+
+  // Guava expires all entries after the same TTL, so an entry whose jittered lifetime has ended is expired or
+  // refreshed here, following the stale values policy and the maximum staleness; one that is due for
+  // refresh-ahead is refreshed in the background and returned as it is.
+  private CachedItem checkExpiry(CacheKey key, CachedItem cachedItem) {
+    long now = System.currentTimeMillis();
+    if (now >= cachedItem.expiresAt) {
+      if (maximumStalenessMillis > 0) {
+        return reloadOrServeStale(key, cachedItem, now);
+      }
+      if (staleValuesPolicy == FeatureStoreCacheConfig.StaleValuesPolicy.EVICT) {
+        itemCache.asMap().remove(key, cachedItem);
+      } else {
+        itemCache.refresh(key);
+      }
+      return itemCache.getUnchecked(key);
+    }
+    if (now >= cachedItem.refreshAt) {
+      refreshAhead(key, cachedItem);
+    }
+    return cachedItem;
+  }
+
+  // Reloads an expired item, returning the old value instead if the reload fails or another thread is already
+  // reloading it, as long as it has not been expired for longer than the maximum staleness.
+  private CachedItem reloadOrServeStale(CacheKey key, CachedItem cachedItem, long now) {
+    boolean canServeStale = now < cachedItem.expiresAt + maximumStalenessMillis;
+    if (canServeStale && staleValuesPolicy == FeatureStoreCacheConfig.StaleValuesPolicy.REFRESH_ASYNC) {
+      refreshAhead(key, cachedItem);
+      if (!guardedCore.isAvailable()) {
+        guardedCore.recordStaleRead();
+      }
+      return cachedItem;
+    }
+    if (canServeStale && !refreshesPending.add(key)) {
+      return cachedItem;
+    }
+    try {
+      CachedItem newItem = newCachedItem(guardedCore.getInternal(key.kind, key.key));
+      itemCache.asMap().replace(key, cachedItem, newItem);
+      return newItem;
+    } catch (RuntimeException e) {
+      if (!canServeStale) {
+        itemCache.asMap().remove(key, cachedItem);
+        throw e;
+      }
+      guardedCore.recordStaleRead();
+      return cachedItem;
+    } finally {
+      if (canServeStale) {
+        refreshesPending.remove(key);
+      }
+    }
+  }
+
+  private void rememberAll(VersionedDataKind<?> kind, Map<String, VersionedData> items) {
+    if (maximumStalenessMillis > 0 && versionedCore == null) {
+      staleAllCopies.put(kind.getNamespace(), new CachedItems(items, System.currentTimeMillis() + cacheTimeMillis));
+    }
+  }
+
+  private Map<String, VersionedData> staleAllOrThrow(VersionedDataKind<?> kind, RuntimeException e) {
+    CachedItems copy = staleAllCopies.get(kind.getNamespace());
+    if (copy == null || System.currentTimeMillis() >= copy.expiresAt + maximumStalenessMillis) {
+      throw e;
+    }
+    guardedCore.recordStaleRead();
+    return copy.items;
+  }
+
+  private void refreshAhead(final CacheKey key, final CachedItem oldItem) {
+    if (executorService == null || !refreshesPending.add(key)) {
+      return;
+    }
+    try {
+      executorService.submit(new Runnable() {
+        public void run() {
+          try {
+            refreshItem(key, oldItem);
+          } finally {
+            refreshesPending.remove(key);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) { // the wrapper has been closed
+      refreshesPending.remove(key);
+    }
+  }
+
+  private void refreshItem(CacheKey key, CachedItem oldItem) {
+    AbstractCache.SimpleStatsCounter stats = refreshStatsCounter(key.kind);
+    long startTime = System.nanoTime();
+    try {
+      CachedItem newItem = newCachedItem(guardedCore.getInternal(key.kind, key.key));
+      // If the item was updated or invalidated in the meantime, the value we read may already be out of date.
+      itemCache.asMap().replace(key, oldItem, newItem);
+      stats.recordLoadSuccess(System.nanoTime() - startTime);
+    } catch (RuntimeException e) {
+      stats.recordLoadException(System.nanoTime() - startTime);
+      if (e instanceof StoreUnavailableException) {
+        return; // the failure that opened the circuit breaker has already been logged
+      }
+      logger.warn("Unable to refresh \"{}\" in \"{}\"; keeping cached value: {}", key.key, key.kind.getNamespace(),
+          e.toString());
+    }
+  }
+
+  private AbstractCache.SimpleStatsCounter refreshStatsCounter(VersionedDataKind<?> kind) {
+    AbstractCache.SimpleStatsCounter stats = refreshStats.get(kind.getNamespace());
+    if (stats == null) {
+      AbstractCache.SimpleStatsCounter newStats = new AbstractCache.SimpleStatsCounter();
+      stats = refreshStats.putIfAbsent(kind.getNamespace(), newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    return stats;
+  }
+
+  private void checkDataVersion() {
+    if (versionedCore == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long next = nextDataVersionCheck.get();
+    if (now < next || !nextDataVersionCheck.compareAndSet(next, now + cacheTimeMillis)) {
+      return;
+    }
+    if (executorService != null) {
+      executorService.submit(new Runnable() {
+        public void run() {
+          updateDataVersion();
+        }
+      });
+    } else {
+      updateDataVersion();
+    }
+  }
+  
+  private void updateDataVersion() {
+    long newVersion;
+    try {
+      newVersion = guardedCore.getDataVersion();
+      lastDataVersionRead = System.currentTimeMillis();
+    } catch (RuntimeException e) {
+      boolean keepValues = maximumStalenessMillis > 0 ?
+          System.currentTimeMillis() < lastDataVersionRead + cacheTimeMillis + maximumStalenessMillis :
+          staleValuesPolicy != FeatureStoreCacheConfig.StaleValuesPolicy.EVICT;
+      if (!keepValues) {
+        itemCache.invalidateAll();
+        allCache.invalidateAll();
+        throw e;
+      }
+      logger.warn("Unable to read data version, keeping cached values: {}", e.toString());
+      return;
+    }
+    if (newVersion < 0 || newVersion != dataVersion || dataVersionRecheck) {
+      // A load that was already in progress when the data changed can still store an out-of-date value after
+      // the cache is cleared, so after each change the cache is cleared once more at the following check.
+      dataVersionRecheck = newVersion != dataVersion;
+      dataVersion = newVersion;
+      itemCache.invalidateAll();
+      allCache.invalidateAll();
+    }
+  }
+  
   private VersionedData itemOnlyIfNotDeleted(VersionedData item) {
     return (item != null && item.isDeleted()) ? null : item;
   }
@@ -234,6 +706,32 @@ public class CachingStoreWrapper implements FeatureStore {
     return ret;
   }
   
+  // A cached item or its absence, with the times after which it should be refreshed ahead of expiry and after
+  // which it has expired. Entries are compared by identity, so that a background refresh can tell whether the
+  // entry it started from has been replaced.
+  private static final class CachedItem {
+    final Optional<VersionedData> item;
+    final long refreshAt;
+    final long expiresAt;
+
+    CachedItem(Optional<VersionedData> item, long refreshAt, long expiresAt) {
+      this.item = item;
+      this.refreshAt = refreshAt;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  // The list of all items of a kind, kept in case it cannot be reloaded after it expires.
+  private static final class CachedItems {
+    final Map<String, VersionedData> items;
+    final long expiresAt;
+
+    CachedItems(Map<String, VersionedData> items, long expiresAt) {
+      this.items = items;
+      this.expiresAt = expiresAt;
+    }
+  }
+
   private static class CacheKey {
     final VersionedDataKind<?> kind;
     final String key;
@@ -263,6 +761,22 @@ public class CachingStoreWrapper implements FeatureStore {
     }
   }
 
+  /**
+   * Thrown by reads while the circuit breaker set by
+   * {@link FeatureStoreCacheConfig#circuitBreaker(long, java.util.concurrent.TimeUnit)} is open, that is, for a
+   * while after the underlying data store has failed.
+   */
+  @SuppressWarnings("serial")
+  public static class StoreUnavailableException extends RuntimeException {
+    /**
+     * Constructs an instance.
+     * @param lastError a description of the error that made the data store unavailable
+     */
+    public StoreUnavailableException(String lastError) {
+      super("Feature store is unavailable: " + lastError);
+    }
+  }
+
   /**
    * Builder for instances of {@link CachingStoreWrapper}.
    */
@@ -6,6 +6,8 @@ import com.launchdarkly.client.FeatureStore;
 import com.launchdarkly.client.VersionedData;
 import com.launchdarkly.client.VersionedDataKind;
 
+import java.io.Writer;
+
 /**
  * Helper methods that may be useful for implementing a {@link FeatureStore} or {@link FeatureStoreCore}.
  *
@@ -44,6 +46,41 @@ public abstract class FeatureStoreHelpers {
     return gson.toJson(item);
   }
   
+  /**
+   * Returns the length of an item's JSON representation. The JSON is counted as it is written, rather than
+   * being built as a string.
+   */
+  static long jsonLength(VersionedData item) {
+    CountingWriter writer = new CountingWriter();
+    gson.toJson(item, writer);
+    return writer.count;
+  }
+  
+  private static final class CountingWriter extends Writer {
+    long count = 0;
+    
+    @Override
+    public void write(int c) {
+      count++;
+    }
+    
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      count += len;
+    }
+    
+    @Override
+    public void write(String str, int off, int len) {
+      count += len;
+    }
+    
+    @Override
+    public void flush() {}
+    
+    @Override
+    public void close() {}
+  }
+  
   /**
    * Thrown by {@link FeatureStoreHelpers#unmarshalJson(VersionedDataKind, String)} for a deserialization error.
    */
@@ -0,0 +1,64 @@
+package com.launchdarkly.client.utils;
+
+import com.launchdarkly.client.FeatureStoreCacheConfig;
+
+/**
+ * A snapshot of the health of the data store behind a {@link CachingStoreWrapper}, as returned by
+ * {@link CachingStoreWrapper#getStatus()}. The store is considered unavailable from the time an
+ * operation on it fails until an operation succeeds again.
+ *
+ * @since 4.12.0
+ */
+public final class FeatureStoreStatus {
+  private final boolean available;
+  private final long unavailableSince;
+  private final String lastError;
+  private final long staleReadCount;
+
+  FeatureStoreStatus(boolean available, long unavailableSince, String lastError, long staleReadCount) {
+    this.available = available;
+    this.unavailableSince = unavailableSince;
+    this.lastError = lastError;
+    this.staleReadCount = staleReadCount;
+  }
+
+  /**
+   * Returns true if the last operation on the data store succeeded.
+   * @return true if the data store is available
+   */
+  public boolean isAvailable() {
+    return available;
+  }
+
+  /**
+   * Returns the time at which the data store became unavailable. Cached values that have been returned
+   * since then may be out of date by up to the time since then plus the cache TTL.
+   * @return the time in milliseconds since the epoch, or 0 if the data store is available
+   */
+  public long getUnavailableSince() {
+    return unavailableSince;
+  }
+
+  /**
+   * Returns a description of the most recent error from the data store, even if it has since recovered.
+   * @return the error, or null if there has not been one
+   */
+  public String getLastError() {
+    return lastError;
+  }
+
+  /**
+   * Returns the number of times an expired value has been returned because it could not be reloaded.
+   * @return the number of stale reads
+   * @see FeatureStoreCacheConfig#maximumStaleness(long, java.util.concurrent.TimeUnit)
+   */
+  public long getStaleReadCount() {
+    return staleReadCount;
+  }
+
+  @Override
+  public String toString() {
+    return "FeatureStoreStatus(" + (available ? "available" : ("unavailable since " + unavailableSince)) +
+        ", lastError=" + lastError + ", staleReadCount=" + staleReadCount + ")";
+  }
+}
@@ -0,0 +1,165 @@
+package com.launchdarkly.client.utils;
+
+import com.launchdarkly.client.VersionedData;
+import com.launchdarkly.client.VersionedDataKind;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes calls through to a {@link FeatureStoreCore}, keeping track of whether it is working, and acting as a
+ * circuit breaker if a breaker time is set: after an operation fails, reads fail immediately with a
+ * {@link CachingStoreWrapper.StoreUnavailableException} for that time, instead of each waiting for the store to
+ * time out. After that, one read is let through to test the store; if it succeeds, reads are allowed again,
+ * and if not, they fail immediately for another period. Writes are always passed through.
+ * <p>
+ * This implements every optional core interface, so that {@link CachingStoreWrapper} can call it in place of
+ * the core; the wrapper checks which interfaces the core itself implements before using the optional methods.
+ * Deserialization errors are not counted as failures, since they do not mean the store is unavailable.
+ */
+final class GuardedFeatureStoreCore implements MultiGetFeatureStoreCore, VersionedFeatureStoreCore {
+  private static final Logger logger = LoggerFactory.getLogger(GuardedFeatureStoreCore.class);
+
+  private final FeatureStoreCore core;
+  private final long circuitBreakerMillis;
+  private final AtomicLong nextTrialRead = new AtomicLong(0);
+  private final AtomicLong staleReadCount = new AtomicLong(0);
+  private volatile long unavailableSince;
+  private volatile String lastError;
+
+  GuardedFeatureStoreCore(FeatureStoreCore core, long circuitBreakerMillis) {
+    this.core = core;
+    this.circuitBreakerMillis = circuitBreakerMillis;
+  }
+
+  @Override
+  public VersionedData getInternal(VersionedDataKind<?> kind, String key) {
+    beforeRead();
+    try {
+      return succeeded(core.getInternal(kind, key));
+    } catch (RuntimeException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public Map<String, VersionedData> getAllInternal(VersionedDataKind<?> kind) {
+    beforeRead();
+    try {
+      return succeeded(core.getAllInternal(kind));
+    } catch (RuntimeException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public Map<String, VersionedData> getManyInternal(VersionedDataKind<?> kind, Collection<String> keys) {
+    beforeRead();
+    try {
+      return succeeded(((MultiGetFeatureStoreCore)core).getManyInternal(kind, keys));
+    } catch (RuntimeException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public long getDataVersion() {
+    beforeRead();
+    try {
+      return succeeded(((VersionedFeatureStoreCore)core).getDataVersion());
+    } catch (RuntimeException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public boolean initializedInternal() {
+    beforeRead();
+    try {
+      return succeeded(core.initializedInternal());
+    } catch (RuntimeException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public void initInternal(Map<VersionedDataKind<?>, Map<String, VersionedData>> allData) {
+    try {
+      core.initInternal(allData);
+      succeeded(null);
+    } catch (RuntimeException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public VersionedData upsertInternal(VersionedDataKind<?> kind, VersionedData item) {
+    try {
+      return succeeded(core.upsertInternal(kind, item));
+    } catch (RuntimeException e) {
+      throw failed(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    core.close();
+  }
+
+  void recordStaleRead() {
+    staleReadCount.incrementAndGet();
+  }
+
+  boolean isAvailable() {
+    return unavailableSince == 0;
+  }
+
+  FeatureStoreStatus getStatus() {
+    long since = unavailableSince;
+    return new FeatureStoreStatus(since == 0, since, lastError, staleReadCount.get());
+  }
+
+  private void beforeRead() {
+    if (circuitBreakerMillis <= 0 || unavailableSince == 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long next = nextTrialRead.get();
+    if (now >= next && nextTrialRead.compareAndSet(next, now + circuitBreakerMillis)) {
+      return; // only one caller gets to test the store
+    }
+    throw new CachingStoreWrapper.StoreUnavailableException(lastError);
+  }
+
+  private <T> T succeeded(T result) {
+    if (unavailableSince != 0) {
+      unavailableSince = 0;
+      logger.info("Feature store is available again");
+    }
+    return result;
+  }
+
+  private RuntimeException failed(RuntimeException e) {
+    if (e instanceof FeatureStoreHelpers.UnmarshalException) {
+      return e;
+    }
+    lastError = e.toString();
+    if (unavailableSince == 0) {
+      long now = System.currentTimeMillis();
+      nextTrialRead.set(now + circuitBreakerMillis);
+      unavailableSince = now;
+      if (circuitBreakerMillis > 0) {
+        logger.error("Feature store is unavailable, reads will fail for {} ms before it is tried again: {}",
+            circuitBreakerMillis, lastError);
+      } else {
+        logger.error("Feature store is unavailable: {}", lastError);
+      }
+    }
+    return e;
+  }
+}
@@ -0,0 +1,27 @@
+package com.launchdarkly.client.utils;
+
+import com.launchdarkly.client.VersionedData;
+import com.launchdarkly.client.VersionedDataKind;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link FeatureStoreCore} that can retrieve several items of the same kind in one operation.
+ * {@link CachingStoreWrapper} uses this for {@link CachingStoreWrapper#getMany(VersionedDataKind, Collection)},
+ * and to load several uncached items at once, so that the prerequisite flags and segments that a flag
+ * refers to can be fetched with a single round trip.
+ *
+ * @since 4.12.0
+ */
+public interface MultiGetFeatureStoreCore extends FeatureStoreCore {
+  /**
+   * Returns the items with the specified keys. As with {@link #getInternal(VersionedDataKind, String)},
+   * the method should not filter out deleted items, nor cache any items.
+   *
+   * @param kind the kind of objects to get
+   * @param keys the keys of the objects to get
+   * @return a map of the objects that were found; keys that were not found are omitted
+   */
+  Map<String, VersionedData> getManyInternal(VersionedDataKind<?> kind, Collection<String> keys);
+}
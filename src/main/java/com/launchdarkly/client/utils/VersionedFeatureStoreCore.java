@@ -0,0 +1,24 @@
+package com.launchdarkly.client.utils;
+
+/**
+ * A {@link FeatureStoreCore} that keeps a version number for its entire data set, which changes
+ * whenever any item is written. {@link CachingStoreWrapper} uses this to make cache refreshes
+ * conditional: instead of reloading cached items when they reach their TTL, it reads the data
+ * version once per TTL interval and only discards the cache if the version has changed.
+ * <p>
+ * Only implement this if every process that writes to the underlying store updates the data
+ * version; otherwise, changes made by those processes would not be seen until some other change
+ * updates the version.
+ *
+ * @since 4.12.0
+ */
+public interface VersionedFeatureStoreCore extends FeatureStoreCore {
+  /**
+   * Returns the current version of the entire data set. This should be a cheap operation, since
+   * it replaces reading the data itself.
+   *
+   * @return the data version, or a negative number if the store has no data version yet, in which
+   * case the cache is discarded as if the version had changed
+   */
+  long getDataVersion();
+}
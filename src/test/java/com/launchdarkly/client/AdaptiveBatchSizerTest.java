@@ -0,0 +1,47 @@
+package com.launchdarkly.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("javadoc")
+public class AdaptiveBatchSizerTest {
+  @Test
+  public void startsAtMaximum() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100);
+    assertEquals(100, sizer.getBatchSize());
+  }
+
+  @Test
+  public void fastPostsShrinkBatchSizeDownToMinimum() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100);
+    sizer.recordLatency(10);
+    assertEquals(75, sizer.getBatchSize());
+    for (int i = 0; i < 20; i++) {
+      sizer.recordLatency(10);
+    }
+    assertEquals(10, sizer.getBatchSize());
+  }
+
+  @Test
+  public void slowPostsGrowBatchSizeUpToMaximum() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100);
+    for (int i = 0; i < 20; i++) {
+      sizer.recordLatency(10);
+    }
+    sizer.recordLatency(AdaptiveBatchSizer.TARGET_LATENCY_MILLIS + 1);
+    assertEquals(20, sizer.getBatchSize());
+    for (int i = 0; i < 5; i++) {
+      sizer.recordLatency(AdaptiveBatchSizer.TARGET_LATENCY_MILLIS + 1);
+    }
+    assertEquals(100, sizer.getBatchSize());
+  }
+
+  @Test
+  public void latencyNearTargetLeavesBatchSizeUnchanged() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100);
+    sizer.recordLatency(10);
+    sizer.recordLatency(AdaptiveBatchSizer.TARGET_LATENCY_MILLIS / 2);
+    assertEquals(75, sizer.getBatchSize());
+  }
+}
@@ -0,0 +1,82 @@
+package com.launchdarkly.client;
+
+import com.launchdarkly.client.value.LDValue;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.launchdarkly.client.TestUtil.simpleEvaluation;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("javadoc")
+public class DebugEventLimiterTest {
+  private static final LDUser user = new LDUser("userkey");
+
+  @Test
+  public void eventsWithinBurstAreAdmitted() {
+    DebugEventLimiter limiter = new DebugEventLimiter(3, 0, new Random());
+    assertTrue(limiter.admit(event("flag"), 1000));
+    assertTrue(limiter.admit(event("flag"), 1000));
+    assertTrue(limiter.admit(event("flag"), 1000));
+    assertFalse(limiter.admit(event("flag"), 1000));
+  }
+
+  @Test
+  public void flagsHaveSeparateLimits() {
+    DebugEventLimiter limiter = new DebugEventLimiter(1, 0, new Random());
+    assertTrue(limiter.admit(event("flag1"), 1000));
+    assertFalse(limiter.admit(event("flag1"), 1000));
+    assertTrue(limiter.admit(event("flag2"), 1000));
+  }
+
+  @Test
+  public void tokensAreRefilledOverTime() {
+    DebugEventLimiter limiter = new DebugEventLimiter(2, 0, new Random());
+    assertTrue(limiter.admit(event("flag"), 1000));
+    assertTrue(limiter.admit(event("flag"), 1000));
+    assertFalse(limiter.admit(event("flag"), 1000));
+    assertFalse(limiter.admit(event("flag"), 1400));
+    assertTrue(limiter.admit(event("flag"), 1600));
+    assertFalse(limiter.admit(event("flag"), 1600));
+  }
+
+  @Test
+  public void overLimitEvaluationsAreSampledAndTheRestAreCountedAsSuppressed() {
+    DebugEventLimiter limiter = new DebugEventLimiter(1, 2, new Random());
+    assertTrue(limiter.admit(event("flag"), 1000));
+    for (int i = 0; i < 10; i++) {
+      assertFalse(limiter.admit(event("flag"), 1000));
+    }
+
+    assertThat(limiter.drain(1000), hasSize(2));
+    assertEquals(8, limiter.takeSuppressedCount());
+    assertEquals(0, limiter.takeSuppressedCount());
+    assertThat(limiter.drain(1000), empty());
+  }
+
+  @Test
+  public void sampleKeepsEvaluationsUntilReservoirIsFull() {
+    DebugEventLimiter limiter = new DebugEventLimiter(1, 2, new Random());
+    Event.FeatureRequest fe1 = event("flag"), fe2 = event("flag"), fe3 = event("flag");
+    limiter.admit(fe1, 1000);
+    limiter.admit(fe2, 1000);
+    limiter.admit(fe3, 1000);
+
+    List<Event.FeatureRequest> sample = limiter.drain(1000);
+    assertThat(sample, contains(fe2, fe3));
+    assertEquals(0, limiter.takeSuppressedCount());
+  }
+
+  private static Event.FeatureRequest event(String flagKey) {
+    FeatureFlag flag = new FeatureFlagBuilder(flagKey).version(1).build();
+    return EventFactory.DEFAULT.newFeatureRequestEvent(flag, user, simpleEvaluation(1, LDValue.of(true)), LDValue.ofNull());
+  }
+}
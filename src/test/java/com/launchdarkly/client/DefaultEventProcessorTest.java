@@ -1,5 +1,6 @@
 package com.launchdarkly.client;
 
+import com.google.common.base.Charsets;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -7,11 +8,18 @@ import com.launchdarkly.client.value.LDValue;
 
 import org.hamcrest.Matcher;
 import org.hamcrest.Matchers;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static com.launchdarkly.client.TestHttpUtil.httpsServerWithSelfSignedCert;
@@ -23,11 +31,13 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -43,6 +53,9 @@ public class DefaultEventProcessorTest {
   private static final JsonElement filteredUserJson =
       gson.fromJson("{\"key\":\"userkey\",\"privateAttrs\":[\"name\"]}", JsonElement.class);
   private static final SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
+  
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
 
   // Note that all of these events depend on the fact that DefaultEventProcessor does a synchronous
   // flush when it is closed; in this case, it's closed implicitly by the try-with-resources block.
@@ -567,6 +580,408 @@ public class DefaultEventProcessorTest {
   public void flushIsRetriedOnceAfter5xxError() throws Exception {
   }
 
+  @Test
+  public void undeliverablePayloadIsSpooledAndReplayedAfterNextSuccessfulFlush() throws Exception {
+    MockResponse errorResponse = new MockResponse().setResponseCode(503);
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(new LDUser("otheruser"));
+    File spoolDir = tempFolder.newFolder();
+
+    try (MockWebServer server = makeStartedServer(errorResponse, errorResponse,
+        eventsSuccessResponse(), eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventSpoolDirectory(spoolDir).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e1);
+        ep.flush();
+        ep.waitUntilInactive();
+        ep.sendEvent(e2);
+      }
+
+      RecordedRequest failed = server.takeRequest(0, TimeUnit.SECONDS);
+      String failedBody = failed.getBody().readUtf8();
+      server.takeRequest(0, TimeUnit.SECONDS); // the retry
+      RecordedRequest next = server.takeRequest(0, TimeUnit.SECONDS);
+      assertThat(next.getHeader("X-LaunchDarkly-Payload-ID"), not(equalTo(failed.getHeader("X-LaunchDarkly-Payload-ID"))));
+      RecordedRequest replayed = server.takeRequest(0, TimeUnit.SECONDS);
+      assertThat(replayed.getHeader("X-LaunchDarkly-Payload-ID"), equalTo(failed.getHeader("X-LaunchDarkly-Payload-ID")));
+      assertThat(replayed.getBody().readUtf8(), equalTo(failedBody));
+      assertTrue(new EventSpool(spoolDir, SDK_KEY, config.eventSpoolMaxBytes).isEmpty());
+    }
+  }
+  
+  @Test
+  public void spooledPayloadIsReplayedOnFlushEvenWithNoNewEvents() throws Exception {
+    MockResponse errorResponse = new MockResponse().setResponseCode(503);
+    Event e = EventFactory.DEFAULT.newIdentifyEvent(user);
+    File spoolDir = tempFolder.newFolder();
+
+    try (MockWebServer server = makeStartedServer(errorResponse, errorResponse, eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventSpoolDirectory(spoolDir).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e);
+        ep.flush();
+        ep.waitUntilInactive();
+        ep.flush();
+        ep.waitUntilInactive();
+      }
+
+      RecordedRequest failed = server.takeRequest(0, TimeUnit.SECONDS);
+      server.takeRequest(0, TimeUnit.SECONDS); // the retry
+      RecordedRequest replayed = server.takeRequest(0, TimeUnit.SECONDS);
+      assertThat(replayed.getHeader("X-LaunchDarkly-Payload-ID"), equalTo(failed.getHeader("X-LaunchDarkly-Payload-ID")));
+      assertTrue(new EventSpool(spoolDir, SDK_KEY, config.eventSpoolMaxBytes).isEmpty());
+    }
+  }
+  
+  @Test
+  public void payloadSpooledByPreviousProcessIsReplayedAtStartup() throws Exception {
+    File spoolDir = tempFolder.newFolder();
+    LDConfig.Builder configBuilder = new LDConfig.Builder().eventSpoolDirectory(spoolDir);
+    EventSpool previous = new EventSpool(spoolDir, SDK_KEY, configBuilder.build().eventSpoolMaxBytes);
+    previous.add("id1", "[{\"kind\":\"identify\"}]".getBytes(Charsets.UTF_8));
+    previous.close();
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = configBuilder.eventsURI(server.url("/").uri()).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.waitUntilInactive();
+      }
+
+      RecordedRequest replayed = server.takeRequest(0, TimeUnit.SECONDS);
+      assertThat(replayed.getHeader("X-LaunchDarkly-Payload-ID"), equalTo("id1"));
+      assertThat(replayed.getBody().readUtf8(), equalTo("[{\"kind\":\"identify\"}]"));
+    }
+  }
+  
+  @Test
+  public void closeWithDeadlineReportsDeliveredEvents() throws Exception {
+    Event e = EventFactory.DEFAULT.newIdentifyEvent(user);
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventShutdownTimeoutMillis(5000).build();
+      DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config);
+      ep.sendEvent(e);
+      ep.close();
+
+      EventShutdownReport report = ep.getShutdownReport();
+      assertTrue(report.isCompletedWithinDeadline());
+      assertEquals(1, report.getDeliveredEventCount());
+      assertEquals(0, report.getSpooledEventCount());
+      assertEquals(0, report.getDroppedEventCount());
+      assertThat(getEventsFromLastRequest(server), contains(isIdentifyEvent(e, userJson)));
+    }
+  }
+  
+  @Test
+  public void closeWithDeadlineSpoolsEventsThatCouldNotBeDeliveredInTime() throws Exception {
+    Event e = EventFactory.DEFAULT.newIdentifyEvent(user);
+    File spoolDir = tempFolder.newFolder();
+    MockResponse slowResponse = eventsSuccessResponse().setHeadersDelay(10, TimeUnit.SECONDS);
+
+    try (MockWebServer server = makeStartedServer(slowResponse)) {
+      LDConfig config = baseConfig(server).eventSpoolDirectory(spoolDir).eventShutdownTimeoutMillis(500).build();
+      DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config);
+      ep.sendEvent(e);
+      long startTime = System.currentTimeMillis();
+      ep.close();
+      assertThat(System.currentTimeMillis() - startTime, lessThan(5000L));
+
+      EventShutdownReport report = ep.getShutdownReport();
+      assertEquals(0, report.getDeliveredEventCount());
+      assertEquals(1, report.getSpooledEventCount());
+      assertEquals(1, new EventSpool(spoolDir, SDK_KEY, config.eventSpoolMaxBytes).size());
+    }
+  }
+  
+  @Test
+  public void eventsAreFlushedWhenCountThresholdIsReached() throws Exception {
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(user);
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).flushEventCountThreshold(2).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e1);
+        ep.waitUntilInactive();
+        assertEquals(0, server.getRequestCount());
+        
+        ep.sendEvent(e2);
+        ep.waitUntilInactive();
+        assertEquals(1, server.getRequestCount());
+      }
+
+      assertThat(getEventsFromLastRequest(server), contains(
+          isIdentifyEvent(e1, userJson),
+          isIdentifyEvent(e2, userJson)
+      ));
+    }
+  }
+
+  @Test
+  public void eventsAreFlushedWhenByteSizeThresholdIsReached() throws Exception {
+    Event e = EventFactory.DEFAULT.newIdentifyEvent(user);
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).flushByteSizeThreshold(1).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e);
+        ep.waitUntilInactive();
+        assertEquals(1, server.getRequestCount());
+      }
+
+      assertThat(getEventsFromLastRequest(server), contains(isIdentifyEvent(e, userJson)));
+    }
+  }
+
+  @Test
+  public void largePayloadIsSplitIntoSeveralRequests() throws Exception {
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(user);
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse(), eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).maxPayloadBytes(10).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e1);
+        ep.sendEvent(e2);
+      }
+
+      RecordedRequest req1 = server.takeRequest(0, TimeUnit.SECONDS);
+      RecordedRequest req2 = server.takeRequest(0, TimeUnit.SECONDS);
+      assertThat(gson.fromJson(req1.getBody().readUtf8(), JsonElement.class).getAsJsonArray(),
+          contains(isIdentifyEvent(e1, userJson)));
+      assertThat(gson.fromJson(req2.getBody().readUtf8(), JsonElement.class).getAsJsonArray(),
+          contains(isIdentifyEvent(e2, userJson)));
+      assertThat(req2.getHeader("X-LaunchDarkly-Payload-ID"), not(equalTo(req1.getHeader("X-LaunchDarkly-Payload-ID"))));
+    }
+  }
+  
+  @Test
+  public void flushesAreQueuedWhileAllWorkersAreBusy() throws Exception {
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e3 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    MockResponse slowResponse = eventsSuccessResponse().setBodyDelay(200, TimeUnit.MILLISECONDS);
+
+    try (MockWebServer server = makeStartedServer(slowResponse, eventsSuccessResponse(), eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventFlushWorkers(1).maxPendingEventPayloads(2).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e1);
+        ep.flush();
+        ep.sendEvent(e2);
+        ep.flush();
+        ep.sendEvent(e3);
+        ep.flush();
+        ep.waitUntilInactive();
+        assertEquals(3, server.getRequestCount());
+      }
+
+      assertThat(getEventsFromLastRequest(server), contains(isIdentifyEvent(e1, userJson)));
+      assertThat(getEventsFromLastRequest(server), contains(isIdentifyEvent(e2, userJson)));
+      assertThat(getEventsFromLastRequest(server), contains(isIdentifyEvent(e3, userJson)));
+    }
+  }
+  
+  @Test
+  public void inboxStatisticsReportConfiguredPolicyAndNoLossesWhenNotOverloaded() throws Exception {
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventBackpressurePolicy(EventBackpressurePolicy.SAMPLE).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(EventFactory.DEFAULT.newIdentifyEvent(user));
+        ep.waitUntilInactive();
+        
+        EventInboxStatistics stats = ep.getInboxStatistics();
+        assertEquals(EventBackpressurePolicy.SAMPLE, stats.getPolicy());
+        assertEquals(0, stats.getTotalDroppedCount());
+        assertEquals(0, stats.getTotalSampledCount());
+        assertEquals(0, stats.getDroppedCount("identify"));
+      }
+    }
+  }
+  
+  @Test
+  public void metricsListenerIsCalledAfterFlush() throws Exception {
+    final BlockingQueue<EventMetrics> reported = new LinkedBlockingQueue<>();
+    EventMetricsListener listener = new EventMetricsListener() {
+      public void metricsReported(EventMetrics metrics) {
+        reported.add(metrics);
+      }
+    };
+    Event e = EventFactory.DEFAULT.newIdentifyEvent(user);
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventMetricsListener(listener).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e);
+        ep.flush();
+        ep.waitUntilInactive();
+      }
+      
+      EventMetrics metrics = reported.poll(1, TimeUnit.SECONDS);
+      assertNotNull(metrics);
+      assertEquals(1, metrics.getProcessedEventCount("identify"));
+      assertEquals(1, metrics.getFlushCount());
+      assertEquals(1, metrics.getPayloadCount());
+      assertEquals(0, metrics.getFailedPayloadCount());
+      assertTrue(metrics.getSerializedBytes() > 0);
+    }
+  }
+  
+  @SuppressWarnings("unchecked")
+  @Test
+  public void metricEventsAreAggregatedWhenEnabled() throws Exception {
+    Event.Custom ce1 = EventFactory.DEFAULT.newCustomEvent("eventkey", user, null, 2.0);
+    Event.Custom ce2 = EventFactory.DEFAULT.newCustomEvent("eventkey", user, null, 3.0);
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).aggregateMetricEvents(true).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(ce1);
+        ep.sendEvent(ce2);
+      }
+
+      assertThat(getEventsFromLastRequest(server), contains(
+          isIndexEvent(ce1, userJson),
+          allOf(
+              hasJsonProperty("kind", "custom"),
+              hasJsonProperty("key", "eventkey"),
+              hasJsonProperty("metricValue", 5.0)
+          )
+      ));
+    }
+  }
+  
+  @SuppressWarnings("unchecked")
+  @Test
+  public void metricEventsKeepAggregatingWhileAllWorkersAreBusy() throws Exception {
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event.Custom ce1 = EventFactory.DEFAULT.newCustomEvent("eventkey", user, null, 2.0);
+    Event.Custom ce2 = EventFactory.DEFAULT.newCustomEvent("eventkey", user, null, 3.0);
+    MockResponse slowResponse1 = eventsSuccessResponse().setBodyDelay(500, TimeUnit.MILLISECONDS);
+    MockResponse slowResponse2 = eventsSuccessResponse().setBodyDelay(500, TimeUnit.MILLISECONDS);
+
+    try (MockWebServer server = makeStartedServer(slowResponse1, slowResponse2, eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).aggregateMetricEvents(true)
+          .eventFlushWorkers(1).maxPendingEventPayloads(1).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e1);
+        ep.flush();
+        ep.sendEvent(e2);
+        ep.flush();
+        // one payload is being sent and one is waiting, so these flushes are skipped
+        ep.sendEvent(ce1);
+        ep.flush();
+        ep.sendEvent(ce2);
+        ep.flush();
+        ep.waitUntilInactive();
+        assertEquals(2, server.getRequestCount());
+      }
+
+      server.takeRequest();
+      server.takeRequest();
+      List<JsonElement> customEvents = new ArrayList<>();
+      for (JsonElement e: getEventsFromLastRequest(server)) {
+        if (e.getAsJsonObject().get("kind").getAsString().equals("custom")) {
+          customEvents.add(e);
+        }
+      }
+      assertThat(customEvents, contains(
+          allOf(
+              hasJsonProperty("key", "eventkey"),
+              hasJsonProperty("metricValue", 5.0)
+          )
+      ));
+    }
+  }
+  
+  @SuppressWarnings("unchecked")
+  @Test
+  public void fullFeatureEventLaneDoesNotDisplaceIdentifyEvents() throws Exception {
+    FeatureFlag flag = new FeatureFlagBuilder("flagkey").version(11).trackEvents(true).build();
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event.FeatureRequest fe1 = EventFactory.DEFAULT.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value")), LDValue.ofNull());
+    Event.FeatureRequest fe2 = EventFactory.DEFAULT.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value")), LDValue.ofNull());
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(user);
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventLaneCapacities(2, 1, 1).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e1);
+        ep.sendEvent(fe1);
+        ep.sendEvent(fe2);
+        ep.sendEvent(e2);
+      }
+
+      // the events from both lanes are listed in the order they were sent
+      assertThat(getEventsFromLastRequest(server), contains(
+          isIdentifyEvent(e1, userJson),
+          isFeatureEvent(fe1, flag, false, null),
+          isIdentifyEvent(e2, userJson),
+          allOf(isSummaryEvent(), hasSummaryFlag("flagkey", LDValue.ofNull(),
+              contains(isSummaryEventCounter(flag, 1, LDValue.of("value"), 2))))
+      ));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void eventsBeyondMaxEventsPerFlushAreTakenFromLanesByWeight() throws Exception {
+    FeatureFlag flag = new FeatureFlagBuilder("flagkey").version(11).trackEvents(true).build();
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event.FeatureRequest fe = EventFactory.DEFAULT.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value")), LDValue.ofNull());
+
+    try (MockWebServer server = makeStartedServer(eventsSuccessResponse(), eventsSuccessResponse())) {
+      LDConfig config = baseConfig(server).eventLaneCapacities(10, 10, 10).eventLaneWeights(1, 1, 1)
+          .maxEventsPerFlush(2).build();
+      try (DefaultEventProcessor ep = new DefaultEventProcessor(SDK_KEY, config)) {
+        ep.sendEvent(e1);
+        ep.sendEvent(e2);
+        ep.sendEvent(fe);
+        ep.flush();
+        ep.waitUntilInactive();
+        
+        assertThat(getEventsFromLastRequest(server), contains(
+            isIdentifyEvent(e1, userJson),
+            isFeatureEvent(fe, flag, false, null),
+            isSummaryEvent()
+        ));
+      }
+
+      assertThat(getEventsFromLastRequest(server), contains(isIdentifyEvent(e2, userJson)));
+    }
+  }
+  
+  @Test
+  public void processorsSharingRuntimeKeepTheirPayloadsSeparate() throws Exception {
+    Event e1 = EventFactory.DEFAULT.newIdentifyEvent(user);
+    Event e2 = EventFactory.DEFAULT.newIdentifyEvent(user);
+
+    try (LDClientRuntime runtime = new LDClientRuntime.Builder().eventFlushWorkers(1).build()) {
+      try (MockWebServer server = makeStartedServer(eventsSuccessResponse(), eventsSuccessResponse())) {
+        LDConfig config = baseConfig(server).runtime(runtime).build();
+        try (DefaultEventProcessor ep1 = new DefaultEventProcessor("key1", config)) {
+          try (DefaultEventProcessor ep2 = new DefaultEventProcessor("key2", config)) {
+            ep2.sendEvent(e2);
+          }
+          // closing the second processor must not shut down resources that the first one is still using
+          assertTrue(!runtime.eventFlushExecutor.isShutdown());
+          ep1.sendEvent(e1);
+        }
+        
+        RecordedRequest req2 = server.takeRequest(0, TimeUnit.SECONDS);
+        assertEquals("key2", req2.getHeader("Authorization"));
+        RecordedRequest req1 = server.takeRequest(0, TimeUnit.SECONDS);
+        assertEquals("key1", req1.getHeader("Authorization"));
+        assertThat(gson.fromJson(req1.getBody().readUtf8(), JsonElement.class).getAsJsonArray(),
+            contains(isIdentifyEvent(e1, userJson)));
+      }
+    }
+  }
+  
   @Test
   public void httpClientDoesNotAllowSelfSignedCertByDefault() throws Exception {
     try (TestHttpUtil.ServerWithCert serverWithCert = httpsServerWithSelfSignedCert(eventsSuccessResponse())) {
@@ -0,0 +1,71 @@
+package com.launchdarkly.client;
+
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("javadoc")
+public class EventMetricsRecorderTest {
+  private static final LDUser user = new LDUser("userkey");
+  
+  private final BlockingQueue<String> inbox = new ArrayBlockingQueue<>(10);
+  private final EventMetricsRecorder recorder = new EventMetricsRecorder(inbox, 10, EventBackpressurePolicy.DROP_NEWEST);
+  
+  @Test
+  public void inboxDepthIsReported() throws Exception {
+    inbox.put("a");
+    inbox.put("b");
+    EventMetrics metrics = recorder.getMetrics();
+    assertEquals(2, metrics.getInboxDepth());
+    assertEquals(10, metrics.getInboxCapacity());
+  }
+  
+  @Test
+  public void eventCountsAreRecordedByKind() {
+    recorder.recordProcessed(EventFactory.DEFAULT.newIdentifyEvent(user));
+    recorder.recordProcessed(EventFactory.DEFAULT.newCustomEvent("key", user, null, null));
+    recorder.recordProcessed(EventFactory.DEFAULT.newCustomEvent("key", user, null, null));
+    recorder.recordDropped(EventFactory.DEFAULT.newIdentifyEvent(user));
+    
+    EventMetrics metrics = recorder.getMetrics();
+    assertEquals(1, metrics.getProcessedEventCount("identify"));
+    assertEquals(2, metrics.getProcessedEventCount("custom"));
+    assertEquals(0, metrics.getProcessedEventCount("feature"));
+    assertEquals(1, metrics.getInboxStatistics().getDroppedCount("identify"));
+    assertEquals(1, metrics.getInboxStatistics().getTotalDroppedCount());
+  }
+  
+  @Test
+  public void payloadStatisticsAreAccumulated() {
+    recorder.recordPayload(100, true);
+    recorder.recordPayload(50, false);
+    recorder.recordRetry();
+    recorder.recordFlush(30);
+    
+    EventMetrics metrics = recorder.getMetrics();
+    assertEquals(2, metrics.getPayloadCount());
+    assertEquals(1, metrics.getFailedPayloadCount());
+    assertEquals(150, metrics.getSerializedBytes());
+    assertEquals(1, metrics.getRetryCount());
+    assertEquals(1, metrics.getFlushCount());
+    assertEquals(30, metrics.getLastFlushDurationMillis());
+  }
+  
+  @Test
+  public void postLatenciesAreBucketed() {
+    recorder.recordPostLatency(0);
+    recorder.recordPostLatency(10);
+    recorder.recordPostLatency(11);
+    recorder.recordPostLatency(999999);
+    
+    long[] expected = new long[EventMetrics.POST_LATENCY_BUCKET_BOUNDS_MILLIS.length + 1];
+    expected[0] = 2;
+    expected[1] = 1;
+    expected[expected.length - 1] = 1;
+    assertArrayEquals(expected, recorder.getMetrics().getPostLatencyHistogram());
+  }
+}
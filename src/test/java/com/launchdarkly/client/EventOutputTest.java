@@ -1,5 +1,6 @@
 package com.launchdarkly.client;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
 import com.launchdarkly.client.Event.FeatureRequest;
@@ -11,11 +12,14 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 @SuppressWarnings("javadoc")
@@ -358,6 +362,99 @@ public class EventOutputTest {
     ));
   }
   
+  @Test
+  public void sameUserIsSerializedIdenticallyInEveryEventOfPayload() throws Exception {
+    LDConfig config = new LDConfig.Builder().inlineUsersInEvents(true).privateAttributeNames("name").build();
+    EventOutputFormatter f = new EventOutputFormatter(config);
+    LDUser user = new LDUser.Builder("userkey").name("me").email("test@example.com").build();
+    Event[] events = new Event[] {
+        EventFactory.DEFAULT.newIdentifyEvent(user),
+        new Event.Index(0, user),
+        EventFactory.DEFAULT.newCustomEvent("eventkey", user, LDValue.ofNull(), null)
+    };
+    LDValue expectedUserJson = parseValue("{\"key\":\"userkey\",\"email\":\"test@example.com\",\"privateAttrs\":[\"name\"]}");
+
+    StringWriter w = new StringWriter();
+    assertEquals(3, f.writeOutputEvents(events, new EventSummary(), w));
+    LDValue output = parseValue(w.toString());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(expectedUserJson, output.get(i).get("user"));
+    }
+  }
+  
+  @Test
+  public void outputIsSplitIntoPayloadsWithinSizeLimit() throws Exception {
+    EventOutputFormatter f = new EventOutputFormatter(new LDConfig.Builder().build());
+    LDUser user = new LDUser("userkey");
+    Event[] events = new Event[] {
+        EventFactory.DEFAULT.newIdentifyEvent(user),
+        EventFactory.DEFAULT.newIdentifyEvent(user),
+        EventFactory.DEFAULT.newIdentifyEvent(user)
+    };
+    StringWriter w = new StringWriter();
+    f.writeOutputEvents(new Event[] { events[0] }, new EventSummary(), w);
+    int singleEventPayloadBytes = w.toString().length();
+
+    // room for two events but not three
+    List<EventOutputFormatter.OutputPayload> payloads = f.writeOutputPayloads(events, new EventSummary(),
+        singleEventPayloadBytes * 2);
+    assertEquals(2, payloads.size());
+    assertEquals(2, payloads.get(0).eventCount);
+    assertEquals(1, payloads.get(1).eventCount);
+    for (EventOutputFormatter.OutputPayload p: payloads) {
+      assertThat(p.json.length, lessThanOrEqualTo(singleEventPayloadBytes * 2));
+      assertEquals(p.eventCount, parseValue(new String(p.json, Charsets.UTF_8)).size());
+    }
+  }
+
+  @Test
+  public void eventLargerThanSizeLimitIsSentByItself() throws Exception {
+    EventOutputFormatter f = new EventOutputFormatter(new LDConfig.Builder().build());
+    LDUser user = new LDUser("userkey");
+    Event[] events = new Event[] {
+        EventFactory.DEFAULT.newIdentifyEvent(user),
+        EventFactory.DEFAULT.newIdentifyEvent(user)
+    };
+    List<EventOutputFormatter.OutputPayload> payloads = f.writeOutputPayloads(events, new EventSummary(), 10);
+    assertEquals(2, payloads.size());
+    assertEquals(1, parseValue(new String(payloads.get(0).json, Charsets.UTF_8)).size());
+    assertEquals(1, parseValue(new String(payloads.get(1).json, Charsets.UTF_8)).size());
+  }
+
+  @Test
+  public void utf8OutputIsIdenticalToGsonOutput() throws Exception {
+    EventFactory factory = eventFactoryWithTimestamp(100000, true);
+    FeatureFlag flag = new FeatureFlagBuilder("flag \"\u00e9\u2028<\ud83d\ude00").version(11).build();
+    LDUser user = new LDUser.Builder("user\tkey").name("m\u00e9 <me>").custom("n", 1.5).build();
+    LDValue data = LDValue.buildObject().put("a", "\u20ac&").put("b", -3).put("c", true).build();
+    Event.FeatureRequest fe = factory.newFeatureRequestEvent(flag, user,
+        new EvaluationDetail<LDValue>(EvaluationReason.ruleMatch(1, "id"), 1, LDValue.of(2.25)),
+        LDValue.of("defaultvalue"));
+    Event[] events = new Event[] {
+        factory.newIdentifyEvent(user),
+        new Event.Index(-1, user),
+        fe,
+        factory.newDebugEvent(fe),
+        factory.newUnknownFeatureRequestEvent("unknown", user, LDValue.of(false),
+            EvaluationReason.ErrorKind.FLAG_NOT_FOUND),
+        factory.newCustomEvent("custom\n", user, data, 1.5),
+        factory.newCustomEvent("custom", user, LDValue.ofNull(), null)
+    };
+    EventSummary summary = new EventSummary();
+    summary.incrementCounter(flag.getKey(), 1, 11, LDValue.of(2.25), LDValue.of("defaultvalue"));
+    summary.incrementCounter("unknown", null, null, LDValue.of(false), LDValue.of(false));
+    summary.noteTimestamp(Long.MAX_VALUE);
+
+    for (LDConfig config: new LDConfig[] { LDConfig.DEFAULT, new LDConfig.Builder().inlineUsersInEvents(true).build() }) {
+      EventOutputFormatter f = new EventOutputFormatter(config);
+      StringWriter w = new StringWriter();
+      int count = f.writeOutputEvents(events, summary, w);
+      EventOutputFormatter.OutputPayload p = f.writeOutputPayload(events, summary);
+      assertEquals(count, p.eventCount);
+      assertArrayEquals(w.toString().getBytes(Charsets.UTF_8), p.json);
+    }
+  }
+  
   private LDValue parseValue(String json) {
     return gson.fromJson(json, LDValue.class);
   }
@@ -0,0 +1,138 @@
+package com.launchdarkly.client;
+
+import com.google.common.base.Charsets;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("javadoc")
+public class EventSpoolTest {
+  private static final String SDK_KEY = "SDK_KEY";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File dir;
+
+  @Before
+  public void setup() throws Exception {
+    dir = tempFolder.newFolder();
+  }
+
+  @Test
+  public void emptySpoolHasNoPayloads() throws Exception {
+    EventSpool spool = new EventSpool(dir, SDK_KEY, 1000);
+    assertTrue(spool.isEmpty());
+    assertThat(spool.peek(), nullValue());
+  }
+
+  @Test
+  public void payloadsAreReturnedInOrder() throws Exception {
+    EventSpool spool = new EventSpool(dir, SDK_KEY, 1000);
+    spool.add("id1", bytes("[1]"));
+    spool.add("id2", bytes("[2]"));
+
+    EventSpool.SpooledPayload p1 = spool.peek();
+    assertThat(p1.payloadId, equalTo("id1"));
+    assertThat(new String(p1.json, Charsets.UTF_8), equalTo("[1]"));
+    spool.remove(p1);
+
+    EventSpool.SpooledPayload p2 = spool.peek();
+    assertThat(p2.payloadId, equalTo("id2"));
+    assertThat(new String(p2.json, Charsets.UTF_8), equalTo("[2]"));
+    spool.remove(p2);
+
+    assertTrue(spool.isEmpty());
+  }
+
+  @Test
+  public void payloadsSurviveReopening() throws Exception {
+    EventSpool spool1 = new EventSpool(dir, SDK_KEY, 1000);
+    spool1.add("id1", bytes("[1]"));
+    spool1.add("id2", bytes("[2]"));
+    spool1.close();
+
+    EventSpool spool2 = new EventSpool(dir, SDK_KEY, 1000);
+    assertThat(spool2.size(), equalTo(2));
+    assertThat(spool2.totalBytes(), equalTo(6L));
+    assertThat(spool2.peek().payloadId, equalTo("id1"));
+  }
+
+  @Test
+  public void differentSdkKeysUseSeparateSpools() throws Exception {
+    EventSpool spool1 = new EventSpool(dir, SDK_KEY, 1000);
+    spool1.add("id1", bytes("[1]"));
+
+    EventSpool spool2 = new EventSpool(dir, "OTHER_KEY", 1000);
+    assertTrue(spool2.isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void sameSdkKeyAndDirectoryCannotBeOpenedTwice() throws Exception {
+    new EventSpool(dir, SDK_KEY, 1000);
+    new EventSpool(dir, SDK_KEY, 1000);
+  }
+
+  @Test
+  public void closedSpoolDoesNotStorePayloads() throws Exception {
+    EventSpool spool = new EventSpool(dir, SDK_KEY, 1000);
+    spool.close();
+    assertFalse(spool.add("id1", bytes("[1]")));
+
+    try (EventSpool spool2 = new EventSpool(dir, SDK_KEY, 1000)) {
+      assertTrue(spool2.isEmpty());
+    }
+  }
+
+  @Test
+  public void oldestPayloadsAreDiscardedWhenSizeCapIsExceeded() throws Exception {
+    EventSpool spool = new EventSpool(dir, SDK_KEY, 10);
+    spool.add("id1", bytes("[1111]"));
+    spool.add("id2", bytes("[2222]"));
+
+    assertThat(spool.size(), equalTo(1));
+    assertThat(spool.peek().payloadId, equalTo("id2"));
+  }
+
+  @Test
+  public void payloadLargerThanSpoolIsRejected() throws Exception {
+    EventSpool spool = new EventSpool(dir, SDK_KEY, 3);
+    assertFalse(spool.add("id1", bytes("[1111]")));
+    assertTrue(spool.isEmpty());
+  }
+
+  @Test
+  public void replayBacksOffAfterFailure() throws Exception {
+    EventSpool spool = new EventSpool(dir, SDK_KEY, 1000);
+    spool.add("id1", bytes("[1]"));
+
+    assertTrue(spool.beginReplay(0));
+    assertFalse(spool.beginReplay(0)); // already replaying
+    spool.endReplay(false, 0);
+
+    assertFalse(spool.beginReplay(500));
+    assertTrue(spool.beginReplay(1000));
+    spool.endReplay(false, 1000);
+
+    assertFalse(spool.beginReplay(2999));
+    assertTrue(spool.beginReplay(3000));
+    spool.endReplay(true, 3000);
+
+    assertTrue(spool.beginReplay(3000));
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(Charsets.UTF_8);
+  }
+}
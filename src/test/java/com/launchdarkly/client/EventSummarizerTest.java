@@ -99,4 +99,68 @@ public class EventSummarizerTest {
         new EventSummarizer.CounterValue(1, LDValue.of("default3"), LDValue.of("default3")));
     assertThat(data.counters, equalTo(expected));
   }
+  
+  @Test
+  public void overflowCountsAreMergedIntoSummary() {
+    EventSummarizer es = new EventSummarizer();
+    OverflowEventSummarizer overflow = new OverflowEventSummarizer();
+    FeatureFlag flag = new FeatureFlagBuilder("key1").version(11).build();
+    eventTimestamp = 1000;
+    es.summarizeEvent(eventFactory.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value1")), LDValue.of("default1")));
+    eventTimestamp = 2000;
+    overflow.summarizeEvent(eventFactory.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value1")), LDValue.of("default1")));
+    eventTimestamp = 500;
+    overflow.summarizeEvent(eventFactory.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value1")), LDValue.of("default1")));
+    overflow.summarizeEvent(eventFactory.newIdentifyEvent(user));
+    
+    overflow.drainTo(es);
+    EventSummarizer.EventSummary data = es.snapshot();
+    
+    Map<EventSummarizer.CounterKey, EventSummarizer.CounterValue> expected = new HashMap<>();
+    expected.put(new EventSummarizer.CounterKey(flag.getKey(), 1, flag.getVersion()),
+        new EventSummarizer.CounterValue(3, LDValue.of("value1"), LDValue.of("default1")));
+    assertThat(data.counters, equalTo(expected));
+    assertEquals(500, data.startDate);
+    assertEquals(2000, data.endDate);
+  }
+  
+  @Test
+  public void overflowCountsAreOnlyMergedOnce() {
+    EventSummarizer es = new EventSummarizer();
+    OverflowEventSummarizer overflow = new OverflowEventSummarizer();
+    FeatureFlag flag = new FeatureFlagBuilder("key1").version(11).build();
+    overflow.summarizeEvent(eventFactory.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value1")), LDValue.of("default1")));
+    overflow.drainTo(es);
+    es.clear();
+    
+    overflow.drainTo(es);
+    assertEquals(true, es.snapshot().isEmpty());
+  }
+  
+  @Test
+  public void idleOverflowCountersAreRemovedWithoutLosingLaterCounts() {
+    EventSummarizer es = new EventSummarizer();
+    OverflowEventSummarizer overflow = new OverflowEventSummarizer();
+    FeatureFlag flag = new FeatureFlagBuilder("key1").version(11).build();
+    overflow.summarizeEvent(eventFactory.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value1")), LDValue.of("default1")));
+    overflow.drainTo(es);
+    assertEquals(1, overflow.size());
+    
+    overflow.drainTo(es);
+    assertEquals(0, overflow.size());
+    
+    es.clear();
+    overflow.summarizeEvent(eventFactory.newFeatureRequestEvent(flag, user,
+        simpleEvaluation(1, LDValue.of("value1")), LDValue.of("default1")));
+    overflow.drainTo(es);
+    Map<EventSummarizer.CounterKey, EventSummarizer.CounterValue> expected = new HashMap<>();
+    expected.put(new EventSummarizer.CounterKey(flag.getKey(), 1, flag.getVersion()),
+        new EventSummarizer.CounterValue(1, LDValue.of("value1"), LDValue.of("default1")));
+    assertThat(es.snapshot().counters, equalTo(expected));
+  }
 }
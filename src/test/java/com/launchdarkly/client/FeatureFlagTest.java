@@ -3,12 +3,18 @@ package com.launchdarkly.client;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.launchdarkly.client.utils.CachingStoreWrapper;
+import com.launchdarkly.client.utils.MultiGetFeatureStoreCore;
 import com.launchdarkly.client.value.LDValue;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.launchdarkly.client.EvaluationDetail.fromValue;
 import static com.launchdarkly.client.TestUtil.booleanFlagWithClauses;
@@ -526,6 +532,44 @@ public class FeatureFlagTest {
     assertEquals(LDValue.of(false), result.getDetails().getValue());
   }
  
+  @Test
+  public void prerequisitesAndSegmentsAreReadInOneBatchPerKind() throws Exception {
+    MultiGetCore core = new MultiGetCore();
+    for (String key: new String[] { "feature1", "feature2" }) {
+      core.put(FEATURES, new FeatureFlagBuilder(key)
+          .on(true)
+          .fallthrough(fallthroughVariation(1))
+          .variations(LDValue.of(false), LDValue.of(true))
+          .build());
+    }
+    core.put(SEGMENTS, new Segment.Builder("segment1").included(Arrays.asList("other")).build());
+    core.put(SEGMENTS, new Segment.Builder("segment2").included(Arrays.asList(BASE_USER.getKeyAsString())).build());
+    Clause clause = new Clause("", Operator.segmentMatch, Arrays.asList(LDValue.of("segment1"), LDValue.of("segment2")), false);
+    FeatureFlag f0 = new FeatureFlagBuilder("feature0")
+        .on(true)
+        .prerequisites(Arrays.asList(new Prerequisite("feature1", 1), new Prerequisite("feature2", 1)))
+        .rules(Arrays.asList(new Rule("rule", Arrays.asList(clause), 1, null)))
+        .fallthrough(fallthroughVariation(0))
+        .offVariation(0)
+        .variations(LDValue.of(false), LDValue.of(true))
+        .build();
+    FeatureStore store = new FeatureStoreClientWrapper(CachingStoreWrapper.builder(core)
+        .caching(FeatureStoreCacheConfig.enabled().ttlSeconds(30)).build());
+
+    FeatureFlag.EvalResult result = f0.evaluate(BASE_USER, store, EventFactory.DEFAULT);
+    assertEquals(fromValue(LDValue.of(true), 1, EvaluationReason.ruleMatch(0, "rule")), result.getDetails());
+    assertEquals(2, result.getPrerequisiteEvents().size());
+    assertEquals(Integer.valueOf(1), core.getManyCalls.get(FEATURES));
+    assertEquals(Integer.valueOf(1), core.getManyCalls.get(SEGMENTS));
+    assertEquals(0, core.getCalls);
+
+    // once everything is cached, evaluating again does not read from the core at all
+    f0.evaluate(BASE_USER, store, EventFactory.DEFAULT);
+    assertEquals(Integer.valueOf(1), core.getManyCalls.get(FEATURES));
+    assertEquals(Integer.valueOf(1), core.getManyCalls.get(SEGMENTS));
+    assertEquals(0, core.getCalls);
+  }
+
   private FeatureFlag featureFlagWithRules(String flagKey, Rule... rules) {
     return new FeatureFlagBuilder(flagKey)
         .on(true)
@@ -540,4 +584,59 @@ public class FeatureFlagTest {
     Clause clause = new Clause("", Operator.segmentMatch, Arrays.asList(LDValue.of(segmentKey)), false);
     return booleanFlagWithClauses("flag", clause);
   }
+
+  private static class MultiGetCore implements MultiGetFeatureStoreCore {
+    final Map<VersionedDataKind<?>, Map<String, VersionedData>> data = new HashMap<>();
+    final Map<VersionedDataKind<?>, Integer> getManyCalls = new HashMap<>();
+    int getCalls;
+
+    void put(VersionedDataKind<?> kind, VersionedData item) {
+      if (!data.containsKey(kind)) {
+        data.put(kind, new HashMap<String, VersionedData>());
+      }
+      data.get(kind).put(item.getKey(), item);
+    }
+
+    @Override
+    public VersionedData getInternal(VersionedDataKind<?> kind, String key) {
+      getCalls++;
+      return data.containsKey(kind) ? data.get(kind).get(key) : null;
+    }
+
+    @Override
+    public Map<String, VersionedData> getManyInternal(VersionedDataKind<?> kind, Collection<String> keys) {
+      getManyCalls.put(kind, getManyCalls.containsKey(kind) ? getManyCalls.get(kind) + 1 : 1);
+      Map<String, VersionedData> ret = new HashMap<>();
+      for (String key: keys) {
+        if (data.containsKey(kind) && data.get(kind).containsKey(key)) {
+          ret.put(key, data.get(kind).get(key));
+        }
+      }
+      return ret;
+    }
+
+    @Override
+    public Map<String, VersionedData> getAllInternal(VersionedDataKind<?> kind) {
+      return data.get(kind);
+    }
+
+    @Override
+    public void initInternal(Map<VersionedDataKind<?>, Map<String, VersionedData>> allData) {
+      data.putAll(allData);
+    }
+
+    @Override
+    public VersionedData upsertInternal(VersionedDataKind<?> kind, VersionedData item) {
+      put(kind, item);
+      return item;
+    }
+
+    @Override
+    public boolean initializedInternal() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {}
+  }
 }
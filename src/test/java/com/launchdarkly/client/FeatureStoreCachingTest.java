@@ -91,6 +91,29 @@ public class FeatureStoreCachingTest {
     assertThat(fsc.getCacheTimeUnit(), equalTo(TimeUnit.MILLISECONDS));
   }
   
+  @Test
+  public void canSetJitterAndRefreshAhead() {
+    FeatureStoreCacheConfig fsc = FeatureStoreCacheConfig.enabled()
+        .ttlJitter(0.2)
+        .refreshAhead(2)
+        .refreshThreads(0);
+    assertThat(fsc.getTtlJitter(), equalTo(0.2));
+    assertThat(fsc.getRefreshAhead(), equalTo(1.0));
+    assertThat(fsc.getRefreshThreads(), equalTo(1));
+    assertThat(fsc.equals(FeatureStoreCacheConfig.enabled().ttlJitter(0.2).refreshAhead(1)), equalTo(true));
+    assertThat(fsc.equals(FeatureStoreCacheConfig.enabled().ttlJitter(0.2)), equalTo(false));
+  }
+  
+  @Test
+  public void canSetMaximumStalenessAndCircuitBreaker() {
+    FeatureStoreCacheConfig fsc = FeatureStoreCacheConfig.enabled()
+        .maximumStaleness(5, TimeUnit.MINUTES)
+        .circuitBreaker(10, TimeUnit.SECONDS);
+    assertThat(fsc.getMaximumStalenessMillis(), equalTo(300000L));
+    assertThat(fsc.getCircuitBreakerMillis(), equalTo(10000L));
+    assertThat(fsc.equals(FeatureStoreCacheConfig.enabled().maximumStaleness(5, TimeUnit.MINUTES)), equalTo(false));
+  }
+  
   @Test
   public void equalityUsesTime() {
     FeatureStoreCacheConfig fsc1 = FeatureStoreCacheConfig.enabled().ttlMillis(3);
@@ -117,4 +140,21 @@ public class FeatureStoreCachingTest {
     assertThat(fsc1.equals(fsc2), equalTo(true));
     assertThat(fsc1.equals(fsc3), equalTo(false));
   }
+
+  @Test(expected = IllegalStateException.class)
+  public void cannotSetMaximumWeightAfterMaximumSize() {
+    FeatureStoreCacheConfig.enabled().maximumSize(100).maximumWeight(10000);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cannotSetMaximumSizeAfterMaximumWeight() {
+    FeatureStoreCacheConfig.enabled().maximumWeight(10000).maximumSize(100);
+  }
+
+  @Test
+  public void canReplaceMaximumSizeWithMaximumWeight() {
+    FeatureStoreCacheConfig fsc = FeatureStoreCacheConfig.enabled().maximumSize(100).maximumSize(0).maximumWeight(10000);
+    assertThat(fsc.getMaximumSize(), equalTo(0L));
+    assertThat(fsc.getMaximumWeight(), equalTo(10000L));
+  }
 }
@@ -0,0 +1,142 @@
+package com.launchdarkly.client;
+
+import com.launchdarkly.client.utils.FeatureStoreCore;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.launchdarkly.client.VersionedDataKind.FEATURES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("javadoc")
+public class FeatureStoreMirrorTest {
+  @Test
+  public void itemAppliedWhileLoadingIsNotOverwrittenByLoadedData() throws Exception {
+    final FeatureFlag flag = new FeatureFlagBuilder("flag").version(1).build();
+    final FeatureFlag newerFlag = new FeatureFlagBuilder("flag").version(2).build();
+    final BlockingCore core = new BlockingCore();
+    core.data.put(flag.getKey(), flag);
+
+    try (final FeatureStoreMirror mirror = new FeatureStoreMirror(core, 3600000)) {
+      Thread loader = new Thread(new Runnable() {
+        public void run() {
+          mirror.start(); // the first load is done on this thread
+        }
+      });
+      loader.start();
+      assertTrue(core.loadStarted.await(1, TimeUnit.SECONDS));
+
+      // the load has already read version 1 when version 2 is written to the store and applied
+      core.data.put(newerFlag.getKey(), newerFlag);
+      mirror.apply(FEATURES, newerFlag);
+      core.releaseLoad.countDown();
+      loader.join(1000);
+
+      assertEquals(2, mirror.get(FEATURES, flag.getKey()).getVersion());
+    }
+  }
+
+  @Test
+  public void olderItemAppliedWhileLoadingDoesNotReplaceLoadedData() throws Exception {
+    final FeatureFlag flag = new FeatureFlagBuilder("flag").version(2).build();
+    final FeatureFlag olderFlag = new FeatureFlagBuilder("flag").version(1).build();
+    final BlockingCore core = new BlockingCore();
+    core.data.put(flag.getKey(), flag);
+
+    try (final FeatureStoreMirror mirror = new FeatureStoreMirror(core, 3600000)) {
+      Thread loader = new Thread(new Runnable() {
+        public void run() {
+          mirror.start();
+        }
+      });
+      loader.start();
+      assertTrue(core.loadStarted.await(1, TimeUnit.SECONDS));
+
+      mirror.apply(FEATURES, olderFlag);
+      core.releaseLoad.countDown();
+      loader.join(1000);
+
+      assertEquals(2, mirror.get(FEATURES, flag.getKey()).getVersion());
+    }
+  }
+
+  @Test
+  public void replacedDataIsServedAtOnceAndNotOverwrittenByLoadInProgress() throws Exception {
+    final FeatureFlag flag = new FeatureFlagBuilder("flag").version(1).build();
+    final FeatureFlag newFlag = new FeatureFlagBuilder("newflag").version(1).build();
+    final BlockingCore core = new BlockingCore();
+    core.data.put(flag.getKey(), flag);
+
+    try (final FeatureStoreMirror mirror = new FeatureStoreMirror(core, 3600000)) {
+      Thread loader = new Thread(new Runnable() {
+        public void run() {
+          mirror.start();
+        }
+      });
+      loader.start();
+      assertTrue(core.loadStarted.await(1, TimeUnit.SECONDS));
+
+      Map<String, VersionedData> flags = new HashMap<>();
+      flags.put(newFlag.getKey(), newFlag);
+      Map<VersionedDataKind<?>, Map<String, ? extends VersionedData>> allData = new HashMap<>();
+      allData.put(FEATURES, flags);
+      mirror.replaceAll(allData);
+      assertTrue(mirror.initialized());
+      assertEquals(1, mirror.get(FEATURES, newFlag.getKey()).getVersion());
+
+      core.releaseLoad.countDown();
+      loader.join(1000);
+
+      assertEquals(1, mirror.get(FEATURES, newFlag.getKey()).getVersion());
+      assertNull(mirror.get(FEATURES, flag.getKey()));
+    }
+  }
+
+  // Returns a copy of the flags that it holds when the load starts, but only after releaseLoad is counted down.
+  private static class BlockingCore implements FeatureStoreCore {
+    final Map<String, VersionedData> data = new HashMap<>();
+    final CountDownLatch loadStarted = new CountDownLatch(1);
+    final CountDownLatch releaseLoad = new CountDownLatch(1);
+
+    @Override
+    public VersionedData getInternal(VersionedDataKind<?> kind, String key) {
+      return kind == FEATURES ? data.get(key) : null;
+    }
+
+    @Override
+    public synchronized Map<String, VersionedData> getAllInternal(VersionedDataKind<?> kind) {
+      if (kind != FEATURES) {
+        return new HashMap<>();
+      }
+      Map<String, VersionedData> ret = new HashMap<>(data);
+      loadStarted.countDown();
+      try {
+        releaseLoad.await();
+      } catch (InterruptedException e) {}
+      return ret;
+    }
+
+    @Override
+    public void initInternal(Map<VersionedDataKind<?>, Map<String, VersionedData>> allData) {}
+
+    @Override
+    public VersionedData upsertInternal(VersionedDataKind<?> kind, VersionedData item) {
+      return item;
+    }
+
+    @Override
+    public boolean initializedInternal() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {}
+  }
+}
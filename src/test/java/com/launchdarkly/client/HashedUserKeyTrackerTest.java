@@ -0,0 +1,84 @@
+package com.launchdarkly.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("javadoc")
+public class HashedUserKeyTrackerTest {
+  @Test
+  public void newKeyIsNotKnown() {
+    HashedUserKeyTracker tracker = new HashedUserKeyTracker(10, 0.001);
+    assertFalse(tracker.noticeUser("a"));
+  }
+  
+  @Test
+  public void repeatedKeyIsKnown() {
+    HashedUserKeyTracker tracker = new HashedUserKeyTracker(10, 0.001);
+    tracker.noticeUser("a");
+    assertTrue(tracker.noticeUser("a"));
+  }
+  
+  @Test
+  public void clearForgetsKeys() {
+    HashedUserKeyTracker tracker = new HashedUserKeyTracker(10, 0.001);
+    tracker.noticeUser("a");
+    tracker.clear();
+    assertFalse(tracker.noticeUser("a"));
+  }
+  
+  @Test
+  public void zeroCapacityTreatsKeysAsNew() {
+    HashedUserKeyTracker tracker = new HashedUserKeyTracker(0, 0.001);
+    tracker.noticeUser("a");
+    assertFalse(tracker.noticeUser("a"));
+  }
+  
+  @Test
+  public void fingerprintWidthDependsOnFalsePositiveRate() {
+    assertEquals(16, HashedUserKeyTracker.fingerprintBitsForRate(0.001));
+    assertEquals(32, HashedUserKeyTracker.fingerprintBitsForRate(0.00001));
+    assertEquals(64, HashedUserKeyTracker.fingerprintBitsForRate(1e-12));
+  }
+  
+  @Test
+  public void tableSizeIsFixedByCapacity() {
+    HashedUserKeyTracker tracker = new HashedUserKeyTracker(1000, 0.001);
+    assertEquals(2048, tracker.getSlotCount());
+  }
+  
+  @Test
+  public void allKeysWithinCapacityAreRemembered() {
+    for (double rate: new double[] { 0.001, 0.00001, 1e-12 }) {
+      HashedUserKeyTracker tracker = new HashedUserKeyTracker(1000, rate);
+      for (int i = 0; i < 1000; i++) {
+        tracker.noticeUser("user" + i);
+      }
+      int known = 0;
+      for (int i = 0; i < 1000; i++) {
+        if (tracker.noticeUser("user" + i)) {
+          known++;
+        }
+      }
+      // a few keys may have been displaced by full probe sequences, but that should be rare
+      assertTrue("rate " + rate + ": " + known, known >= 990);
+    }
+  }
+  
+  @Test
+  public void falsePositivesAreRare() {
+    HashedUserKeyTracker tracker = new HashedUserKeyTracker(10000, 0.001);
+    for (int i = 0; i < 10000; i++) {
+      tracker.noticeUser("user" + i);
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (tracker.noticeUser("other" + i)) {
+        falsePositives++;
+      }
+    }
+    assertTrue("false positives: " + falsePositives, falsePositives <= 10);
+  }
+}
@@ -0,0 +1,70 @@
+package com.launchdarkly.client;
+
+import com.launchdarkly.client.value.LDValue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("javadoc")
+public class MetricEventAggregatorTest {
+  private static final LDUser user1 = new LDUser("user1");
+  private static final LDUser user2 = new LDUser("user2");
+  
+  @Test
+  public void nonMetricEventsAreNotAggregated() {
+    MetricEventAggregator agg = new MetricEventAggregator(0);
+    assertFalse(agg.add(EventFactory.DEFAULT.newIdentifyEvent(user1)));
+    assertFalse(agg.add(new Event.Custom(1000, "key", user1, null, null)));
+    assertFalse(agg.add(new Event.Custom(1000, "key", user1, LDValue.of("data"), 1.0)));
+    assertTrue(agg.isEmpty());
+  }
+  
+  @Test
+  public void metricEventsAreAggregatedPerKeyAndUser() {
+    MetricEventAggregator agg = new MetricEventAggregator(0);
+    assertTrue(agg.add(new Event.Custom(1000, "key", user1, null, 2.0)));
+    assertTrue(agg.add(new Event.Custom(2000, "key", user1, null, 8.0)));
+    assertTrue(agg.add(new Event.Custom(1500, "key", user2, null, 3.0)));
+    assertTrue(agg.add(new Event.Custom(1500, "otherkey", user1, null, 4.0)));
+    
+    List<Event.Custom> events = agg.drain();
+    assertEquals(3, events.size());
+    
+    Event.Custom e = events.get(0);
+    assertEquals("key", e.key);
+    assertEquals(user1, e.user);
+    assertEquals(2000, e.creationDate);
+    assertEquals(10.0, e.metricValue, 0);
+    LDValue aggregate = e.data.get("aggregate");
+    assertEquals(2, aggregate.get("count").intValue());
+    assertEquals(10.0, aggregate.get("sum").doubleValue(), 0);
+    assertEquals(2.0, aggregate.get("min").doubleValue(), 0);
+    assertEquals(8.0, aggregate.get("max").doubleValue(), 0);
+    LDValue counts = aggregate.get("histogram").get("counts");
+    assertEquals(MetricEventAggregator.HISTOGRAM_BUCKET_BOUNDS.length + 1, counts.size());
+    assertEquals(1, counts.get(2).intValue()); // 2.0 is in (1, 5]
+    assertEquals(1, counts.get(3).intValue()); // 8.0 is in (5, 10]
+    
+    assertEquals(user2, events.get(1).user);
+    assertEquals("otherkey", events.get(2).key);
+    assertTrue(agg.isEmpty());
+  }
+  
+  @Test
+  public void usersAreGroupedIntoBuckets() {
+    MetricEventAggregator agg = new MetricEventAggregator(1);
+    agg.add(new Event.Custom(1000, "key", user1, null, 2.0));
+    agg.add(new Event.Custom(1000, "key", user2, null, 3.0));
+    
+    List<Event.Custom> events = agg.drain();
+    assertEquals(1, events.size());
+    assertEquals(user1, events.get(0).user);
+    assertEquals(5.0, events.get(0).metricValue, 0);
+    assertEquals(0, events.get(0).data.get("aggregate").get("userBucket").intValue());
+  }
+}
@@ -4,6 +4,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -47,6 +48,39 @@ public class PollingProcessorTest {
     }
   }
 
+  @Test
+  public void slowPollDoesNotHoldUpAnotherClientSharingTheRuntime() throws Exception {
+    final CountDownLatch releaseSlowPoll = new CountDownLatch(1);
+    MockFeatureRequestor slowRequestor = new MockFeatureRequestor() {
+      @Override
+      public AllData getAllData() throws IOException, HttpErrorException {
+        try {
+          releaseSlowPoll.await();
+        } catch (InterruptedException e) {}
+        return super.getAllData();
+      }
+    };
+    slowRequestor.allData = new FeatureRequestor.AllData(new HashMap<String, FeatureFlag>(), new HashMap<String, Segment>());
+    MockFeatureRequestor requestor = new MockFeatureRequestor();
+    requestor.allData = new FeatureRequestor.AllData(new HashMap<String, FeatureFlag>(), new HashMap<String, Segment>());
+
+    try (LDClientRuntime runtime = new LDClientRuntime.Builder().pollWorkers(2).build()) {
+      LDConfig config = new LDConfig.Builder().runtime(runtime).build();
+      try (PollingProcessor slowProcessor = new PollingProcessor(config, slowRequestor, new InMemoryFeatureStore());
+           PollingProcessor pollingProcessor = new PollingProcessor(config, requestor, new InMemoryFeatureStore())) {
+        Future<Void> slowInitFuture = slowProcessor.start();
+        Future<Void> initFuture = pollingProcessor.start();
+        initFuture.get(1000, TimeUnit.MILLISECONDS);
+        assertTrue(pollingProcessor.initialized());
+        assertFalse(slowProcessor.initialized());
+
+        releaseSlowPoll.countDown();
+        slowInitFuture.get(1000, TimeUnit.MILLISECONDS);
+        assertTrue(slowProcessor.initialized());
+      }
+    }
+  }
+
   @Test
   public void http400ErrorIsRecoverable() throws Exception {
     testRecoverableHttpError(400);
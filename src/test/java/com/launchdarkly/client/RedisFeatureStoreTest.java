@@ -1,15 +1,30 @@
 package com.launchdarkly.client;
 
+import com.google.common.base.Charsets;
 import com.launchdarkly.client.RedisFeatureStore.UpdateListener;
+import com.launchdarkly.client.TestUtil.DataBuilder;
 
 import org.junit.Assume;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import static com.launchdarkly.client.VersionedDataKind.FEATURES;
+import static com.launchdarkly.client.VersionedDataKind.SEGMENTS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
 
 public class RedisFeatureStoreTest extends FeatureStoreDatabaseTestBase<RedisFeatureStore> {
 
@@ -54,4 +69,218 @@ public class RedisFeatureStoreTest extends FeatureStoreDatabaseTestBase<RedisFea
     });
     return true;
   }
+  
+  @Test
+  public void initRewritesItemsWhoseStoredDataDiffersAndDeletesUnknownItems() throws Exception {
+    clearAllData();
+    try (RedisFeatureStore uncachedStore = makeStoreWithPrefix("diff")) {
+      uncachedStore.init(new DataBuilder().add(FEATURES, feature1, feature2).add(SEGMENTS, segment1).build());
+      try (Jedis client = new Jedis("localhost")) {
+        client.hset("diff:features", feature1.getKey(), "{\"key\":\"foo\",\"version\":99}");
+        client.hset("diff:features", "extra", "{\"key\":\"extra\",\"version\":1}");
+      }
+      
+      uncachedStore.init(new DataBuilder().add(FEATURES, feature1, feature2).add(SEGMENTS, segment1).build());
+      
+      assertEquals(feature1.getVersion(), uncachedStore.get(FEATURES, feature1.getKey()).getVersion());
+      assertEquals(feature2.getVersion(), uncachedStore.get(FEATURES, feature2.getKey()).getVersion());
+      assertEquals(segment1.getVersion(), uncachedStore.get(SEGMENTS, segment1.getKey()).getVersion());
+      assertNull(uncachedStore.get(FEATURES, "extra"));
+    }
+  }
+  
+  @Test
+  public void cachedItemIsInvalidatedWhenAnotherStoreUpdatesIt() throws Exception {
+    clearAllData();
+    RedisFeatureStoreBuilder builder = new RedisFeatureStoreBuilder(REDIS_URI).prefix("pubsub")
+        .caching(FeatureStoreCacheConfig.enabled().ttlSeconds(3600)).cacheInvalidation(true);
+    try (RedisFeatureStore writer = builder.build(); RedisFeatureStore reader = builder.build()) {
+      writer.init(new DataBuilder().add(FEATURES, feature1, feature2).build());
+      assertEquals(feature1.getVersion(), reader.get(FEATURES, feature1.getKey()).getVersion());
+      
+      FeatureFlag feature1v2 = new FeatureFlagBuilder(feature1).version(feature1.getVersion() + 1).build();
+      writer.upsert(FEATURES, feature1v2);
+      
+      long deadline = System.currentTimeMillis() + 5000;
+      while (reader.get(FEATURES, feature1.getKey()).getVersion() != feature1v2.getVersion() &&
+          System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(feature1v2.getVersion(), reader.get(FEATURES, feature1.getKey()).getVersion());
+    }
+  }
+  
+  @Test
+  public void allReadsEveryItemWhenScanningInBatches() throws Exception {
+    clearAllData();
+    try (RedisFeatureStore scanningStore = new RedisFeatureStoreBuilder(REDIS_URI).prefix("scan")
+        .caching(FeatureStoreCacheConfig.disabled()).scanBatchSize(1).build()) {
+      scanningStore.init(new DataBuilder().add(FEATURES, feature1, feature2).add(SEGMENTS, segment1).build());
+      
+      Map<String, FeatureFlag> items = scanningStore.all(FEATURES);
+      assertEquals(2, items.size());
+      assertEquals(feature1.getVersion(), items.get(feature1.getKey()).getVersion());
+      assertEquals(feature2.getVersion(), items.get(feature2.getKey()).getVersion());
+    }
+  }
+  
+  @Test
+  public void compressedAndUncompressedItemsCanBeMixed() throws Exception {
+    clearAllData();
+    RedisFeatureStoreBuilder builder = new RedisFeatureStoreBuilder(REDIS_URI).prefix("codec")
+        .caching(FeatureStoreCacheConfig.disabled());
+    try (RedisFeatureStore plainStore = builder.build();
+        RedisFeatureStore compressingStore = builder.compressValues(true).build()) {
+      plainStore.init(new DataBuilder().add(FEATURES, feature1).build());
+      FeatureFlag feature2v2 = new FeatureFlagBuilder(feature2).version(feature2.getVersion() + 1).build();
+      compressingStore.upsert(FEATURES, feature2v2);
+      
+      assertEquals(feature1.getVersion(), compressingStore.get(FEATURES, feature1.getKey()).getVersion());
+      assertEquals(feature2v2.getVersion(), plainStore.get(FEATURES, feature2.getKey()).getVersion());
+      assertEquals(2, plainStore.all(FEATURES).size());
+      
+      // the version check in the upsert script must work for compressed items too
+      plainStore.upsert(FEATURES, feature2);
+      assertEquals(feature2v2.getVersion(), compressingStore.get(FEATURES, feature2.getKey()).getVersion());
+    }
+  }
+  
+  @Test
+  public void upsertScriptWritesItemWhoseKeyIsMissing() throws Exception {
+    clearAllData();
+    FeatureFlag flag = new FeatureFlagBuilder("flag").version(5).build();
+    try (RedisFeatureStore.Core core = makeCore("upsert", RedisValueCodec.JSON)) {
+      VersionedData result = core.upsertInternal(FEATURES, flag);
+      
+      assertSame(flag, result);
+      assertEquals(5, core.getInternal(FEATURES, "flag").getVersion());
+    }
+  }
+  
+  @Test
+  public void upsertScriptReadsVersionOfPlainValueFromJson() throws Exception {
+    clearAllData();
+    FeatureFlag flag = new FeatureFlagBuilder("flag").version(5).build();
+    try (RedisFeatureStore.Core plainCore = makeCore("upsert", RedisValueCodec.JSON);
+        RedisFeatureStore.Core compressingCore = makeCore("upsert", RedisValueCodec.DEFLATE)) {
+      plainCore.upsertInternal(FEATURES, flag);
+      byte[] storedValue = getRawValue("upsert:features", "flag");
+      
+      for (int version: new int[] { 4, 5 }) {
+        VersionedData result = compressingCore.upsertInternal(FEATURES, new FeatureFlagBuilder(flag).version(version).build());
+        assertEquals(5, result.getVersion());
+        assertArrayEquals(storedValue, getRawValue("upsert:features", "flag"));
+      }
+      
+      FeatureFlag newerFlag = new FeatureFlagBuilder(flag).version(6).build();
+      assertSame(newerFlag, compressingCore.upsertInternal(FEATURES, newerFlag));
+      assertEquals(6, plainCore.getInternal(FEATURES, "flag").getVersion());
+    }
+  }
+  
+  @Test
+  public void upsertScriptReadsVersionOfCompressedValueFromHeader() throws Exception {
+    clearAllData();
+    FeatureFlag flag = new FeatureFlagBuilder("flag").version(5).build();
+    try (RedisFeatureStore.Core plainCore = makeCore("upsert", RedisValueCodec.JSON);
+        RedisFeatureStore.Core compressingCore = makeCore("upsert", RedisValueCodec.DEFLATE)) {
+      compressingCore.upsertInternal(FEATURES, flag);
+      byte[] storedValue = getRawValue("upsert:features", "flag");
+      assertEquals(0, storedValue[0]); // the value has the compressed header, so it is not JSON
+      
+      for (int version: new int[] { 4, 5 }) {
+        VersionedData result = plainCore.upsertInternal(FEATURES, new FeatureFlagBuilder(flag).version(version).build());
+        assertEquals(5, result.getVersion());
+        assertArrayEquals(storedValue, getRawValue("upsert:features", "flag"));
+      }
+      
+      FeatureFlag newerFlag = new FeatureFlagBuilder(flag).version(6).build();
+      assertSame(newerFlag, plainCore.upsertInternal(FEATURES, newerFlag));
+      assertEquals('{', getRawValue("upsert:features", "flag")[0]);
+      assertEquals(6, compressingCore.getInternal(FEATURES, "flag").getVersion());
+    }
+  }
+  
+  @Test
+  public void onlyTheLeaseOwnerWritesAndAnotherInstanceTakesOverWhenItCloses() throws Exception {
+    clearAllData();
+    RedisFeatureStoreBuilder builder = new RedisFeatureStoreBuilder(REDIS_URI).prefix("lease")
+        .caching(FeatureStoreCacheConfig.disabled()).writerLease(300, TimeUnit.MILLISECONDS);
+    try (RedisFeatureStore reader = makeStoreWithPrefix("lease")) {
+      RedisFeatureStore writer1 = builder.build();
+      try (Jedis client = new Jedis("localhost")) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!client.exists("lease:$writer") && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+      }
+      writer1.init(new DataBuilder().add(FEATURES, feature1).build());
+      
+      try (RedisFeatureStore writer2 = builder.build()) {
+        FeatureFlag feature1v2 = new FeatureFlagBuilder(feature1).version(feature1.getVersion() + 1).build();
+        writer2.init(new DataBuilder().add(FEATURES, feature1, feature2).build());
+        writer2.upsert(FEATURES, feature1v2);
+        assertEquals(feature1.getVersion(), reader.get(FEATURES, feature1.getKey()).getVersion());
+        assertNull(reader.get(FEATURES, feature2.getKey()));
+        
+        writer1.close();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (reader.get(FEATURES, feature2.getKey()) == null && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10);
+        }
+        assertEquals(feature1v2.getVersion(), reader.get(FEATURES, feature1.getKey()).getVersion());
+        assertEquals(feature2.getVersion(), reader.get(FEATURES, feature2.getKey()).getVersion());
+      }
+    }
+  }
+  
+  @Test
+  public void mirroringStoreServesCopyAndPicksUpChanges() throws Exception {
+    clearAllData();
+    try (RedisFeatureStore writer = makeStoreWithPrefix("mirror");
+        RedisFeatureStore mirroringStore = new RedisFeatureStoreBuilder(REDIS_URI).prefix("mirror")
+            .mirror(100, TimeUnit.MILLISECONDS).build()) {
+      assertFalse(mirroringStore.initialized());
+      writer.init(new DataBuilder().add(FEATURES, feature1).add(SEGMENTS, segment1).build());
+      
+      long deadline = System.currentTimeMillis() + 2000;
+      while (!mirroringStore.initialized() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(feature1.getVersion(), mirroringStore.get(FEATURES, feature1.getKey()).getVersion());
+      assertEquals(1, mirroringStore.all(SEGMENTS).size());
+      
+      writer.upsert(FEATURES, feature2);
+      deadline = System.currentTimeMillis() + 2000;
+      while (mirroringStore.get(FEATURES, feature2.getKey()) == null && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(feature2.getVersion(), mirroringStore.get(FEATURES, feature2.getKey()).getVersion());
+    }
+  }
+  
+  @Test
+  public void mirroringStoreServesInitializedDataAsSoonAsInitReturns() throws Exception {
+    clearAllData();
+    try (RedisFeatureStore mirroringStore = new RedisFeatureStoreBuilder(REDIS_URI).prefix("mirrorinit")
+        .mirror(3600, TimeUnit.SECONDS).build()) {
+      mirroringStore.init(new DataBuilder().add(FEATURES, feature1).add(SEGMENTS, segment1).build());
+      
+      assertTrue(mirroringStore.initialized());
+      assertEquals(feature1.getVersion(), mirroringStore.get(FEATURES, feature1.getKey()).getVersion());
+      assertEquals(1, mirroringStore.all(SEGMENTS).size());
+    }
+  }
+  
+  private static RedisFeatureStore.Core makeCore(String prefix, RedisValueCodec codec) {
+    RedisFeatureStore.Core core = new RedisFeatureStore.Core(new JedisPool(new JedisPoolConfig(), "localhost"), prefix);
+    core.setCodec(codec);
+    return core;
+  }
+  
+  private static byte[] getRawValue(String hashKey, String itemKey) {
+    try (Jedis client = new Jedis("localhost")) {
+      return client.hget(hashKey.getBytes(Charsets.UTF_8), itemKey.getBytes(Charsets.UTF_8));
+    }
+  }
 }
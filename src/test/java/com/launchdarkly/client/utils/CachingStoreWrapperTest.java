@@ -12,14 +12,17 @@ import org.junit.runners.Parameterized.Parameters;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeThat;
 
 @RunWith(Parameterized.class)
@@ -289,6 +292,127 @@ public class CachingStoreWrapperTest {
     }
   }
   
+  @Test
+  public void cachedItemIsKeptUntilDataVersionChanges() throws Exception {
+    assumeThat(cached, is(true));
+    
+    MockVersionedCore versionedCore = new MockVersionedCore();
+    MockItem itemv1 = new MockItem("flag", 1, false);
+    MockItem itemv2 = new MockItem("flag", 2, false);
+    versionedCore.forceSet(THINGS, itemv1);
+    versionedCore.dataVersion = 1;
+    
+    try (CachingStoreWrapper wrapper1 = new CachingStoreWrapper(versionedCore, FeatureStoreCacheConfig.enabled().ttlMillis(100))) {
+      assertThat(wrapper1.get(THINGS, itemv1.key), equalTo(itemv1));
+      Thread.sleep(150);
+      assertThat(wrapper1.get(THINGS, itemv1.key), equalTo(itemv1)); // cache is cleared once more after a change
+      
+      versionedCore.forceSet(THINGS, itemv2);
+      Thread.sleep(150);
+      assertThat(wrapper1.get(THINGS, itemv1.key), equalTo(itemv1)); // version is unchanged, so not reloaded
+      
+      versionedCore.dataVersion = 2;
+      Thread.sleep(150);
+      assertThat(wrapper1.get(THINGS, itemv1.key), equalTo(itemv2));
+    }
+  }
+  
+  @Test
+  public void cachedItemIsEvictedWhenCacheIsFull() throws Exception {
+    assumeThat(cached, is(true));
+
+    MockItem item1 = new MockItem("flag1", 1, false);
+    MockItem item1v2 = new MockItem("flag1", 2, false);
+    MockItem item2 = new MockItem("flag2", 1, false);
+    core.forceSet(THINGS, item1);
+    core.forceSet(THINGS, item2);
+
+    try (CachingStoreWrapper wrapper1 = new CachingStoreWrapper(core,
+        FeatureStoreCacheConfig.enabled().ttlSeconds(30).maximumSize(1))) {
+      assertThat(wrapper1.get(THINGS, item1.key), equalTo(item1));
+      assertThat(wrapper1.get(THINGS, item2.key), equalTo(item2));
+
+      core.forceSet(THINGS, item1v2);
+      assertThat(wrapper1.get(THINGS, item1.key), equalTo(item1v2));
+      assertThat(wrapper1.getCacheStats().evictionCount(), equalTo(2L));
+    }
+  }
+
+  @Test
+  public void cachedItemIsRefreshedInBackgroundBeforeItExpires() throws Exception {
+    assumeThat(cached, is(true));
+
+    MockItem itemv1 = new MockItem("flag", 1, false);
+    MockItem itemv2 = new MockItem("flag", 2, false);
+    core.forceSet(THINGS, itemv1);
+
+    try (CachingStoreWrapper wrapper1 = new CachingStoreWrapper(core,
+        FeatureStoreCacheConfig.enabled().ttlMillis(500).refreshAhead(0.5))) {
+      assertThat(wrapper1.get(THINGS, itemv1.key), equalTo(itemv1));
+
+      core.forceSet(THINGS, itemv2);
+      Thread.sleep(300);
+      assertThat(wrapper1.get(THINGS, itemv1.key), equalTo(itemv1)); // returned at once, refresh is started
+      Thread.sleep(100);
+      assertThat(wrapper1.get(THINGS, itemv1.key), equalTo(itemv2));
+      assertThat(wrapper1.getRefreshStats(THINGS).loadSuccessCount(), equalTo(1L));
+    }
+  }
+
+  @Test
+  public void expiredItemIsReturnedWhileStoreFailsUntilMaximumStaleness() throws Exception {
+    assumeThat(cached, is(true));
+
+    MockItem item = new MockItem("flag", 1, false);
+    core.forceSet(THINGS, item);
+
+    try (CachingStoreWrapper wrapper1 = new CachingStoreWrapper(core, FeatureStoreCacheConfig.enabled().ttlMillis(100)
+        .maximumStaleness(200, TimeUnit.MILLISECONDS).circuitBreaker(1, TimeUnit.MINUTES))) {
+      assertThat(wrapper1.get(THINGS, item.key), equalTo(item));
+      assertThat(wrapper1.getStatus().isAvailable(), is(true));
+
+      core.fakeError = new RuntimeException("sorry");
+      Thread.sleep(150);
+      assertThat(wrapper1.get(THINGS, item.key), equalTo(item));
+      assertThat(wrapper1.getStatus().isAvailable(), is(false));
+      assertThat(wrapper1.getStatus().getStaleReadCount(), equalTo(1L));
+
+      int getCount = core.getCount;
+      assertThat(wrapper1.get(THINGS, item.key), equalTo(item));
+      assertThat(core.getCount, equalTo(getCount)); // circuit breaker is open, so the store is not tried
+
+      Thread.sleep(200);
+      try {
+        wrapper1.get(THINGS, item.key);
+        fail("expected exception");
+      } catch (RuntimeException e) {
+      }
+      assertThat(core.getCount, equalTo(getCount));
+    }
+  }
+
+  @Test
+  public void getManyReadsUncachedItemsInOneCall() {
+    MockMultiGetCore multiGetCore = new MockMultiGetCore();
+    MockItem item1 = new MockItem("flag1", 1, false);
+    MockItem item2 = new MockItem("flag2", 1, false);
+    MockItem deletedItem = new MockItem("flag3", 1, true);
+    multiGetCore.forceSet(THINGS, item1);
+    multiGetCore.forceSet(THINGS, item2);
+    multiGetCore.forceSet(THINGS, deletedItem);
+    CachingStoreWrapper wrapper1 = new CachingStoreWrapper(multiGetCore, cached ? FeatureStoreCacheConfig.enabled().ttlSeconds(30) :
+      FeatureStoreCacheConfig.disabled());
+    
+    Map<String, MockItem> items = wrapper1.getMany(THINGS, Arrays.asList(item1.key, item2.key, deletedItem.key, "missing"));
+    
+    Map<String, MockItem> expected = ImmutableMap.<String, MockItem>of(item1.key, item1, item2.key, item2);
+    assertThat(items, equalTo(expected));
+    assertThat(multiGetCore.getManyCount, equalTo(1));
+    
+    wrapper1.getMany(THINGS, Arrays.asList(item1.key, item2.key));
+    assertThat(multiGetCore.getManyCount, equalTo(cached ? 1 : 2));
+  }
+  
   private Map<VersionedDataKind<?>, Map<String, ? extends VersionedData>> makeData(MockItem... items) {
     Map<String, VersionedData> innerMap = new HashMap<>();
     for (MockItem item: items) {
@@ -303,6 +427,8 @@ public class CachingStoreWrapperTest {
     Map<VersionedDataKind<?>, Map<String, VersionedData>> data = new HashMap<>();
     boolean inited;
     int initedQueryCount;
+    int getCount;
+    volatile RuntimeException fakeError;
     
     @Override
     public void close() throws IOException {
@@ -310,6 +436,10 @@ public class CachingStoreWrapperTest {
 
     @Override
     public VersionedData getInternal(VersionedDataKind<?> kind, String key) {
+      getCount++;
+      if (fakeError != null) {
+        throw fakeError;
+      }
       if (data.containsKey(kind)) {
         return data.get(kind).get(key);
       }
@@ -365,6 +495,32 @@ public class CachingStoreWrapperTest {
     }
   }
   
+  static class MockVersionedCore extends MockCore implements VersionedFeatureStoreCore {
+    volatile long dataVersion = -1;
+    
+    @Override
+    public long getDataVersion() {
+      return dataVersion;
+    }
+  }
+  
+  static class MockMultiGetCore extends MockCore implements MultiGetFeatureStoreCore {
+    int getManyCount;
+    
+    @Override
+    public Map<String, VersionedData> getManyInternal(VersionedDataKind<?> kind, Collection<String> keys) {
+      getManyCount++;
+      Map<String, VersionedData> ret = new HashMap<>();
+      for (String key: keys) {
+        VersionedData item = getInternal(kind, key);
+        if (item != null) {
+          ret.put(key, item);
+        }
+      }
+      return ret;
+    }
+  }
+  
   static class MockItem implements VersionedData {
     private final String key;
     private final int version;